@@ -1,6 +1,7 @@
 package me.sample.config;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.caffeine.CaffeineCacheManager;
@@ -37,4 +38,17 @@ public class CacheConfiguration {
 
         return cacheManager;
     }
+
+    @Bean
+    public CacheManager campaignCacheManager(@Value("${campaign.cache.expire-after-write:600}")
+                                                     long expireAfterWriteSeconds) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager("campaign.client", "campaign.notification.counter");
+        cacheManager.setCaffeine(Caffeine.newBuilder()
+                .initialCapacity(10)
+                .maximumSize(100)
+                .expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+                .recordStats());
+
+        return cacheManager;
+    }
 }
@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.RestController;
 import springfox.documentation.annotations.ApiIgnore;
 import me.sample.config.SwaggerConfiguration;
 import me.sample.controller.argumentResolver.TerminalBind;
+import me.sample.domain.BadResourceException;
 import me.sample.dto.GeoPositionInfoDTO;
 import me.sample.dto.PushMessageDTO;
 import me.sample.dto.PushTokenDTO;
@@ -27,6 +28,7 @@ import me.sample.domain.Terminal;
 import me.sample.service.LocationConsumerService;
 
 import javax.validation.Valid;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -50,6 +52,10 @@ public class TerminalController {
     @Value("${terminal.city.sync-on-endpoint-invocation}")
     Boolean syncLocationOnEndpointInvocation;
 
+    @NonFinal
+    @Value("${dissemination.location.max-batch-size:1000}")
+    int maxBatchSize;
+
     /**
      * Принимает текущую (условно) гео-локацию терминала
      */
@@ -84,6 +90,36 @@ public class TerminalController {
         requestLogService.collectRequestLogAsync("location", geoPosInfoDTO, terminal);
     }
 
+    /**
+     * Принимает гео-локации, накопленные терминалом (например, без связи), одним запросом.
+     * Момент каждой гео-локации передается в createdDate. Запрос, содержащий больше max-batch-size гео-локаций, отклоняется
+     */
+    @TerminalApi
+    @ApiOperation(nickname = "locations", value = "${terminalController.locations}")
+    @PostMapping("/locations")
+    public void locations(@TerminalBind @ApiIgnore TerminalDTO dto,
+                          @RequestBody List<GeoPositionInfoDTO> geoPosInfoDTOs) {
+        log.info(".locations(Terminal.hardwareId: {} .appBundle: {} .ip: {}, Geopositions: {})",
+                dto.getHardwareId(), dto.getAppBundle(), dto.getIp(),
+                geoPosInfoDTOs.size());
+
+        if (geoPosInfoDTOs.size() > maxBatchSize) {
+            throw new BadResourceException(String.format("Too many locations: %d. Max: %d",
+                    geoPosInfoDTOs.size(), maxBatchSize));
+        }
+
+        Terminal terminal = terminalService.saveOrUpdateTerminal(dto);
+        if (Boolean.TRUE.equals(syncLocationOnEndpointInvocation)) {
+            terminalService.updateTerminalCityByIpAsync(terminal, dto.getIp());
+        }
+
+        if (!geoPosInfoDTOs.isEmpty()) {
+            locationConsumerService.handleBatchAsync(terminal, geoPosInfoDTOs);
+        }
+
+        requestLogService.collectRequestLogAsync("locations", geoPosInfoDTOs, terminal);
+    }
+
     /**
      * pushToken - идентификатор Firebase или Apns, для отправки push-сообщений.
      * Он обязателен для отправки уведомлений. Идентифицирует терминал.
@@ -0,0 +1,45 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики отправленных уведомлений кампании: всего и по терминалам
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class CampaignSendCounter {
+
+    AtomicLong total = new AtomicLong();
+
+    Map<UUID, AtomicInteger> totalByTerminalId = new ConcurrentHashMap<>();
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public int getTotal(UUID terminalId) {
+        AtomicInteger found = totalByTerminalId.get(terminalId);
+
+        return found == null ? 0 : found.get();
+    }
+
+    public CampaignSendCounter add(UUID terminalId, int count) {
+        total.addAndGet(count);
+        if (terminalId != null) {
+            totalByTerminalId.computeIfAbsent(terminalId, (UUID key) -> new AtomicInteger())
+                    .addAndGet(count);
+        }
+
+        return this;
+    }
+
+    public CampaignSendCounter increment(UUID terminalId) {
+        return add(terminalId, 1);
+    }
+}
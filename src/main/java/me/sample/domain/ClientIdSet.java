@@ -0,0 +1,120 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Неизменяемое множество идентификаторов клиентов кампании.
+ * <p>
+ * Идентификаторы клиентов - строки из цифр ({@link Clients}), поэтому хранятся в виде
+ * упорядоченного массива long и проверяются двоичным поиском без выделения памяти.
+ * Идентификаторы, не представимые числом без потерь (ведущие нули, переполнение), хранятся как строки
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class ClientIdSet {
+
+    private static final ClientIdSet EMPTY = new ClientIdSet(new long[0], Collections.emptySet());
+
+    private static final int MAX_NUMERIC_LENGTH = 18;
+
+
+    long[] numericIds;
+
+    Set<String> otherIds;
+
+    private ClientIdSet(long[] numericIds, Set<String> otherIds) {
+        this.numericIds = numericIds;
+        this.otherIds = otherIds;
+    }
+
+    public static ClientIdSet empty() {
+        return EMPTY;
+    }
+
+    public static ClientIdSet of(Collection<String> clientIds) {
+        if (clientIds.isEmpty()) {
+            return EMPTY;
+        }
+
+        long[] numericIds = new long[clientIds.size()];
+        int numericCount = 0;
+        Set<String> otherIds = new HashSet<>();
+        for (String clientId : clientIds) {
+            long numericId = toNumericId(clientId);
+            if (numericId < 0) {
+                otherIds.add(clientId);
+            } else {
+                numericIds[numericCount++] = numericId;
+            }
+        }
+
+        long[] sorted = Arrays.copyOf(numericIds, numericCount);
+        Arrays.sort(sorted);
+
+        int distinctCount = 0;
+        for (int index = 0; index < sorted.length; index++) {
+            if (index == 0 || sorted[index] != sorted[index - 1]) {
+                sorted[distinctCount++] = sorted[index];
+            }
+        }
+
+        return new ClientIdSet(
+                Arrays.copyOf(sorted, distinctCount),
+                otherIds.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(otherIds));
+    }
+
+    public boolean contains(String clientId) {
+        if (clientId == null) {
+            return false;
+        }
+
+        long numericId = toNumericId(clientId);
+        if (numericId < 0) {
+            return otherIds.contains(clientId);
+        }
+
+        return Arrays.binarySearch(numericIds, numericId) >= 0;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int size() {
+        return numericIds.length + otherIds.size();
+    }
+
+    /**
+     * Преобразует идентификатор в число, если строковое представление числа совпадает с идентификатором
+     *
+     * @return число или -1, если идентификатор не представим числом без потерь
+     */
+    private static long toNumericId(String clientId) {
+        int length = clientId.length();
+        if (length == 0 || length > MAX_NUMERIC_LENGTH) {
+            return -1;
+        }
+
+        if (length > 1 && clientId.charAt(0) == '0') {
+            return -1;
+        }
+
+        long result = 0;
+        for (int index = 0; index < length; index++) {
+            char c = clientId.charAt(index);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+
+            result = result * 10 + (c - '0');
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,47 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Почтовый ящик на одно значение: новое значение заменяет еще не обработанное.
+ * <p>
+ * Значения обрабатываются не более чем одним потоком одновременно. Поток, положивший значение
+ * в свободный ящик, обрабатывает его сам, а значения, поступившие во время обработки,
+ * схлопываются до последнего и обрабатываются тем же потоком после завершения текущей обработки
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class LatestWinsMailbox<T> {
+
+    AtomicReference<T> pending = new AtomicReference<>();
+
+    AtomicBoolean draining = new AtomicBoolean();
+
+    /**
+     * Кладет значение в ящик
+     *
+     * @param handler обработчик значений, вызываемый в текущем потоке, если ящик не обрабатывается другим потоком
+     */
+    public void offer(T value, Consumer<T> handler) {
+        pending.set(value);
+
+        while (pending.get() != null && draining.compareAndSet(false, true)) {
+            try {
+                T next;
+                while ((next = pending.getAndSet(null)) != null) {
+                    handler.accept(next);
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    public boolean isIdle() {
+        return !draining.get() && pending.get() == null;
+    }
+}
@@ -21,7 +21,6 @@ import javax.persistence.Id;
 import javax.persistence.ManyToOne;
 import javax.persistence.Table;
 import java.time.LocalDateTime;
-import java.util.EnumSet;
 import java.util.UUID;
 
 @FieldDefaults(level = AccessLevel.PRIVATE)
@@ -69,11 +68,19 @@ public class Notification extends AbstractIdentifiable<UUID> {
     @ManyToOne
     Campaign campaign;
 
+    /**
+     * Момент, начиная с которого уведомление может быть взято на отправку (повторно).
+     * Не задан для уведомлений, не ожидающих отправки
+     */
+    @Column(name = "available_at")
+    LocalDateTime availableAt;
+
+    /**
+     * Количество попыток отправки
+     */
+    int attempts;
+
     public boolean wasSent() {
-        return EnumSet.of(
-                NotificationState.ACCEPTED_BY_SERVER,
-                NotificationState.RECEIVED_BY_CLIENT,
-                NotificationState.ACKNOWLEDGED_BY_CLIENT)
-                .contains(state);
+        return state != null && state.isSent();
     }
 }
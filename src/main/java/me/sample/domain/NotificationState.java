@@ -50,5 +50,14 @@ public enum NotificationState {
     /**
      * Уведомление обработано неудачно (на каком-либо этапе)
      */
-    FAILED
+    FAILED;
+
+    /**
+     * Проверяет, что уведомление в данном состоянии считается отправленным
+     */
+    public boolean isSent() {
+        return this == ACCEPTED_BY_SERVER ||
+                this == RECEIVED_BY_CLIENT ||
+                this == ACKNOWLEDGED_BY_CLIENT;
+    }
 }
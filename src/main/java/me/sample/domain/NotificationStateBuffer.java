@@ -0,0 +1,119 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Буфер изменений состояний уведомлений для отложенной записи.
+ * <p>
+ * Для каждого уведомления хранится только наибольшее (в порядке объявления {@link NotificationState}) состояние.
+ * Если ведется журнал, сохраняются также все переходы в порядке поступления
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class NotificationStateBuffer {
+
+    boolean transitionsLogged;
+
+    Map<UUID, NotificationState> states = new ConcurrentHashMap<>();
+
+    Queue<Transition> transitions = new ConcurrentLinkedQueue<>();
+
+    public NotificationStateBuffer(boolean transitionsLogged) {
+        this.transitionsLogged = transitionsLogged;
+    }
+
+    /**
+     * Добавляет переход уведомления в состояние
+     *
+     * @return количество уведомлений в буфере
+     */
+    public int offer(UUID id, NotificationState state, String stateReason, LocalDateTime at) {
+        states.merge(id, state, NotificationStateBuffer::max);
+        if (transitionsLogged) {
+            transitions.add(new Transition(id, state, stateReason, at));
+        }
+
+        return states.size();
+    }
+
+    /**
+     * Извлекает накопленные состояния, сгруппированные по состоянию
+     */
+    public Map<NotificationState, List<UUID>> drainStates() {
+        Map<NotificationState, List<UUID>> result = new EnumMap<>(NotificationState.class);
+        for (UUID id : states.keySet()) {
+            NotificationState state = states.remove(id);
+            if (state != null) {
+                result.computeIfAbsent(state, (NotificationState key) -> new ArrayList<>()).add(id);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Извлекает не более limit накопленных переходов
+     */
+    public List<Transition> drainTransitions(int limit) {
+        List<Transition> result = new ArrayList<>();
+        Transition transition;
+        while (result.size() < limit && (transition = transitions.poll()) != null) {
+            result.add(transition);
+        }
+
+        return result;
+    }
+
+    /**
+     * Возвращает в буфер состояния, которые не удалось записать
+     */
+    public void restore(NotificationState state, Collection<UUID> ids) {
+        ids.forEach((UUID id) -> states.merge(id, state, NotificationStateBuffer::max));
+    }
+
+    /**
+     * Возвращает в буфер переходы, которые не удалось записать
+     */
+    public void restore(Collection<Transition> failed) {
+        transitions.addAll(failed);
+    }
+
+    public boolean isEmpty() {
+        return states.isEmpty() && transitions.isEmpty();
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    private static NotificationState max(NotificationState a, NotificationState b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    @Getter
+    public static final class Transition {
+
+        UUID id;
+
+        NotificationState state;
+
+        String stateReason;
+
+        LocalDateTime at;
+    }
+}
@@ -0,0 +1,129 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ограниченная неблокирующая очередь на кольцевом буфере для нескольких производителей и потребителей.
+ * <p>
+ * Каждая ячейка хранит номер последовательности, по которому производитель определяет, что ячейка свободна,
+ * а потребитель - что она заполнена. Позиции записи и чтения захватываются CAS, поэтому ни запись,
+ * ни чтение не блокируются. Емкость округляется вверх до степени двойки (не менее двух)
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class RingBuffer<T> {
+
+    int mask;
+
+    AtomicReferenceArray<T> elements;
+
+    AtomicLongArray sequences;
+
+    AtomicLong head = new AtomicLong();
+
+    AtomicLong tail = new AtomicLong();
+
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException(String.format("Arg: capacity must be in range (0, 2^30]: %s", capacity));
+        }
+
+        int size = Math.max(2, Integer.highestOneBit(capacity - 1) << 1);
+
+        this.mask = size - 1;
+        this.elements = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            sequences.set(index, index);
+        }
+    }
+
+    /**
+     * Добавляет элемент в очередь
+     *
+     * @return false, если очередь заполнена
+     */
+    public boolean offer(T element) {
+        if (element == null) {
+            throw new IllegalArgumentException("Arg: element must not be null");
+        }
+
+        while (true) {
+            long position = tail.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements.lazySet(index, element);
+                    sequences.set(index, position + 1);
+
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Извлекает элемент из очереди
+     *
+     * @return null, если очередь пуста
+     */
+    public T poll() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    T result = elements.get(index);
+                    elements.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+
+                    return result;
+                }
+            } else if (difference < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Извлекает не более limit элементов в указанный список
+     *
+     * @return количество извлеченных элементов
+     */
+    public int drainTo(List<? super T> target, int limit) {
+        int result = 0;
+        T element;
+        while (result < limit && (element = poll()) != null) {
+            target.add(element);
+            result++;
+        }
+
+        return result;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Возвращает приблизительное количество элементов в очереди
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
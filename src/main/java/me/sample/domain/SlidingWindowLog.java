@@ -0,0 +1,80 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Журнал моментов событий ограниченной емкости (кольцевой буфер) для подсчета событий в скользящем окне.
+ * <p>
+ * При заполнении буфера вытесняется самое старое событие, поэтому подсчет событий
+ * насыщается на значении емкости. Емкость должна быть не меньше проверяемого лимита
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public final class SlidingWindowLog {
+
+    long[] timestamps;
+
+    int next;
+
+    int size;
+
+    public SlidingWindowLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException(String.format("Arg: capacity must be positive: %s", capacity));
+        }
+
+        this.timestamps = new long[capacity];
+    }
+
+    /**
+     * Регистрирует событие, увеличивая при необходимости емкость журнала до указанной
+     */
+    public synchronized void record(long timestamp, int capacity) {
+        if (capacity > timestamps.length) {
+            grow(capacity);
+        }
+
+        timestamps[next] = timestamp;
+        next = (next + 1) % timestamps.length;
+        if (size < timestamps.length) {
+            size++;
+        }
+    }
+
+    /**
+     * Возвращает количество событий, произошедших позднее указанного момента
+     */
+    public synchronized int count(long since) {
+        int result = 0;
+        for (int index = 0; index < size; index++) {
+            if (timestamps[index] > since) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Проверяет, что все события журнала произошли не позднее указанного момента
+     */
+    public synchronized boolean isExpired(long before) {
+        for (int index = 0; index < size; index++) {
+            if (timestamps[index] > before) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void grow(int capacity) {
+        long[] grown = new long[capacity];
+        for (int index = 0; index < size; index++) {
+            grown[index] = timestamps[(next - size + index + timestamps.length) % timestamps.length];
+        }
+
+        timestamps = grown;
+        next = size % capacity;
+    }
+}
@@ -139,87 +139,36 @@ public class Terminal extends AbstractIdentifiable<UUID> {
         return this;
     }
 
-    public boolean matches(Collection<PropFilter> filters) {
-        if (filters == null) {
-            return true;
-        }
-
-        return filters.stream()
-                .allMatch((PropFilter filter) -> {
-                    String key = filter.getName();
-                    if (Terminal.FILTER_KEY_PLATFORM.equals(key)) {
-                        return valueMatches(platform == null ? null : platform.name(), filter);
-                    } else if (Terminal.FILTER_KEY_CITY.equals(key)) {
-                        return valueMatches(city, filter);
-                    } else {
-                        return valueMatches(props.get(key), filter);
-                    }
-                });
-    }
-
-    private boolean valueMatches(Object value, PropFilter filter) {
-        if (value == null) {
-            return false;
-        }
-
-        if (value instanceof Number) {
-            return numericValueMatches((Number) value, filter);
-        } else if (value instanceof String) {
-            return stringValueMatches((String) value, filter);
-        }
-
-        throw new UnsupportedOperationException(String.format(
-                "Only Numbers and Strings are able to be compared. Attempt to compare: %s",
-                value.getClass().getName()));
-
-    }
-
-    private boolean numericValueMatches(Number value, PropFilter filter) {
-        PropFilter.Sign op = filter.getSign();
-        if (op == null) {
-            return false;
-        }
-
-        Double p = value.doubleValue();
-        Double v = ((Number) filter.getValue()).doubleValue();
-
-        switch (op) {
-            case LESS:
-                return p < v;
-            case LESS_OR_EQUAL:
-                return p <= v;
-            case EQUAL:
-                return p.equals(v);
-            case GREATER_OR_EQUAL:
-                return p >= v;
-            case GREATER:
-                return p > v;
-            default:
-                return false;
-        }
+    /**
+     * Возвращает копию терминала с собственной копией свойств. Терминалы из кэша читаются несколькими потоками,
+     * поэтому изменяются не они, а их копии
+     */
+    public Terminal copy() {
+        return Terminal.builder()
+                .id(id)
+                .createdDate(createdDate)
+                .updatedDate(updatedDate)
+                .application(application)
+                .hardwareId(hardwareId)
+                .platform(platform)
+                .pushId(pushId)
+                .vendor(vendor)
+                .model(model)
+                .osVersion(osVersion)
+                .appVersion(appVersion)
+                .msisdn(msisdn)
+                .ip(ip)
+                .city(city)
+                .lastLocationUpdate(lastLocationUpdate)
+                .test(test)
+                .props(props == null ? new LinkedHashMap<>() : new LinkedHashMap<>(props))
+                .build();
     }
 
-    private boolean stringValueMatches(String value, PropFilter filter) {
-        PropFilter.Sign op = filter.getSign();
-        if (op == null) {
-            return false;
-        }
-
-        String v = (String) filter.getValue();
-
-        switch (op) {
-            case LESS:
-                return value.compareTo(v) < 0;
-            case LESS_OR_EQUAL:
-                return value.compareTo(v) <= 0;
-            case EQUAL:
-                return value.equals(v);
-            case GREATER_OR_EQUAL:
-                return value.compareTo(v) >= 0;
-            case GREATER:
-                return value.compareTo(v) > 0;
-            default:
-                return false;
-        }
+    /**
+     * @see TerminalFilter
+     */
+    public boolean matches(Collection<PropFilter> filters) {
+        return TerminalFilter.compile(filters).test(this);
     }
 }
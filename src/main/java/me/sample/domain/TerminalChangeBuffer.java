@@ -0,0 +1,159 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Буфер изменений атрибутов терминалов для отложенной записи.
+ * <p>
+ * Изменения одного терминала объединяются: для атрибутов сохраняется последнее значение,
+ * свойства (props) объединяются по ключам с приоритетом последних значений
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class TerminalChangeBuffer {
+
+    Map<UUID, Changes> changes = new ConcurrentHashMap<>();
+
+    /**
+     * Добавляет изменения терминала
+     *
+     * @return количество терминалов в буфере
+     */
+    public int offer(UUID id, Changes terminalChanges) {
+        changes.merge(id, terminalChanges, Changes::merge);
+
+        return changes.size();
+    }
+
+    /**
+     * Извлекает накопленные изменения
+     */
+    public Map<UUID, Changes> drain() {
+        Map<UUID, Changes> result = new LinkedHashMap<>();
+        for (UUID id : changes.keySet()) {
+            Changes found = changes.remove(id);
+            if (found != null) {
+                result.put(id, found);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Извлекает накопленные изменения терминала
+     *
+     * @return null, если изменений нет
+     */
+    public Changes drain(UUID id) {
+        return changes.remove(id);
+    }
+
+    /**
+     * Возвращает в буфер изменения, которые не удалось записать. Изменения, поступившие после извлечения, имеют приоритет
+     */
+    public void restore(Map<UUID, Changes> drained) {
+        drained.forEach((UUID id, Changes restored) ->
+                changes.merge(id, restored, (Changes current, Changes older) -> older.merge(current)));
+    }
+
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    public int size() {
+        return changes.size();
+    }
+
+    /**
+     * Изменения атрибутов терминала. Значение null означает, что атрибут не изменялся
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    @Accessors(chain = true)
+    @Getter
+    @Setter
+    public static class Changes {
+
+        TerminalPlatform platform;
+
+        String pushId;
+
+        String vendor;
+
+        String model;
+
+        String osVersion;
+
+        String appVersion;
+
+        String msisdn;
+
+        String ip;
+
+        final Map<String, Object> props = new LinkedHashMap<>();
+
+        LocalDateTime updatedDate;
+
+        public Changes setProp(String key, Object value) {
+            props.put(key, value);
+
+            return this;
+        }
+
+        /**
+         * Дополняет изменения более поздними
+         *
+         * @return данный объект
+         */
+        public Changes merge(Changes newer) {
+            if (newer.platform != null) {
+                platform = newer.platform;
+            }
+
+            if (newer.pushId != null) {
+                pushId = newer.pushId;
+            }
+
+            if (newer.vendor != null) {
+                vendor = newer.vendor;
+            }
+
+            if (newer.model != null) {
+                model = newer.model;
+            }
+
+            if (newer.osVersion != null) {
+                osVersion = newer.osVersion;
+            }
+
+            if (newer.appVersion != null) {
+                appVersion = newer.appVersion;
+            }
+
+            if (newer.msisdn != null) {
+                msisdn = newer.msisdn;
+            }
+
+            if (newer.ip != null) {
+                ip = newer.ip;
+            }
+
+            props.putAll(newer.props);
+
+            if (newer.updatedDate != null && (updatedDate == null || newer.updatedDate.isAfter(updatedDate))) {
+                updatedDate = newer.updatedDate;
+            }
+
+            return this;
+        }
+    }
+}
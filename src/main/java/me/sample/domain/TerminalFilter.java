@@ -0,0 +1,325 @@
+package me.sample.domain;
+
+import com.vladmihalcea.hibernate.type.json.JsonBinaryType;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import org.hibernate.query.criteria.internal.CriteriaBuilderImpl;
+import org.hibernate.query.criteria.internal.predicate.ComparisonPredicate;
+import org.springframework.data.jpa.domain.Specification;
+
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Root;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.function.BiPredicate;
+import java.util.function.Predicate;
+
+/**
+ * Скомпилированный набор фильтров {@link PropFilter} для {@link Terminal}.
+ * <p>
+ * Константы фильтров разбираются один раз при компиляции. Одна и та же скомпилированная форма
+ * используется как для проверки терминала в памяти, так и для построения {@link Specification},
+ * поэтому обе проверки дают согласованный результат:
+ * <ul>
+ * <li>platform - равенство платформы (знак сравнения не учитывается)</li>
+ * <li>city - вхождение подстроки без учета регистра (знак сравнения не учитывается)</li>
+ * <li>campaignId - принадлежность клиента терминала к списку клиентов кампании.
+ * В памяти проверяется переданной при компиляции функцией, по умолчанию - не выполняется</li>
+ * <li>прочие ключи - сравнение свойства терминала с константой того же типа (число или строка).
+ * Отсутствующее свойство или свойство другого типа фильтру не удовлетворяет</li>
+ * </ul>
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class TerminalFilter implements Predicate<Terminal> {
+
+    private static final Condition[] NO_CONDITIONS = new Condition[0];
+
+    private static final TerminalFilter ANY = new TerminalFilter(NO_CONDITIONS);
+
+    private static final TerminalFilter NONE = new TerminalFilter(new Condition[]{new NoneCondition()});
+
+    private static final BiPredicate<UUID, Terminal> NO_CAMPAIGN_CLIENTS = (UUID campaignId, Terminal terminal) -> false;
+
+
+    Condition[] conditions;
+
+    private TerminalFilter(Condition[] conditions) {
+        this.conditions = conditions;
+    }
+
+    public static TerminalFilter any() {
+        return ANY;
+    }
+
+    public static TerminalFilter none() {
+        return NONE;
+    }
+
+    /**
+     * Компилирует набор фильтров
+     *
+     * @throws UnsupportedOperationException если константа фильтра не является числом или строкой
+     */
+    public static TerminalFilter compile(Collection<PropFilter> filters) {
+        return compile(filters, NO_CAMPAIGN_CLIENTS);
+    }
+
+    /**
+     * Компилирует набор фильтров
+     *
+     * @param campaignClients проверка принадлежности клиента терминала к кампании (campaignId, terminal)
+     * @throws UnsupportedOperationException если константа фильтра не является числом или строкой
+     */
+    public static TerminalFilter compile(Collection<PropFilter> filters, BiPredicate<UUID, Terminal> campaignClients) {
+        if (filters == null || filters.isEmpty()) {
+            return ANY;
+        }
+
+        Condition[] conditions = new Condition[filters.size()];
+        int index = 0;
+        for (PropFilter filter : filters) {
+            conditions[index++] = compile(filter, campaignClients);
+        }
+
+        return new TerminalFilter(conditions);
+    }
+
+    private static Condition compile(PropFilter filter, BiPredicate<UUID, Terminal> campaignClients) {
+        String key = filter.getName();
+        Object value = filter.getValue();
+        PropFilter.Sign sign = filter.getSign();
+
+        if (Terminal.FILTER_KEY_PLATFORM.equals(key) && value != null) {
+            return new PlatformCondition(TerminalPlatform.of(String.valueOf(value)));
+        } else if (Terminal.FILTER_KEY_CITY.equals(key) && value != null) {
+            return new CityCondition(String.valueOf(value).toLowerCase(Locale.ROOT));
+        } else if (Terminal.FILTER_KEY_CAMPAIGN_ID.equals(key) && value != null) {
+            return new CampaignClientCondition(UUID.fromString(String.valueOf(value)), campaignClients);
+        }
+
+        if (value instanceof Number) {
+            return sign == null ?
+                    new NoneCondition() :
+                    new NumericPropCondition(key, sign, ((Number) value).doubleValue(), value);
+        } else if (value instanceof String) {
+            return sign == null ?
+                    new NoneCondition() :
+                    new StringPropCondition(key, sign, (String) value);
+        } else if (value == null) {
+            return new NoneCondition();
+        }
+
+        throw new UnsupportedOperationException(String.format(
+                "Only Numbers and Strings are able to be compared. Attempt to compare: %s",
+                value.getClass().getName()));
+    }
+
+    @Override
+    public boolean test(Terminal terminal) {
+        for (Condition condition : conditions) {
+            if (!condition.test(terminal)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public Specification<Terminal> toSpecification() {
+        Specification<Terminal> result = Specifications.any();
+        for (Condition condition : conditions) {
+            result = result.and(condition.toSpecification());
+        }
+
+        return result;
+    }
+
+    private interface Condition {
+
+        boolean test(Terminal terminal);
+
+        Specification<Terminal> toSpecification();
+    }
+
+    private static final class NoneCondition implements Condition {
+
+        @Override
+        public boolean test(Terminal terminal) {
+            return false;
+        }
+
+        @Override
+        public Specification<Terminal> toSpecification() {
+            return Specifications.none();
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    private static final class PlatformCondition implements Condition {
+
+        TerminalPlatform platform;
+
+        @Override
+        public boolean test(Terminal terminal) {
+            return platform == terminal.getPlatform();
+        }
+
+        @Override
+        public Specification<Terminal> toSpecification() {
+            return TerminalSpecifications.platformEquals(platform);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    private static final class CityCondition implements Condition {
+
+        String lowerCaseCity;
+
+        @Override
+        public boolean test(Terminal terminal) {
+            String city = terminal.getCity();
+            if (city == null) {
+                return false;
+            }
+
+            int length = lowerCaseCity.length();
+            for (int offset = 0; offset + length <= city.length(); offset++) {
+                if (city.regionMatches(true, offset, lowerCaseCity, 0, length)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public Specification<Terminal> toSpecification() {
+            return TerminalSpecifications.cityLike(lowerCaseCity);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    private static final class CampaignClientCondition implements Condition {
+
+        UUID campaignId;
+
+        BiPredicate<UUID, Terminal> campaignClients;
+
+        @Override
+        public boolean test(Terminal terminal) {
+            return campaignClients.test(campaignId, terminal);
+        }
+
+        @Override
+        public Specification<Terminal> toSpecification() {
+            return TerminalSpecifications.existsCampaignClientForCampaignId(campaignId);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    private static final class NumericPropCondition implements Condition {
+
+        String key;
+
+        PropFilter.Sign sign;
+
+        double constant;
+
+        Object value;
+
+        @Override
+        public boolean test(Terminal terminal) {
+            Object prop = terminal.getProps().get(key);
+            if (!(prop instanceof Number)) {
+                return false;
+            }
+
+            int comparison = Double.compare(((Number) prop).doubleValue(), constant);
+            switch (sign) {
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case EQUAL:
+                    return comparison == 0;
+                case GREATER_OR_EQUAL:
+                    return comparison >= 0;
+                case GREATER:
+                    return comparison > 0;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public Specification<Terminal> toSpecification() {
+            return propMatches(key, sign, value, "number");
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    private static final class StringPropCondition implements Condition {
+
+        String key;
+
+        PropFilter.Sign sign;
+
+        String constant;
+
+        @Override
+        public boolean test(Terminal terminal) {
+            Object prop = terminal.getProps().get(key);
+            if (!(prop instanceof String)) {
+                return false;
+            }
+
+            int comparison = ((String) prop).compareTo(constant);
+            switch (sign) {
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case EQUAL:
+                    return comparison == 0;
+                case GREATER_OR_EQUAL:
+                    return comparison >= 0;
+                case GREATER:
+                    return comparison > 0;
+                default:
+                    return false;
+            }
+        }
+
+        @Override
+        public Specification<Terminal> toSpecification() {
+            return propMatches(key, sign, constant, "string");
+        }
+    }
+
+    /**
+     * Сравнивает значение jsonb-свойства с константой только при совпадении их типов,
+     * так же как и проверка в памяти
+     */
+    private static Specification<Terminal> propMatches(String key, PropFilter.Sign sign, Object value, String jsonType) {
+        return (Root<Terminal> root, CriteriaQuery<?> query, CriteriaBuilder builder) -> {
+            Expression<JsonBinaryType> lhs = builder.function("jsonb_extract_path", JsonBinaryType.class,
+                    root.<String>get("props"),
+                    builder.literal(key));
+            Expression<JsonBinaryType> rhs = builder.function("to_jsonb", JsonBinaryType.class,
+                    builder.literal(value));
+
+            return builder.and(
+                    builder.equal(builder.function("jsonb_typeof", String.class, lhs), jsonType),
+                    new ComparisonPredicate((CriteriaBuilderImpl) builder, Specifications.OPS.get(sign), lhs, rhs));
+        };
+    }
+}
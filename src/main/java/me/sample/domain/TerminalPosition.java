@@ -0,0 +1,56 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.Accessors;
+import lombok.experimental.FieldDefaults;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Последнее известное местоположение терминала (одна запись на терминал).
+ * Обновляется при сохранении каждой геопозиции {@link GeoPositionInfo}
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Accessors(chain = true)
+@Getter
+@Setter
+@Table(name = "terminal_position")
+@Entity
+public class TerminalPosition extends AbstractIdentifiable<UUID> {
+
+    /**
+     * Идентификатор терминала
+     */
+    @Id
+    @Column(name = "terminal_id")
+    UUID id;
+
+    /**
+     * Широта, N
+     */
+    Double lat;
+
+    /**
+     * Долгота, E
+     */
+    Double lon;
+
+    /**
+     * Момент получения геопозиции
+     */
+    @Column(name = "udat")
+    LocalDateTime updatedDate;
+}
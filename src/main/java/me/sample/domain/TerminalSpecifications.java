@@ -1,13 +1,9 @@
 package me.sample.domain;
 
-import com.vladmihalcea.hibernate.type.json.JsonBinaryType;
-import org.hibernate.query.criteria.internal.CriteriaBuilderImpl;
-import org.hibernate.query.criteria.internal.predicate.ComparisonPredicate;
 import org.springframework.data.jpa.domain.Specification;
 
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
-import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Root;
 import javax.persistence.criteria.Subquery;
 import java.util.Collection;
@@ -19,25 +15,11 @@ import java.util.UUID;
  */
 public final class TerminalSpecifications {
 
+    /**
+     * @see TerminalFilter#toSpecification()
+     */
     public static Specification<Terminal> createForFilters(Collection<PropFilter> filters) {
-        if (filters == null) {
-            return Specifications.any();
-        }
-
-        Specification<Terminal> result = Specifications.any();
-        for (PropFilter filter : filters) {
-            if (Terminal.FILTER_KEY_PLATFORM.equals(filter.getName()) && filter.getValue() != null) {
-                result = result.and(platformEquals(TerminalPlatform.of(String.valueOf(filter.getValue()))));
-            } else if (Terminal.FILTER_KEY_CITY.equals(filter.getName()) && filter.getValue() != null) {
-                result = result.and(cityLike(String.valueOf(filter.getValue())));
-            } else if (Terminal.FILTER_KEY_CAMPAIGN_ID.equals(filter.getName()) && filter.getValue() != null) {
-                result = result.and(existsCampaignClientForCampaignId(UUID.fromString(String.valueOf(filter.getValue()))));
-            } else {
-                result = result.and(propMatches(filter));
-            }
-        }
-
-        return result;
+        return TerminalFilter.compile(filters).toSpecification();
     }
 
     public static Specification<Terminal> applicationCompanyAuthorityUserIdEqualTo(Long id) {
@@ -109,23 +91,6 @@ public final class TerminalSpecifications {
                 builder.like(builder.lower(root.get("city")), "%" + city.toLowerCase() + "%");
     }
 
-    public static Specification<Terminal> propMatches(PropFilter filter) {
-        PropFilter.Sign op = filter.getSign();
-        if (op == null) {
-            return Specifications.none();
-        }
-
-        return (Root<Terminal> root, CriteriaQuery<?> query, CriteriaBuilder builder) -> {
-            Expression<JsonBinaryType> lhs = builder.function("jsonb_extract_path", JsonBinaryType.class,
-                    root.<String>get("props"),
-                    builder.literal(filter.getName()));
-            Expression<JsonBinaryType> rhs = builder.function("to_jsonb", JsonBinaryType.class,
-                    builder.literal(filter.getValue()));
-
-            return new ComparisonPredicate((CriteriaBuilderImpl) builder, Specifications.OPS.get(op), lhs, rhs);
-        };
-    }
-
     public static Specification<Terminal> propClientIdIn(Collection<String> values) {
         return (Root<Terminal> root, CriteriaQuery<?> query, CriteriaBuilder builder) ->
                 builder.function("jsonb_extract_path_text", String.class, root.<String>get("props"), builder.literal(Terminal.PROP_KEY_CLIENT_ID)).in(values);
@@ -0,0 +1,93 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+/**
+ * Ограничитель скорости "ведро маркеров" с равномерной выдачей разрешений.
+ * <p>
+ * Маркеры пополняются со скоростью rate в секунду, но не более емкости burst. Разрешение резервируется
+ * сразу, а вызывающий ожидает возвращенное время: при нехватке маркеров баланс становится отрицательным,
+ * и последующие разрешения выдаются с интервалом 1/rate. Моменты времени - в наносекундах
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE)
+public final class TokenBucket {
+
+    private static final double NANOS_PER_SECOND = 1_000_000_000D;
+
+
+    double rate;
+
+    double burst;
+
+    double tokens;
+
+    long refilledAt;
+
+    public TokenBucket(double rate, double burst, long now) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException(String.format("Arg: rate must be positive: %s", rate));
+        }
+
+        if (burst < 1) {
+            throw new IllegalArgumentException(String.format("Arg: burst must be at least 1: %s", burst));
+        }
+
+        this.rate = rate;
+        this.burst = burst;
+        this.tokens = burst;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Резервирует разрешение
+     *
+     * @return время ожидания разрешения (нс), 0 - если маркер доступен немедленно
+     */
+    public synchronized long reserve(long now) {
+        refill(now);
+        tokens -= 1;
+
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * NANOS_PER_SECOND / rate);
+    }
+
+    /**
+     * Забирает маркер без ожидания (вне очереди). Недостаток маркеров увеличивает ожидание последующих резервирований
+     */
+    public synchronized void take(long now) {
+        refill(now);
+        tokens -= 1;
+    }
+
+    /**
+     * Изменяет скорость пополнения. Маркеры, накопленные до изменения, сохраняются
+     */
+    public synchronized void setRate(double rate, long now) {
+        if (rate <= 0) {
+            throw new IllegalArgumentException(String.format("Arg: rate must be positive: %s", rate));
+        }
+
+        refill(now);
+        this.rate = rate;
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Возвращает количество доступных маркеров (отрицательное - при наличии зарезервированных наперед разрешений)
+     */
+    public synchronized double available(long now) {
+        refill(now);
+
+        return tokens;
+    }
+
+    private void refill(long now) {
+        if (now > refilledAt) {
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / NANOS_PER_SECOND);
+            refilledAt = now;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package me.sample.domain;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Очередь с отдельной очередью элементов для каждого ключа (например, кампании).
+ * <p>
+ * Очереди ключей обходятся взвешенным циклическим обходом (smooth weighted round-robin): при каждом извлечении
+ * текущий вес каждой непустой очереди увеличивается на ее вес, элемент извлекается из очереди с наибольшим
+ * текущим весом, а ее текущий вес уменьшается на сумму весов непустых очередей. Ключ получает долю извлечений,
+ * пропорциональную своему весу, и элементы одного ключа не ожидают за всеми элементами другого
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class WeightedFairQueue<K, T> {
+
+    Lock lock = new ReentrantLock();
+
+    Condition notEmpty = lock.newCondition();
+
+    Map<K, KeyQueue<T>> queues = new LinkedHashMap<>();
+
+    @NonFinal
+    int size;
+
+    /**
+     * Добавляет элемент в очередь ключа
+     *
+     * @param weight вес ключа. Заменяет вес, заданный ранее, если очередь ключа не пуста
+     */
+    public void offer(K key, double weight, T element) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException(String.format("Arg: weight must be positive: %s", weight));
+        }
+
+        if (element == null) {
+            throw new IllegalArgumentException("Arg: element must not be null");
+        }
+
+        lock.lock();
+        try {
+            KeyQueue<T> queue = queues.computeIfAbsent(key, (K found) -> new KeyQueue<>());
+            queue.weight = weight;
+            queue.elements.add(element);
+            size++;
+
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Извлекает очередной элемент
+     *
+     * @return null, если очередь пуста
+     */
+    public T poll() {
+        lock.lock();
+        try {
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Извлекает очередной элемент, ожидая его появления не дольше timeout
+     *
+     * @return null, если за время ожидания элемент не появился
+     */
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                remaining = notEmpty.awaitNanos(remaining);
+            }
+
+            return next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает количество ключей, ожидающих извлечения элементов
+     */
+    public int keyCount() {
+        lock.lock();
+        try {
+            return queues.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Вызывается под блокировкой
+     */
+    private T next() {
+        if (size == 0) {
+            return null;
+        }
+
+        double totalWeight = 0;
+        K selectedKey = null;
+        KeyQueue<T> selected = null;
+        for (Map.Entry<K, KeyQueue<T>> entry : queues.entrySet()) {
+            KeyQueue<T> queue = entry.getValue();
+            queue.current += queue.weight;
+            totalWeight += queue.weight;
+            if (selected == null || queue.current > selected.current) {
+                selectedKey = entry.getKey();
+                selected = queue;
+            }
+        }
+
+        selected.current -= totalWeight;
+
+        T result = selected.elements.poll();
+        size--;
+        if (selected.elements.isEmpty()) {
+            queues.remove(selectedKey);
+        }
+
+        return result;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class KeyQueue<T> {
+
+        final Queue<T> elements = new ArrayDeque<>();
+
+        double weight;
+
+        double current;
+    }
+}
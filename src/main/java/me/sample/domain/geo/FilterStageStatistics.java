@@ -0,0 +1,57 @@
+package me.sample.domain.geo;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Накопленная статистика этапа фильтрации: количество проверок, отклонений и затраченное время
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class FilterStageStatistics {
+
+    LongAdder evaluations = new LongAdder();
+
+    LongAdder rejections = new LongAdder();
+
+    LongAdder elapsedNanos = new LongAdder();
+
+    public void record(long nanos, boolean accepted) {
+        evaluations.increment();
+        elapsedNanos.add(nanos);
+        if (!accepted) {
+            rejections.increment();
+        }
+    }
+
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * Возвращает среднюю стоимость проверки, приходящуюся на долю отклоненных кандидатов.
+     * Этапы с меньшим значением выгоднее выполнять раньше.
+     * Пока проверок меньше указанного количества, статистика считается недостаточной и возвращается 0
+     */
+    public double getRank(long minEvaluations) {
+        long evaluationCount = evaluations.sum();
+        if (evaluationCount == 0 || evaluationCount < minEvaluations) {
+            return 0;
+        }
+
+        long rejectionCount = rejections.sum();
+        if (rejectionCount == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+
+        double averageNanos = (double) elapsedNanos.sum() / evaluationCount;
+        double rejectionRate = (double) rejectionCount / evaluationCount;
+
+        return averageNanos / rejectionRate;
+    }
+}
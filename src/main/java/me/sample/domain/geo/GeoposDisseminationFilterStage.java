@@ -0,0 +1,130 @@
+package me.sample.domain.geo;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import me.sample.domain.Terminal;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Этапы отбора правил рассылки по геолокации для терминала
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Getter
+public enum GeoposDisseminationFilterStage {
+
+    /**
+     * Терминал находится в радиусе рассылки от торговой точки
+     */
+    RADIUS(false) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            return distanceToGeoposition <= rule.getRadius();
+        }
+    },
+
+    /**
+     * Рассылка принадлежит компании приложения терминала
+     */
+    COMPANY(false) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            return context.getCompanyId().equals(rule.getCompanyId());
+        }
+    },
+
+    /**
+     * Текущий момент попадает в период рассылки
+     */
+    SCHEDULE(false) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            // TODO нужно будет добавить учет часовых поясов ТТ и терминала
+            return rule.isActiveAt(context.getNow());
+        }
+    },
+
+    /**
+     * Терминал удовлетворяет фильтрам рассылки
+     */
+    TERMINAL_FILTER(false) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            return rule.getFilter().test(context.getTerminal());
+        }
+    },
+
+    /**
+     * Не превышен лимит уведомлений кампании
+     */
+    CAMPAIGN_NOTIFICATION_LIMIT(true) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            Long limit = rule.getNotificationLimit();
+
+            return limit == null ||
+                    context.countSent(rule.getCampaignId()) < limit;
+        }
+    },
+
+    /**
+     * Не превышен лимит уведомлений кампании для терминала
+     */
+    CAMPAIGN_TERMINAL_NOTIFICATION_LIMIT(true) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            Long limit = rule.getNotificationLimitPerTerminal();
+
+            return limit == null ||
+                    context.countSent(rule.getCampaignId(), context.getTerminal().getId()) < limit;
+        }
+    },
+
+    /**
+     * Клиент терминала входит в список клиентов кампании
+     */
+    CAMPAIGN_CLIENT(true) {
+        @Override
+        public boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context) {
+            return context.isCampaignAvailableForTerminal(rule.getCampaignId());
+        }
+    };
+
+    /**
+     * Проверка может потребовать обращения к базе, поэтому выполняется
+     * после упорядочивания правил по приоритету и только до первого подходящего правила
+     */
+    boolean deferred;
+
+    /**
+     * Проверяет правило рассылки для терминала
+     *
+     * @param distanceToGeoposition расстояние от терминала до ближайшей торговой точки правила
+     */
+    public abstract boolean test(GeoposDisseminationRule rule, double distanceToGeoposition, Context context);
+
+    /**
+     * Терминал, для которого отбираются правила, и данные, необходимые для проверок
+     */
+    public interface Context {
+
+        Terminal getTerminal();
+
+        /**
+         * Компания приложения терминала
+         */
+        UUID getCompanyId();
+
+        LocalDateTime getNow();
+
+        long countSent(UUID campaignId);
+
+        long countSent(UUID campaignId, UUID terminalId);
+
+        boolean isCampaignAvailableForTerminal(UUID campaignId);
+    }
+}
@@ -0,0 +1,65 @@
+package me.sample.domain.geo;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import me.sample.domain.PropFilter;
+import me.sample.domain.TerminalFilter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Неизменяемое правило запущенной рассылки по геолокации, не связанное с сущностями Hibernate
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+@Builder
+@Getter
+public class GeoposDisseminationRule {
+
+    UUID disseminationId;
+
+    UUID campaignId;
+
+    UUID companyId;
+
+    long radius;
+
+    int priority;
+
+    /**
+     * Лимит уведомлений кампании
+     */
+    Long notificationLimit;
+
+    /**
+     * Лимит уведомлений кампании для одного терминала
+     */
+    Long notificationLimitPerTerminal;
+
+    LocalDateTime start;
+
+    LocalDateTime end;
+
+    List<PropFilter> filters;
+
+    TerminalFilter filter;
+
+    Set<UUID> storeIds;
+
+    Set<UUID> partnerIds;
+
+    /**
+     * Проверяет, что указанный момент времени попадает в период рассылки: start < now <= end
+     */
+    public boolean isActiveAt(LocalDateTime now) {
+        return start != null && end != null &&
+                now.isAfter(start) &&
+                !now.isAfter(end);
+    }
+}
@@ -0,0 +1,74 @@
+package me.sample.domain.geo;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Неизменяемый снимок правил запущенных рассылок по геолокации,
+ * проиндексированных по торговым точкам и партнерам
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class GeoposDisseminationSnapshot {
+
+    private static final GeoposDisseminationSnapshot EMPTY = new GeoposDisseminationSnapshot(Collections.emptyList());
+
+
+    List<GeoposDisseminationRule> rules;
+
+    Map<UUID, List<GeoposDisseminationRule>> rulesByStoreId;
+
+    Map<UUID, List<GeoposDisseminationRule>> rulesByPartnerId;
+
+    private GeoposDisseminationSnapshot(Collection<GeoposDisseminationRule> rules) {
+        Map<UUID, List<GeoposDisseminationRule>> rulesByStoreId = new HashMap<>();
+        Map<UUID, List<GeoposDisseminationRule>> rulesByPartnerId = new HashMap<>();
+        for (GeoposDisseminationRule rule : rules) {
+            for (UUID storeId : rule.getStoreIds()) {
+                rulesByStoreId.computeIfAbsent(storeId, (UUID key) -> new ArrayList<>()).add(rule);
+            }
+
+            for (UUID partnerId : rule.getPartnerIds()) {
+                rulesByPartnerId.computeIfAbsent(partnerId, (UUID key) -> new ArrayList<>()).add(rule);
+            }
+        }
+
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.rulesByStoreId = rulesByStoreId;
+        this.rulesByPartnerId = rulesByPartnerId;
+    }
+
+    public static GeoposDisseminationSnapshot empty() {
+        return EMPTY;
+    }
+
+    public static GeoposDisseminationSnapshot of(Collection<GeoposDisseminationRule> rules) {
+        return new GeoposDisseminationSnapshot(rules);
+    }
+
+    public List<GeoposDisseminationRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Возвращает правила рассылок, в которых торговая точка участвует напрямую или через своего партнера
+     */
+    public Set<GeoposDisseminationRule> findRules(UUID storeId, UUID partnerId) {
+        Set<GeoposDisseminationRule> result = new LinkedHashSet<>(
+                rulesByStoreId.getOrDefault(storeId, Collections.emptyList()));
+        if (partnerId != null) {
+            result.addAll(rulesByPartnerId.getOrDefault(partnerId, Collections.emptyList()));
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,192 @@
+package me.sample.domain.geo;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import me.sample.utils.geo.Converter;
+import me.sample.utils.geo.GeoUtils;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Неизменяемый пространственный индекс торговых точек на равномерной сетке
+ * (ячейка: cellSize x cellSize градусов).
+ * <p>
+ * Изменение индекса порождает новый экземпляр, в котором перестроены лишь затронутые ячейки
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class StoreGridIndex {
+
+    private static final double METERS_PER_DEGREE = Converter.fromDegToKm(1) * 1000;
+
+    private static final StoreLocation[] NO_LOCATIONS = new StoreLocation[0];
+
+
+    double cellSize;
+
+    int lonCellCount;
+
+    Map<UUID, StoreLocation> locations;
+
+    Map<Long, StoreLocation[]> cells;
+
+    long maxRadius;
+
+    private StoreGridIndex(double cellSize, Map<UUID, StoreLocation> locations, Map<Long, StoreLocation[]> cells) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException(String.format("Arg: cellSize must be positive: %s", cellSize));
+        }
+
+        this.cellSize = cellSize;
+        this.lonCellCount = (int) Math.ceil(360 / cellSize);
+        this.locations = locations;
+        this.cells = cells;
+        this.maxRadius = locations.values().stream()
+                .mapToLong(StoreLocation::getRadius)
+                .max()
+                .orElse(0);
+    }
+
+    public static StoreGridIndex empty(double cellSize) {
+        return new StoreGridIndex(cellSize, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    public static StoreGridIndex of(double cellSize, Collection<StoreLocation> locations) {
+        return empty(cellSize).with(locations, Collections.emptySet());
+    }
+
+    public int size() {
+        return locations.size();
+    }
+
+    public long getMaxRadius() {
+        return maxRadius;
+    }
+
+    /**
+     * Возвращает новый индекс, в котором указанные местоположения добавлены (или заменены),
+     * а торговые точки с указанными идентификаторами удалены
+     */
+    public StoreGridIndex with(Collection<StoreLocation> updated, Collection<UUID> removedStoreIds) {
+        Map<UUID, StoreLocation> updatedByStoreId = new LinkedHashMap<>();
+        for (StoreLocation location : updated) {
+            updatedByStoreId.put(location.getStoreId(), location);
+        }
+
+        Set<UUID> changedStoreIds = new HashSet<>(updatedByStoreId.keySet());
+        changedStoreIds.addAll(removedStoreIds);
+
+        Map<UUID, StoreLocation> resultLocations = new HashMap<>(locations);
+        Set<Long> affectedCells = new HashSet<>();
+        for (UUID storeId : changedStoreIds) {
+            StoreLocation previous = resultLocations.remove(storeId);
+            if (previous != null) {
+                affectedCells.add(cellOf(previous));
+            }
+        }
+
+        for (StoreLocation location : updatedByStoreId.values()) {
+            resultLocations.put(location.getStoreId(), location);
+            affectedCells.add(cellOf(location));
+        }
+
+        if (affectedCells.isEmpty()) {
+            return this;
+        }
+
+        Map<Long, List<StoreLocation>> rebuiltCells = new HashMap<>();
+        for (Long cell : affectedCells) {
+            List<StoreLocation> kept = new ArrayList<>();
+            for (StoreLocation location : cells.getOrDefault(cell, NO_LOCATIONS)) {
+                if (!changedStoreIds.contains(location.getStoreId())) {
+                    kept.add(location);
+                }
+            }
+
+            rebuiltCells.put(cell, kept);
+        }
+
+        for (StoreLocation location : updatedByStoreId.values()) {
+            rebuiltCells.get(cellOf(location)).add(location);
+        }
+
+        Map<Long, StoreLocation[]> resultCells = new HashMap<>(cells);
+        rebuiltCells.forEach((Long cell, List<StoreLocation> cellLocations) -> {
+            if (cellLocations.isEmpty()) {
+                resultCells.remove(cell);
+            } else {
+                resultCells.put(cell, cellLocations.toArray(NO_LOCATIONS));
+            }
+        });
+
+        return new StoreGridIndex(cellSize, resultLocations, resultCells);
+    }
+
+    /**
+     * Ищет торговые точки, в радиус захвата которых попадает указанная геопозиция.
+     *
+     * @return пары (торговая точка, расстояние до геопозиции в метрах), упорядоченные по возрастанию расстояния
+     */
+    public List<Map.Entry<StoreLocation, Double>> findWithinRadius(double lat, double lon) {
+        if (locations.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        double latSpan = maxRadius / METERS_PER_DEGREE;
+        double cos = Math.cos(Math.toRadians(lat));
+        double lonSpan = cos < 1e-6 ? 180 : Math.min(180, latSpan / cos);
+
+        int fromLatIndex = indexOf(lat - latSpan, 90);
+        int toLatIndex = indexOf(lat + latSpan, 90);
+        int fromLonIndex = indexOf(lon - lonSpan, 180);
+        int toLonIndex = indexOf(lon + lonSpan, 180);
+        if (toLonIndex - fromLonIndex + 1 > lonCellCount) {
+            fromLonIndex = 0;
+            toLonIndex = lonCellCount - 1;
+        }
+
+        List<Map.Entry<StoreLocation, Double>> result = new ArrayList<>();
+        for (int latIndex = fromLatIndex; latIndex <= toLatIndex; latIndex++) {
+            for (int lonIndex = fromLonIndex; lonIndex <= toLonIndex; lonIndex++) {
+                StoreLocation[] cellLocations = cells.get(keyOf(latIndex, Math.floorMod(lonIndex, lonCellCount)));
+                if (cellLocations == null) {
+                    continue;
+                }
+
+                for (StoreLocation location : cellLocations) {
+                    double distance = GeoUtils.getDistanceInMeters(lat, lon, location.getLat(), location.getLon());
+                    if (distance <= location.getRadius()) {
+                        result.add(new AbstractMap.SimpleImmutableEntry<>(location, distance));
+                    }
+                }
+            }
+        }
+
+        result.sort(Map.Entry.comparingByValue());
+
+        return result;
+    }
+
+    private long cellOf(StoreLocation location) {
+        return keyOf(
+                indexOf(location.getLat(), 90),
+                Math.floorMod(indexOf(location.getLon(), 180), lonCellCount));
+    }
+
+    private int indexOf(double degrees, double offset) {
+        return (int) Math.floor((degrees + offset) / cellSize);
+    }
+
+    private static long keyOf(int latIndex, int lonIndex) {
+        return ((long) latIndex << 32) | (lonIndex & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,32 @@
+package me.sample.domain.geo;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.UUID;
+
+/**
+ * Местоположение активной торговой точки, участвующей в запущенных рассылках по геолокации
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@AllArgsConstructor
+@Builder
+@Getter
+public class StoreLocation {
+
+    UUID storeId;
+
+    UUID partnerId;
+
+    double lat;
+
+    double lon;
+
+    /**
+     * Максимальный радиус захвата (в метрах) среди запущенных рассылок торговой точки
+     */
+    long radius;
+}
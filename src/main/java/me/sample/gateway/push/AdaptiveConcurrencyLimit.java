@@ -0,0 +1,183 @@
+package me.sample.gateway.push;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Адаптивное ограничение количества одновременных запросов (AIMD).
+ * <p>
+ * Пока задержка ответов не растет, ограничение увеличивается на единицу за окно (limit завершенных запросов),
+ * если оно используется хотя бы наполовину. При отказе из-за превышения квоты или при росте задержки
+ * (кратковременное среднее превышает долговременное более чем в tolerance раз) ограничение умножается
+ * на backoffRatio, но не чаще одного раза за окно
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class AdaptiveConcurrencyLimit {
+
+    private static final double SHORT_RTT_WEIGHT = 0.1;
+
+    private static final double LONG_RTT_WEIGHT = 0.01;
+
+
+    int minLimit;
+
+    int maxLimit;
+
+    double backoffRatio;
+
+    double tolerance;
+
+    Lock lock = new ReentrantLock();
+
+    Condition released = lock.newCondition();
+
+    @NonFinal
+    double limit;
+
+    @NonFinal
+    int inFlight;
+
+    @NonFinal
+    double shortRtt;
+
+    @NonFinal
+    double longRtt;
+
+    @NonFinal
+    int releasedSinceDecrease;
+
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+        if (minLimit < 1 || maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format(
+                    "Illegal limits provided: initial: %s, min: %s, max: %s",
+                    initialLimit, minLimit, maxLimit));
+        }
+
+        if (backoffRatio <= 0 || backoffRatio >= 1) {
+            throw new IllegalArgumentException(String.format("Illegal backoff ratio provided: %s", backoffRatio));
+        }
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Ожидает освобождения места под запрос не дольше timeout
+     *
+     * @return true, если место получено. В этом случае необходимо вызвать {@link #release(long, boolean)}
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+
+        lock.lock();
+        try {
+            while (inFlight >= (int) limit) {
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                remaining = released.awaitNanos(remaining);
+            }
+
+            inFlight++;
+
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место после завершения запроса
+     *
+     * @param rttNanos  время выполнения запроса
+     * @param throttled запрос отклонен из-за превышения квоты
+     */
+    public void release(long rttNanos, boolean throttled) {
+        lock.lock();
+        try {
+            int used = inFlight;
+            inFlight--;
+            releasedSinceDecrease++;
+
+            if (throttled) {
+                decrease();
+            } else {
+                sample(rttNanos);
+
+                if (longRtt > 0 && shortRtt > longRtt * tolerance) {
+                    decrease();
+                } else if (used * 2 >= limit) {
+                    limit = Math.min(maxLimit, limit + 1 / limit);
+                }
+            }
+
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Освобождает место без учета запроса: запрос не был отправлен, поэтому его время выполнения
+     * не влияет на ограничение
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void sample(long rttNanos) {
+        if (shortRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+
+            return;
+        }
+
+        shortRtt += (rttNanos - shortRtt) * SHORT_RTT_WEIGHT;
+        longRtt += (rttNanos - longRtt) * LONG_RTT_WEIGHT;
+    }
+
+    private void decrease() {
+        if (releasedSinceDecrease < (int) limit) {
+            return;
+        }
+
+        limit = Math.max(minLimit, limit * backoffRatio);
+        releasedSinceDecrease = 0;
+    }
+}
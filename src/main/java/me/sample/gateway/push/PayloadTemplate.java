@@ -0,0 +1,71 @@
+package me.sample.gateway.push;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Objects;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Заранее сформированное содержимое уведомления с местом для идентификатора уведомления.
+ * <p>
+ * Содержимое формируется один раз с временным идентификатором, который затем заменяется
+ * на идентификатор конкретного уведомления простой склейкой строк
+ */
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public final class PayloadTemplate {
+
+    private static final int UUID_LENGTH = 36;
+
+
+    String prefix;
+
+    String suffix;
+
+    boolean slotted;
+
+    private PayloadTemplate(String prefix, String suffix, boolean slotted) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.slotted = slotted;
+    }
+
+    /**
+     * Формирует шаблон
+     *
+     * @param renderer формирование содержимого для идентификатора уведомления
+     */
+    public static PayloadTemplate compile(Function<UUID, String> renderer) {
+        String placeholder = UUID.randomUUID().toString();
+        String rendered = renderer.apply(UUID.fromString(placeholder));
+
+        int index = rendered.indexOf(placeholder);
+        if (index < 0) {
+            return new PayloadTemplate(rendered, "", false);
+        }
+
+        if (rendered.indexOf(placeholder, index + UUID_LENGTH) >= 0) {
+            throw new IllegalArgumentException("Notification id is expected to be rendered once");
+        }
+
+        return new PayloadTemplate(
+                rendered.substring(0, index),
+                rendered.substring(index + UUID_LENGTH),
+                true);
+    }
+
+    public String render(UUID notificationId) {
+        if (!slotted) {
+            return prefix;
+        }
+
+        Objects.requireNonNull(notificationId, "No notification id provided");
+
+        return new StringBuilder(prefix.length() + UUID_LENGTH + suffix.length())
+                .append(prefix)
+                .append(notificationId)
+                .append(suffix)
+                .toString();
+    }
+}
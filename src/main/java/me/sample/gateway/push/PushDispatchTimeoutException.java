@@ -0,0 +1,14 @@
+package me.sample.gateway.push;
+
+import me.sample.gateway.GatewayException;
+
+/**
+ * Разрешение на отправку не было получено за отведенное время: сервер уведомлений отвечает медленно
+ * либо запросов слишком много, поэтому отправку имеет смысл повторить позже
+ */
+public class PushDispatchTimeoutException extends GatewayException {
+
+    public PushDispatchTimeoutException(String message) {
+        super(message);
+    }
+}
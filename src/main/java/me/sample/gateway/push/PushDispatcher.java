@@ -0,0 +1,359 @@
+package me.sample.gateway.push;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.TerminalPlatform;
+import me.sample.gateway.GatewayException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiPredicate;
+import java.util.function.Supplier;
+
+/**
+ * Ограничивает отправку push-уведомлений по платформам.
+ * <p>
+ * Для каждой платформы задается адаптивное ограничение количества одновременно отправляемых уведомлений
+ * (ожидающих ответа сервера, см. {@link AdaptiveConcurrencyLimit}) и ограниченная очередь на подготовку и передачу
+ * уведомлений шлюзу. При исчерпании ограничения вызывающий поток ожидает освобождения (не дольше acquire-timeout),
+ * при заполнении очереди - выполняет передачу сам.
+ * Тем самым рассылка замедляется до скорости, с которой отвечают серверы уведомлений.
+ * <p>
+ * Запросы, отправляющие несколько уведомлений сразу (пакеты FCM), выполняются через
+ * {@link #execute(TerminalPlatform, Callable, BiPredicate)}: разрешение занимает весь запрос, а его задержка
+ * измеряется от начала запроса, без учета ожидания накопления пакета.
+ * <p>
+ * Для уведомлений в реальном времени зарезервировано realtime-permits одновременных отправок на платформу:
+ * они передаются шлюзу в вызывающем потоке, не ожидая ни разрешений, ни очереди массовых отправок
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Component
+public class PushDispatcher {
+
+    MeterRegistry meterRegistry;
+
+    Map<TerminalPlatform, Lane> lanes = new EnumMap<>(TerminalPlatform.class);
+
+    @NonFinal
+    @Value("${push.dispatch.limit.initial:100}")
+    int initialLimit;
+
+    @NonFinal
+    @Value("${push.dispatch.limit.min:10}")
+    int minLimit;
+
+    @NonFinal
+    @Value("${push.dispatch.limit.max:1000}")
+    int maxLimit;
+
+    @NonFinal
+    @Value("${push.dispatch.limit.backoff-ratio:0.9}")
+    double backoffRatio;
+
+    @NonFinal
+    @Value("${push.dispatch.limit.latency-tolerance:2.0}")
+    double latencyTolerance;
+
+    @NonFinal
+    @Value("${push.dispatch.queue-capacity:1000}")
+    int queueCapacity;
+
+    @NonFinal
+    @Value("${push.dispatch.thread-count:2}")
+    int threadCount;
+
+    @NonFinal
+    @Value("${push.dispatch.acquire-timeout:30000}")
+    long acquireTimeoutMillis;
+
+    @NonFinal
+    @Value("${push.dispatch.realtime-permits:20}")
+    int realtimePermits;
+
+    @PostConstruct
+    private void postConstruct() {
+        for (TerminalPlatform platform : new TerminalPlatform[]{TerminalPlatform.ANDROID, TerminalPlatform.IOS}) {
+            lanes.put(platform, createLane(platform));
+        }
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        lanes.values().forEach((Lane lane) -> lane.getExecutor().shutdown());
+    }
+
+    /**
+     * Передает уведомление на отправку
+     *
+     * @param sender    передача уведомления шлюзу, возвращающая результат отправки
+     * @param throttled признак отказа сервера из-за превышения квоты (ответ, ошибка)
+     * @return результат отправки. Завершается с {@link PushDispatchTimeoutException}, если разрешение на отправку не было получено
+     */
+    public <T> CompletableFuture<T> dispatch(TerminalPlatform platform,
+                                             Supplier<? extends CompletionStage<? extends T>> sender,
+                                             BiPredicate<? super T, Throwable> throttled) {
+        Lane lane = lane(platform);
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!acquire(lane)) {
+            lane.getTimedOut().increment();
+            result.completeExceptionally(new PushDispatchTimeoutException(String.format(
+                    "No push dispatch permit acquired for platform: %s within %s ms",
+                    platform,
+                    acquireTimeoutMillis)));
+
+            return result;
+        }
+
+        try {
+            lane.getExecutor().execute(() -> send(lane, sender, throttled, result, false));
+        } catch (RuntimeException exception) {
+            lane.getLimit().release();
+            result.completeExceptionally(new GatewayException(exception));
+        }
+
+        return result;
+    }
+
+    /**
+     * Выполняет синхронный запрос к серверу уведомлений в вызывающем потоке, заняв одно разрешение на весь запрос
+     *
+     * @param request   запрос, например, пакетная отправка уведомлений
+     * @param throttled признак отказа сервера из-за превышения квоты (ответ, ошибка)
+     * @return ответ сервера
+     * @throws PushDispatchTimeoutException если разрешение на запрос не было получено
+     */
+    public <T> T execute(TerminalPlatform platform,
+                         Callable<T> request,
+                         BiPredicate<? super T, Throwable> throttled) throws Exception {
+        Lane lane = lane(platform);
+        if (!acquire(lane)) {
+            lane.getTimedOut().increment();
+            throw new PushDispatchTimeoutException(String.format(
+                    "No push dispatch permit acquired for platform: %s within %s ms",
+                    platform,
+                    acquireTimeoutMillis));
+        }
+
+        long start = System.nanoTime();
+        T response = null;
+        Throwable failure = null;
+        try {
+            response = request.call();
+
+            return response;
+        } catch (Exception exception) {
+            failure = exception;
+
+            throw exception;
+        } finally {
+            long rtt = System.nanoTime() - start;
+            boolean rejected = throttled.test(response, failure);
+
+            lane.release(rtt, rejected, false);
+            lane.getLatency().record(rtt, TimeUnit.NANOSECONDS);
+            if (rejected) {
+                lane.getThrottled().increment();
+            }
+        }
+    }
+
+    /**
+     * Передает уведомление в реальном времени на отправку вне очереди массовых отправок.
+     * При исчерпании зарезервированных разрешений уведомление передается как обычно, см. {@link #dispatch}
+     *
+     * @param sender    передача уведомления шлюзу, возвращающая результат отправки
+     * @param throttled признак отказа сервера из-за превышения квоты (ответ, ошибка)
+     * @return результат отправки
+     */
+    public <T> CompletableFuture<T> dispatchRealtime(TerminalPlatform platform,
+                                                     Supplier<? extends CompletionStage<? extends T>> sender,
+                                                     BiPredicate<? super T, Throwable> throttled) {
+        Lane lane = lane(platform);
+        if (!lane.getRealtimePermits().tryAcquire()) {
+            lane.getRealtimeOverflow().increment();
+
+            return dispatch(platform, sender, throttled);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        send(lane, sender, throttled, result, true);
+
+        return result;
+    }
+
+    private Lane lane(TerminalPlatform platform) {
+        Lane result = lanes.get(platform);
+        if (result == null) {
+            throw new UnsupportedOperationException(String.format("Unsupported terminal platform provided: %s", platform));
+        }
+
+        return result;
+    }
+
+    private boolean acquire(Lane lane) {
+        try {
+            return lane.getLimit().tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        }
+    }
+
+    /**
+     * @param realtime отправка по зарезервированному разрешению. Не учитывается адаптивным ограничением
+     */
+    private static <T> void send(Lane lane,
+                                 Supplier<? extends CompletionStage<? extends T>> sender,
+                                 BiPredicate<? super T, Throwable> throttled,
+                                 CompletableFuture<T> result,
+                                 boolean realtime) {
+        long start = System.nanoTime();
+
+        CompletionStage<? extends T> sent;
+        try {
+            sent = sender.get();
+        } catch (RuntimeException exception) {
+            lane.release(System.nanoTime() - start, false, realtime);
+            result.completeExceptionally(exception);
+
+            return;
+        }
+
+        sent.whenComplete((T value, Throwable throwable) -> {
+            long rtt = System.nanoTime() - start;
+            boolean rejected = throttled.test(value, throwable);
+
+            lane.release(rtt, rejected, realtime);
+            lane.getLatency().record(rtt, TimeUnit.NANOSECONDS);
+            if (rejected) {
+                lane.getThrottled().increment();
+            }
+
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private Lane createLane(TerminalPlatform platform) {
+        String tag = platform.name();
+
+        Counter callerRuns = Counter.builder("push.dispatch.rejected")
+                .tag("platform", tag)
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+        Counter timedOut = Counter.builder("push.dispatch.rejected")
+                .tag("platform", tag)
+                .tag("reason", "in_flight_limit")
+                .register(meterRegistry);
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threadCount,
+                threadCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("push-dispatch-" + tag.toLowerCase() + "-%d")
+                        .setDaemon(true)
+                        .build(),
+                (Runnable task, ThreadPoolExecutor pool) -> {
+                    // CallerRunsPolicy молча отбрасывает задачу остановленного пула, и результат не был бы завершен
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException(String.format(
+                                "Push dispatch executor for platform: %s is shut down", tag));
+                    }
+
+                    callerRuns.increment();
+                    new ThreadPoolExecutor.CallerRunsPolicy().rejectedExecution(task, pool);
+                });
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(
+                initialLimit,
+                minLimit,
+                maxLimit,
+                backoffRatio,
+                latencyTolerance);
+        Counter throttled = Counter.builder("push.dispatch.throttled")
+                .tag("platform", tag)
+                .register(meterRegistry);
+        Timer latency = Timer.builder("push.dispatch.latency")
+                .tag("platform", tag)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+
+        Semaphore reserved = new Semaphore(realtimePermits);
+        Counter realtimeOverflow = Counter.builder("push.dispatch.realtime.overflow")
+                .tag("platform", tag)
+                .register(meterRegistry);
+
+        Gauge.builder("push.dispatch.realtime.in-flight", reserved, (Semaphore permits) -> realtimePermits - permits.availablePermits())
+                .tag("platform", tag)
+                .register(meterRegistry);
+        Gauge.builder("push.dispatch.queue", executor, (ThreadPoolExecutor pool) -> pool.getQueue().size())
+                .tag("platform", tag)
+                .register(meterRegistry);
+        Gauge.builder("push.dispatch.in-flight", limit, AdaptiveConcurrencyLimit::getInFlight)
+                .tag("platform", tag)
+                .register(meterRegistry);
+        Gauge.builder("push.dispatch.limit", limit, AdaptiveConcurrencyLimit::getLimit)
+                .tag("platform", tag)
+                .register(meterRegistry);
+
+        return new Lane(executor, limit, reserved, timedOut, throttled, realtimeOverflow, latency);
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor
+    @Getter
+    private static final class Lane {
+
+        ThreadPoolExecutor executor;
+
+        AdaptiveConcurrencyLimit limit;
+
+        Semaphore realtimePermits;
+
+        Counter timedOut;
+
+        Counter throttled;
+
+        Counter realtimeOverflow;
+
+        Timer latency;
+
+        void release(long rttNanos, boolean rejected, boolean realtime) {
+            if (realtime) {
+                realtimePermits.release();
+            } else {
+                limit.release(rttNanos, rejected);
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package me.sample.gateway.push;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.TerminalPlatform;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Повторяет отправку уведомлений после временных отказов (сетевые ошибки, перегрузка или ошибка сервера).
+ * <p>
+ * Повторные попытки откладываются на колесе таймеров ({@link HashedWheelTimer}) с экспоненциально растущей
+ * задержкой: половина задержки фиксирована, половина случайна, чтобы повторы разных уведомлений не совпадали.
+ * После max-attempts попыток результат последней попытки возвращается как есть (уведомление считается
+ * неотправленным). Количество повторов и исчерпанных попыток учитывается по платформам и причинам отказа
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Component
+public class PushRetryScheduler {
+
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${push.retry.max-attempts:5}")
+    int maxAttempts;
+
+    @NonFinal
+    @Value("${push.retry.initial-backoff:1000}")
+    long initialBackoffMillis;
+
+    @NonFinal
+    @Value("${push.retry.max-backoff:60000}")
+    long maxBackoffMillis;
+
+    @NonFinal
+    @Value("${push.retry.multiplier:2.0}")
+    double multiplier;
+
+    @NonFinal
+    @Value("${push.retry.max-pending:100000}")
+    long maxPending;
+
+    @NonFinal
+    @Value("${push.retry.thread-count:2}")
+    int threadCount;
+
+    @NonFinal
+    HashedWheelTimer timer;
+
+    @NonFinal
+    ExecutorService executor;
+
+    @PostConstruct
+    private void postConstruct() {
+        timer = new HashedWheelTimer(
+                new ThreadFactoryBuilder()
+                        .setNameFormat("push-retry-timer-%d")
+                        .setDaemon(true)
+                        .build(),
+                100, TimeUnit.MILLISECONDS,
+                512,
+                true,
+                maxPending);
+        // Попытки выполняются вне потока таймера: отправка может ожидать разрешения диспетчера
+        executor = Executors.newFixedThreadPool(threadCount, new ThreadFactoryBuilder()
+                .setNameFormat("push-retry-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        int abandoned = timer.stop().size();
+        if (abandoned > 0) {
+            log.warn("Abandoned {} pending push retries", abandoned);
+        }
+
+        executor.shutdown();
+    }
+
+    /**
+     * Выполняет отправку с повторами
+     *
+     * @param sender          отправка
+     * @param transientReason причина временного отказа (ответ, ошибка), либо null, если отправка успешна
+     *                        или отказ окончательный
+     */
+    public <T> CompletableFuture<T> execute(TerminalPlatform platform,
+                                            Supplier<? extends CompletableFuture<T>> sender,
+                                            BiFunction<? super T, Throwable, String> transientReason) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(platform, sender, transientReason, 1, result);
+
+        return result;
+    }
+
+    private <T> void attempt(TerminalPlatform platform,
+                             Supplier<? extends CompletableFuture<T>> sender,
+                             BiFunction<? super T, Throwable, String> transientReason,
+                             int attempt,
+                             CompletableFuture<T> result) {
+        CompletableFuture<T> sent;
+        try {
+            sent = sender.get();
+        } catch (RuntimeException exception) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(exception);
+        }
+
+        sent.whenComplete((T value, Throwable throwable) -> {
+            String reason = transientReason.apply(value, throwable);
+            if (reason == null) {
+                complete(result, value, throwable);
+
+                return;
+            }
+
+            if (attempt >= maxAttempts) {
+                log.warn("Push to {} dead-lettered after {} attempts. Reason: {}", platform, attempt, reason);
+                meterRegistry.counter("push.retry.dead-lettered", "platform", platform.name(), "reason", reason)
+                        .increment();
+                complete(result, value, throwable);
+
+                return;
+            }
+
+            try {
+                timer.newTimeout(
+                        (Timeout timeout) -> retry(platform, sender, transientReason, attempt, reason, result, value, throwable),
+                        backoff(attempt),
+                        TimeUnit.MILLISECONDS);
+                meterRegistry.counter("push.retry.scheduled", "platform", platform.name(), "reason", reason)
+                        .increment();
+            } catch (RejectedExecutionException | IllegalStateException exception) {
+                log.warn("Push to {} not retried. Reason: {}", platform, exception.getMessage());
+                complete(result, value, throwable);
+            }
+        });
+    }
+
+    private <T> void retry(TerminalPlatform platform,
+                           Supplier<? extends CompletableFuture<T>> sender,
+                           BiFunction<? super T, Throwable, String> transientReason,
+                           int attempt,
+                           String reason,
+                           CompletableFuture<T> result,
+                           T value,
+                           Throwable throwable) {
+        try {
+            executor.execute(() -> attempt(platform, sender, transientReason, attempt + 1, result));
+        } catch (RejectedExecutionException exception) {
+            // Исполнитель остановлен: повтор невозможен, возвращается результат последней попытки
+            log.warn("Push to {} dead-lettered after {} attempts, retry rejected. Reason: {}", platform, attempt, reason);
+            meterRegistry.counter("push.retry.dead-lettered", "platform", platform.name(), "reason", reason)
+                    .increment();
+            complete(result, value, throwable);
+        }
+    }
+
+    long backoff(int attempt) {
+        double exponential = initialBackoffMillis * Math.pow(multiplier, attempt - 1);
+        long capped = (long) Math.min(maxBackoffMillis, exponential);
+        long half = capped / 2;
+
+        return half + ThreadLocalRandom.current().nextLong(capped - half + 1);
+    }
+
+    /**
+     * Возвращает описание ошибки, не связанной с ответом сервера уведомлений (сетевая ошибка и т.п.)
+     */
+    public static String describeFailure(Throwable throwable) {
+        return Throwables.getRootCause(throwable).getClass().getSimpleName();
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, T value, Throwable throwable) {
+        if (throwable != null) {
+            result.completeExceptionally(throwable);
+        } else {
+            result.complete(value);
+        }
+    }
+}
@@ -11,11 +11,14 @@ import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
+import me.sample.gateway.push.PushRetryScheduler;
 import me.sample.gateway.push.apns.request.ApnsRequest;
 import me.sample.utils.JsonUtil;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -31,6 +34,25 @@ public class ApnsGateway {
         MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
     }
 
+    private static final String REJECTION_REASON_TOO_MANY_REQUESTS = "TooManyRequests";
+
+    /**
+     * Причины отказа, после которых отправку имеет смысл повторить
+     */
+    private static final List<String> TRANSIENT_REJECTION_REASONS = Arrays.asList(
+            REJECTION_REASON_TOO_MANY_REQUESTS,
+            "InternalServerError",
+            "ServiceUnavailable",
+            "Shutdown");
+
+    /**
+     * Причины отказа, означающие, что токен устройства больше не действителен
+     */
+    private static final List<String> INVALID_TOKEN_REJECTION_REASONS = Arrays.asList(
+            "Unregistered",
+            "BadDeviceToken",
+            "DeviceTokenNotForTopic");
+
 
     ApnsClient apnsClient;
 
@@ -39,8 +61,13 @@ public class ApnsGateway {
     String apnsTopic;
 
     public CompletableFuture<? extends PushNotificationResponse<? extends ApnsPushNotification>> sendRequestAsync(String token, ApnsRequest request) {
-        String payload = JsonUtil.json(request);
+        return sendPayloadAsync(token, JsonUtil.json(request));
+    }
 
+    /**
+     * Отправляет уведомление с заранее сформированным содержимым
+     */
+    public CompletableFuture<? extends PushNotificationResponse<? extends ApnsPushNotification>> sendPayloadAsync(String token, String payload) {
         log.debug("Sending message: {}...", payload);
 
         SimpleApnsPushNotification pushNotification = new SimpleApnsPushNotification(
@@ -50,4 +77,42 @@ public class ApnsGateway {
 
         return apnsClient.sendNotification(pushNotification);
     }
+
+    /**
+     * Проверяет, отклонено ли уведомление из-за превышения квоты
+     */
+    public static boolean isThrottled(PushNotificationResponse<? extends ApnsPushNotification> response, Throwable throwable) {
+        return response != null &&
+                !response.isAccepted() &&
+                REJECTION_REASON_TOO_MANY_REQUESTS.equals(response.getRejectionReason());
+    }
+
+    /**
+     * Проверяет, отклонено ли уведомление из-за недействительного токена устройства
+     */
+    public static boolean isTokenInvalid(PushNotificationResponse<? extends ApnsPushNotification> response) {
+        return response != null &&
+                !response.isAccepted() &&
+                INVALID_TOKEN_REJECTION_REASONS.contains(response.getRejectionReason());
+    }
+
+    /**
+     * Возвращает причину временного отказа: причину отказа APNs, после которой отправку имеет смысл повторить,
+     * либо описание ошибки, не связанной с ответом APNs (сетевая ошибка и т.п.)
+     *
+     * @return причина или null, если уведомление принято либо отказ окончательный
+     */
+    public static String transientFailureReason(PushNotificationResponse<? extends ApnsPushNotification> response, Throwable throwable) {
+        if (throwable != null) {
+            return PushRetryScheduler.describeFailure(throwable);
+        }
+
+        if (response == null || response.isAccepted()) {
+            return null;
+        }
+
+        String rejectionReason = response.getRejectionReason();
+
+        return TRANSIENT_REJECTION_REASONS.contains(rejectionReason) ? rejectionReason : null;
+    }
 }
@@ -1,22 +1,38 @@
 package me.sample.gateway.push.fcm;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.http.HttpResponseException;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.firebase.messaging.BatchResponse;
 import com.google.firebase.messaging.FirebaseMessaging;
 import com.google.firebase.messaging.FirebaseMessagingException;
 import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.SendResponse;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
-import me.sample.gateway.GatewayException;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import me.sample.domain.TerminalPlatform;
+import me.sample.gateway.GatewayException;
+import me.sample.gateway.push.PushDispatchTimeoutException;
+import me.sample.gateway.push.PushDispatcher;
+import me.sample.gateway.push.PushRetryScheduler;
 import me.sample.gateway.push.fcm.request.FcmRequest;
 
-import java.util.Map;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -24,32 +40,229 @@ import java.util.concurrent.CompletableFuture;
 @Component
 public class FcmGateway {
 
-    private static final ObjectMapper MAPPER;
+    /**
+     * Коды ошибок FCM, означающие превышение квоты (QUOTA_EXCEEDED) или перегрузку сервера (UNAVAILABLE)
+     */
+    private static final List<String> THROTTLING_ERROR_CODES = Arrays.asList(
+            "message-rate-exceeded",
+            "device-message-rate-exceeded",
+            "topics-message-rate-exceeded",
+            "server-unavailable");
 
-    static {
-        MAPPER = new ObjectMapper();
-        MAPPER.setSerializationInclusion(JsonInclude.Include.NON_NULL);
-    }
+    /**
+     * Коды ошибок FCM, после которых отправку имеет смысл повторить
+     */
+    private static final List<String> TRANSIENT_ERROR_CODES = Arrays.asList(
+            "message-rate-exceeded",
+            "device-message-rate-exceeded",
+            "topics-message-rate-exceeded",
+            "server-unavailable",
+            "internal-error",
+            "unknown-error");
+
+    private static final String ERROR_CODE_UNREGISTERED = "registration-token-not-registered";
+
+    private static final String ERROR_CODE_INVALID_ARGUMENT = "invalid-argument";
+
+    private static final String ERROR_TYPE_BAD_REQUEST = "type.googleapis.com/google.rpc.BadRequest";
+
+    private static final String FIELD_TOKEN = "message.token";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
 
     FirebaseMessaging firebaseMessaging;
 
-    @Async
+    PushDispatcher pushDispatcher;
+
+    @NonFinal
+    @Value("${push.fcm.batch.max-size:500}")
+    int batchMaxSize;
+
+    @NonFinal
+    @Value("${push.fcm.batch.max-delay:50}")
+    long batchMaxDelayMillis;
+
+    @NonFinal
+    @Value("${push.fcm.batch.sender-count:4}")
+    int batchSenderCount;
+
+    @NonFinal
+    FcmMessageBatcher batcher;
+
+    @PostConstruct
+    private void postConstruct() {
+        batcher = new FcmMessageBatcher(
+                firebaseMessaging,
+                batchMaxSize,
+                batchMaxDelayMillis,
+                batchSenderCount,
+                (Callable<BatchResponse> request) ->
+                        pushDispatcher.execute(TerminalPlatform.ANDROID, request, FcmGateway::isBatchThrottled));
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        batcher.close();
+    }
+
+    /**
+     * Ставит сообщение в очередь на пакетную отправку. Ограничение одновременных запросов
+     * ({@link PushDispatcher}) применяется к запросам пакетной отправки, а не к отдельным сообщениям
+     *
+     * @return идентификатор сообщения, присвоенный FCM
+     */
     public CompletableFuture<String> sendRequestAsync(String token, FcmRequest request) {
-        Map<String, String> data = MAPPER.convertValue(request, new TypeReference<Map<String, String>>() {
-        });
+        Message message = buildMessage(token, request);
+
+        log.debug("Sending message: {}...", message);
+
+        return batcher.send(message);
+    }
+
+    /**
+     * Отправляет сообщение отдельно, не ожидая накопления пакета (для уведомлений в реальном времени)
+     *
+     * @return идентификатор сообщения, присвоенный FCM
+     */
+    public CompletableFuture<String> sendRequestNowAsync(String token, FcmRequest request) {
+        Message message = buildMessage(token, request);
+
+        log.debug("Sending message now: {}...", message);
+
+        CompletableFuture<String> result = new CompletableFuture<>();
+        ApiFutures.addCallback(firebaseMessaging.sendAsync(message), new ApiFutureCallback<String>() {
 
-        Message message = Message.builder()
+            @Override
+            public void onFailure(Throwable throwable) {
+                result.completeExceptionally(new GatewayException(throwable));
+            }
+
+            @Override
+            public void onSuccess(String messageId) {
+                result.complete(messageId);
+            }
+        }, MoreExecutors.directExecutor());
+
+        return result;
+    }
+
+    private static Message buildMessage(String token, FcmRequest request) {
+        return Message.builder()
                 .setToken(token)
-                .putAllData(data)
+                .putAllData(request.toData())
                 .build();
+    }
 
-        log.debug("Sending message: {}...", message);
+    /**
+     * Проверяет, отклонено ли сообщение из-за превышения квоты
+     */
+    public static boolean isThrottled(String response, Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FirebaseMessagingException) {
+                return THROTTLING_ERROR_CODES.contains(((FirebaseMessagingException) cause).getErrorCode());
+            }
+        }
 
+        return false;
+    }
+
+    /**
+     * Проверяет, отклонен ли пакетный запрос или хотя бы одно сообщение пакета из-за превышения квоты
+     */
+    public static boolean isBatchThrottled(BatchResponse response, Throwable throwable) {
+        if (response == null) {
+            return isThrottled(null, throwable);
+        }
+
+        for (SendResponse sendResponse : response.getResponses()) {
+            if (!sendResponse.isSuccessful() && isThrottled(null, sendResponse.getException())) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Проверяет, отклонено ли сообщение из-за недействительного токена устройства.
+     * Ошибка INVALID_ARGUMENT учитывается, только если в деталях ответа FCM (google.rpc.BadRequest) она отнесена
+     * к полю токена, а не к содержимому сообщения, иначе ошибка в содержимом привела бы к сбросу токенов
+     * всех получателей. Если деталей нет (например, в ответе пакетной отправки), токен считается действительным
+     */
+    public static boolean isTokenInvalid(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FirebaseMessagingException) {
+                String errorCode = ((FirebaseMessagingException) cause).getErrorCode();
+
+                return ERROR_CODE_UNREGISTERED.equals(errorCode) ||
+                        ERROR_CODE_INVALID_ARGUMENT.equals(errorCode) && isTokenViolated(cause.getCause());
+            }
+        }
+
+        return false;
+    }
+
+    private static boolean isTokenViolated(Throwable cause) {
+        if (!(cause instanceof HttpResponseException)) {
+            return false;
+        }
+
+        String content = ((HttpResponseException) cause).getContent();
+        if (content == null || content.isEmpty()) {
+            return false;
+        }
+
+        JsonNode details;
         try {
-            return CompletableFuture.completedFuture(firebaseMessaging.send(message));
-        } catch (FirebaseMessagingException exception) {
-            throw new GatewayException(exception);
+            details = MAPPER.readTree(content).path("error").path("details");
+        } catch (IOException exception) {
+            log.warn("Unable to parse FCM error response: {}", content);
+
+            return false;
+        }
+
+        for (JsonNode detail : details) {
+            if (!ERROR_TYPE_BAD_REQUEST.equals(detail.path("@type").asText())) {
+                continue;
+            }
+
+            for (JsonNode violation : detail.path("fieldViolations")) {
+                if (FIELD_TOKEN.equals(violation.path("field").asText())) {
+                    return true;
+                }
+            }
         }
+
+        return false;
+    }
+
+    /**
+     * Возвращает причину временного отказа: код ошибки FCM, после которой отправку имеет смысл повторить,
+     * либо описание сетевой ошибки, таймаута или неполучения разрешения на отправку.
+     * Прочие ошибки (например, отказ исполнителя при остановке) считаются окончательными
+     *
+     * @return причина или null, если сообщение отправлено либо отказ окончательный
+     */
+    public static String transientFailureReason(String response, Throwable throwable) {
+        if (throwable == null) {
+            return null;
+        }
+
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof FirebaseMessagingException) {
+                String errorCode = ((FirebaseMessagingException) cause).getErrorCode();
+
+                return TRANSIENT_ERROR_CODES.contains(errorCode) ? errorCode : null;
+            }
+
+            if (cause instanceof IOException ||
+                    cause instanceof TimeoutException ||
+                    cause instanceof PushDispatchTimeoutException) {
+                return PushRetryScheduler.describeFailure(cause);
+            }
+        }
+
+        return null;
     }
 }
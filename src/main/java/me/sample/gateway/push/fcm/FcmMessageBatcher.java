@@ -0,0 +1,243 @@
+package me.sample.gateway.push.fcm;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.SendResponse;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.gateway.GatewayException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Накапливает сообщения FCM и отправляет их пакетами через {@link FirebaseMessaging#sendAll(List)}.
+ * <p>
+ * Пакет отправляется, как только накоплено maxBatchSize сообщений (не более 500 - ограничение FCM),
+ * либо по истечении maxDelayMillis с момента поступления первого сообщения пакета.
+ * Результат отправки каждого сообщения завершает его собственный {@link CompletableFuture}.
+ * <p>
+ * Запрос пакетной отправки выполняется через {@link BatchRequestExecutor}, например, в пределах ограничения
+ * одновременных запросов. Пакеты, ожидающие отправки, ограничены: при заполнении очереди пакет отправляет
+ * поток, который его сформировал, что замедляет поступление новых сообщений
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+public class FcmMessageBatcher implements AutoCloseable {
+
+    public static final int MAX_BATCH_SIZE = 500;
+
+    private static final int MAX_PENDING_BATCHES_PER_SENDER = 4;
+
+
+    FirebaseMessaging firebaseMessaging;
+
+    int maxBatchSize;
+
+    long maxDelayMillis;
+
+    BatchRequestExecutor requestExecutor;
+
+    ScheduledExecutorService timer;
+
+    ThreadPoolExecutor senders;
+
+    Object lock = new Object();
+
+    List<PendingMessage> pending = new ArrayList<>();
+
+    @NonFinal
+    ScheduledFuture<?> scheduledFlush;
+
+    public FcmMessageBatcher(FirebaseMessaging firebaseMessaging, int maxBatchSize, long maxDelayMillis, int senderCount) {
+        this(firebaseMessaging, maxBatchSize, maxDelayMillis, senderCount, Callable::call);
+    }
+
+    public FcmMessageBatcher(FirebaseMessaging firebaseMessaging,
+                             int maxBatchSize,
+                             long maxDelayMillis,
+                             int senderCount,
+                             BatchRequestExecutor requestExecutor) {
+        if (maxBatchSize < 1 || maxBatchSize > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException(String.format(
+                    "Batch size must be within [1, %s]. Provided: %s", MAX_BATCH_SIZE, maxBatchSize));
+        }
+
+        this.firebaseMessaging = firebaseMessaging;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        this.requestExecutor = requestExecutor;
+        this.timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("fcm-batch-timer-%d")
+                .setDaemon(true)
+                .build());
+        this.senders = new ThreadPoolExecutor(
+                senderCount,
+                senderCount,
+                0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(senderCount * MAX_PENDING_BATCHES_PER_SENDER),
+                new ThreadFactoryBuilder()
+                        .setNameFormat("fcm-batch-sender-%d")
+                        .setDaemon(true)
+                        .build(),
+                (Runnable task, ThreadPoolExecutor pool) -> {
+                    if (pool.isShutdown()) {
+                        throw new RejectedExecutionException("FCM message batcher is closed");
+                    }
+
+                    task.run();
+                });
+    }
+
+    /**
+     * Ставит сообщение в очередь на отправку
+     *
+     * @return идентификатор сообщения, присвоенный FCM
+     */
+    public CompletableFuture<String> send(Message message) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+
+        List<PendingMessage> batch = null;
+        synchronized (lock) {
+            pending.add(new PendingMessage(message, result));
+            if (pending.size() >= maxBatchSize) {
+                batch = drain();
+            } else if (pending.size() == 1) {
+                scheduledFlush = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (batch != null) {
+            submit(batch);
+        }
+
+        return result;
+    }
+
+    /**
+     * Отправляет накопленные сообщения, не дожидаясь заполнения пакета
+     */
+    public void flush() {
+        List<PendingMessage> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+
+        if (!batch.isEmpty()) {
+            submit(batch);
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+
+        timer.shutdownNow();
+        senders.shutdown();
+        try {
+            if (!senders.awaitTermination(10, TimeUnit.SECONDS)) {
+                log.warn("FCM batches are still being sent on shutdown");
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Вызывается под блокировкой
+     */
+    private List<PendingMessage> drain() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+
+        List<PendingMessage> result = new ArrayList<>(pending);
+        pending.clear();
+
+        return result;
+    }
+
+    private void submit(List<PendingMessage> batch) {
+        try {
+            senders.execute(() -> sendBatch(batch));
+        } catch (RuntimeException exception) {
+            batch.forEach((PendingMessage message) -> message.getResult().completeExceptionally(new GatewayException(exception)));
+        }
+    }
+
+    private void sendBatch(List<PendingMessage> batch) {
+        log.debug("Sending batch of {} messages...", batch.size());
+
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage message : batch) {
+            messages.add(message.getMessage());
+        }
+
+        BatchResponse response;
+        try {
+            response = requestExecutor.execute(() -> firebaseMessaging.sendAll(messages));
+        } catch (Exception exception) {
+            log.error("Failed to send batch of {} messages", batch.size(), exception);
+            batch.forEach((PendingMessage message) -> message.getResult().completeExceptionally(new GatewayException(exception)));
+
+            return;
+        }
+
+        log.debug("Sent batch of {} messages: success: {}, failure: {}",
+                batch.size(),
+                response.getSuccessCount(),
+                response.getFailureCount());
+
+        List<SendResponse> responses = response.getResponses();
+        for (int index = 0; index < batch.size(); index++) {
+            CompletableFuture<String> result = batch.get(index).getResult();
+            if (index >= responses.size()) {
+                result.completeExceptionally(new GatewayException("No response provided for message"));
+
+                continue;
+            }
+
+            SendResponse sendResponse = responses.get(index);
+            if (sendResponse.isSuccessful()) {
+                result.complete(sendResponse.getMessageId());
+            } else {
+                result.completeExceptionally(new GatewayException(sendResponse.getException()));
+            }
+        }
+    }
+
+    /**
+     * Выполнение запроса пакетной отправки
+     */
+    @FunctionalInterface
+    public interface BatchRequestExecutor {
+
+        BatchResponse execute(Callable<BatchResponse> request) throws Exception;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor
+    @Getter
+    private static final class PendingMessage {
+
+        Message message;
+
+        CompletableFuture<String> result;
+    }
+}
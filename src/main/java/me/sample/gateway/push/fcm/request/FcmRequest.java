@@ -10,6 +10,9 @@ import lombok.Setter;
 import lombok.experimental.FieldDefaults;
 import me.sample.utils.JsonUtil;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 @FieldDefaults(level = AccessLevel.PRIVATE)
 @NoArgsConstructor
 @AllArgsConstructor
@@ -30,4 +33,22 @@ public class FcmRequest {
 
         return this;
     }
+
+    /**
+     * Возвращает данные сообщения FCM (пропуская незаданные поля), не прибегая к сериализации
+     */
+    public Map<String, String> toData() {
+        Map<String, String> result = new LinkedHashMap<>(4);
+        if (title != null) {
+            result.put("title", title);
+        }
+        if (body != null) {
+            result.put("body", body);
+        }
+        if (data != null) {
+            result.put("data", data);
+        }
+
+        return result;
+    }
 }
@@ -1,6 +1,8 @@
 package me.sample.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import me.sample.domain.CampaignClient;
 import me.sample.domain.CampaignClientId;
 
@@ -15,5 +17,8 @@ public interface CampaignClientRepository extends JpaRepository<CampaignClient,
 
     List<CampaignClient> findAllByCampaignId(UUID campaignId);
 
+    @Query("SELECT client.id.clientId FROM CampaignClient client WHERE client.id.campaignId = :campaignId")
+    List<String> findClientIdsByCampaignId(@Param("campaignId") UUID campaignId);
+
     void deleteAllByCampaignId(UUID campaignId);
 }
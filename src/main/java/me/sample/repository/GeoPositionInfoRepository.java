@@ -15,7 +15,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 @Repository
-public interface GeoPositionInfoRepository extends JpaRepository<GeoPositionInfo, UUID>, JpaSpecificationExecutor<GeoPositionInfo> {
+public interface GeoPositionInfoRepository extends JpaRepository<GeoPositionInfo, UUID>, JpaSpecificationExecutor<GeoPositionInfo>, GeoPositionInfoRepositoryCustom {
 
     List<GeoPositionInfo> findAllByTerminalIdOrderByCreatedDateAsc(UUID terminalId);
 
@@ -58,22 +58,5 @@ public interface GeoPositionInfoRepository extends JpaRepository<GeoPositionInfo
                 .collect(Collectors.toSet());
     }
 
-    @Query(
-            value = "SELECT DISTINCT cast(terminal_id AS TEXT) " +
-                    "FROM geo_pos_info " +
-                    "       INNER JOIN store " +
-                    "                  ON earth_box(ll_to_earth(store.lat, store.lon), :radius) @> ll_to_earth(geo_pos_info.lat, geo_pos_info.lon) " +
-                    "WHERE store.id IN :storeIds",
-            nativeQuery = true)
-    Set<String> findDistinctTerminalIdsAsStringsWithinRadiusOfStores(@Param("radius") Long radius,
-                                                                     @Param("storeIds") Set<UUID> storeIds);
-
-    default Set<UUID> findDistinctTerminalIdsWithinRadiusOfStores(Long radius, Set<UUID> storeIds) {
-        return findDistinctTerminalIdsAsStringsWithinRadiusOfStores(radius, storeIds)
-                .stream()
-                .map(UUID::fromString)
-                .collect(Collectors.toSet());
-    }
-
     Optional<GeoPositionInfo> findFirstByTerminalIdOrderByCreatedDateDesc(UUID terminalId);
 }
@@ -0,0 +1,14 @@
+package me.sample.repository;
+
+import me.sample.domain.GeoPositionInfo;
+
+import java.util.List;
+
+public interface GeoPositionInfoRepositoryCustom {
+
+    /**
+     * Вставляет геопозиции одной пакетной операцией в обход контекста персистентности.
+     * Идентификаторы и моменты создания геопозиций должны быть назначены заранее
+     */
+    void insertAll(List<GeoPositionInfo> geopositions);
+}
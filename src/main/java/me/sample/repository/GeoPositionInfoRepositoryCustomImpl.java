@@ -0,0 +1,43 @@
+package me.sample.repository;
+
+import me.sample.domain.GeoPositionInfo;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class GeoPositionInfoRepositoryCustomImpl implements GeoPositionInfoRepositoryCustom {
+
+    /**
+     * Признак clustered не указывается и принимает значение по умолчанию, как и при вставке сущности
+     */
+    private static final String INSERT_GEOPOSITIONS_SQL = "" +
+            "INSERT INTO geo_pos_info (id, cdat, lat, lon, terminal_id) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public GeoPositionInfoRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAll(List<GeoPositionInfo> geopositions) {
+        if (geopositions.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(geopositions.size());
+        for (GeoPositionInfo geoposition : geopositions) {
+            rows.add(new Object[]{
+                    geoposition.getId(),
+                    Timestamp.valueOf(geoposition.getCreatedDate()),
+                    geoposition.getLat(),
+                    geoposition.getLon(),
+                    geoposition.getTerminal() != null ? geoposition.getTerminal().getId() : null});
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_GEOPOSITIONS_SQL, rows);
+    }
+}
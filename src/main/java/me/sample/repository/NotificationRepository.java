@@ -2,19 +2,47 @@ package me.sample.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import me.sample.domain.Notification;
+import me.sample.domain.NotificationState;
 import me.sample.domain.Terminal;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 @Repository
-public interface NotificationRepository extends JpaRepository<Notification, UUID>, JpaSpecificationExecutor<Notification> {
+public interface NotificationRepository extends JpaRepository<Notification, UUID>, JpaSpecificationExecutor<Notification>, NotificationRepositoryCustom {
 
     default int countSentBetweenDates(Terminal terminal, LocalDateTime from, LocalDateTime to) {
         return countByTerminalAndUpdatedDateBetween(terminal, from, to);
     }
 
     int countByTerminalAndUpdatedDateBetween(Terminal terminal, LocalDateTime from, LocalDateTime to);
+
+    /**
+     * Возвращает пары (terminal.id, количество) уведомлений кампании в указанных состояниях
+     */
+    @Query("SELECT notification.terminal.id, count(notification) " +
+            "FROM Notification notification " +
+            "WHERE notification.campaign.id = :campaignId " +
+            "  AND notification.state IN :states " +
+            "GROUP BY notification.terminal.id")
+    List<Object[]> countAsRowsByCampaignIdAndStateInGroupByTerminalId(@Param("campaignId") UUID campaignId,
+                                                                     @Param("states") Collection<NotificationState> states);
+
+    /**
+     * Возвращает пары (terminal.id, udat) уведомлений в указанных состояниях, обновленных позднее указанного момента
+     */
+    @Query("SELECT notification.terminal.id, notification.updatedDate " +
+            "FROM Notification notification " +
+            "WHERE notification.state IN :states " +
+            "  AND notification.updatedDate > :since " +
+            "ORDER BY notification.updatedDate")
+    Stream<Object[]> findAsRowsTerminalIdsAndUpdatedDatesByStateInAndUpdatedDateAfter(@Param("states") Collection<NotificationState> states,
+                                                                                     @Param("since") LocalDateTime since);
 }
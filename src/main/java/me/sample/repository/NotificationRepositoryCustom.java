@@ -0,0 +1,25 @@
+package me.sample.repository;
+
+import me.sample.domain.Notification;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface NotificationRepositoryCustom {
+
+    /**
+     * Вставляет новые уведомления одной пакетной операцией в обход контекста персистентности.
+     * Идентификаторы уведомлений должны быть назначены заранее, уведомления должны ссылаться на терминал
+     *
+     * @param stateLogged записать в журнал начальные состояния уведомлений
+     */
+    void insertAll(List<Notification> notifications, boolean stateLogged);
+
+    /**
+     * Продлевает взятие уведомлений на отправку до availableAt. Взятие продлевается, только если уведомление
+     * ожидает отправки и не было взято на отправку повторно (счетчик попыток совпадает с известным)
+     *
+     * @return уведомления, взятие которых продлено
+     */
+    List<Notification> extendClaims(List<Notification> notifications, LocalDateTime availableAt);
+}
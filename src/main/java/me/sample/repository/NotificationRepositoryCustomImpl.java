@@ -0,0 +1,96 @@
+package me.sample.repository;
+
+import me.sample.domain.Notification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public class NotificationRepositoryCustomImpl implements NotificationRepositoryCustom {
+
+    private static final String INSERT_NOTIFICATIONS_SQL = "" +
+            "INSERT INTO notification (id, cdat, udat, state, body, terminal_id, campaign_id, available_at, attempts) " +
+            "VALUES (?, ?, ?, CAST(? AS notification_state_type), ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_STATE_LOGS_SQL = "" +
+            "INSERT INTO notification_state_log (id, created_at, state, notification_id) " +
+            "VALUES (?, ?, CAST(? AS notification_state_type), ?)";
+
+    private static final String EXTEND_CLAIMS_SQL = "" +
+            "UPDATE notification SET available_at = ? " +
+            "WHERE id = ? AND attempts = ? AND available_at IS NOT NULL";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public NotificationRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void insertAll(List<Notification> notifications, boolean stateLogged) {
+        if (notifications.isEmpty()) {
+            return;
+        }
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        List<Object[]> notificationRows = new ArrayList<>(notifications.size());
+        List<Object[]> stateLogRows = new ArrayList<>(stateLogged ? notifications.size() : 0);
+        for (Notification notification : notifications) {
+            notificationRows.add(new Object[]{
+                    notification.getId(),
+                    now,
+                    now,
+                    notification.getState().name(),
+                    notification.getText(),
+                    notification.getTerminal().getId(),
+                    notification.getCampaign() != null ? notification.getCampaign().getId() : null,
+                    notification.getAvailableAt() != null ? Timestamp.valueOf(notification.getAvailableAt()) : null,
+                    notification.getAttempts()});
+
+            if (stateLogged) {
+                stateLogRows.add(new Object[]{
+                        UUID.randomUUID(),
+                        now,
+                        notification.getState().name(),
+                        notification.getId()});
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_NOTIFICATIONS_SQL, notificationRows);
+        if (stateLogged) {
+            jdbcTemplate.batchUpdate(INSERT_STATE_LOGS_SQL, stateLogRows);
+        }
+    }
+
+    @Override
+    public List<Notification> extendClaims(List<Notification> notifications, LocalDateTime availableAt) {
+        if (notifications.isEmpty()) {
+            return notifications;
+        }
+
+        Timestamp claimedUntil = Timestamp.valueOf(availableAt);
+
+        List<Object[]> rows = new ArrayList<>(notifications.size());
+        for (Notification notification : notifications) {
+            rows.add(new Object[]{
+                    claimedUntil,
+                    notification.getId(),
+                    notification.getAttempts()});
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(EXTEND_CLAIMS_SQL, rows);
+
+        List<Notification> result = new ArrayList<>(notifications.size());
+        for (int index = 0; index < updated.length; index++) {
+            if (updated[index] != 0) {
+                result.add(notifications.get(index));
+            }
+        }
+
+        return result;
+    }
+}
@@ -7,8 +7,10 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import me.sample.domain.Source;
 import me.sample.domain.Store;
+import me.sample.domain.geo.StoreLocation;
 
 import java.util.AbstractMap;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
@@ -36,6 +38,70 @@ public interface StoreRepository extends JpaRepository<Store, UUID>, JpaSpecific
         return new AbstractMap.SimpleImmutableEntry<>((Store) row[0], (Double) row[1]);
     }
 
+    String QUERY_ACTIVE_STORE_LOCATIONS_OF_RUNNING_DISSEMINATIONS = "SELECT cast(store.id AS TEXT), " +
+            "       cast(store.partner_id AS TEXT), " +
+            "       store.lat, " +
+            "       store.lon, " +
+            "       max(linked.radius) " +
+            "FROM (SELECT dissemination_store.store_id AS store_id, campaign.radius AS radius " +
+            "      FROM campaign " +
+            "             INNER JOIN scheduled_geopos_dissemination_store dissemination_store " +
+            "                        ON dissemination_store.scheduled_geopos_dissemination_id = campaign.scheduled_geopos_dissemination_id " +
+            "      WHERE campaign.state = 'RUNNING' " +
+            "      UNION ALL " +
+            "      SELECT partner_store.id AS store_id, campaign.radius AS radius " +
+            "      FROM campaign " +
+            "             INNER JOIN scheduled_geopos_dissemination_partner dissemination_partner " +
+            "                        ON dissemination_partner.scheduled_geopos_dissemination_id = campaign.scheduled_geopos_dissemination_id " +
+            "             INNER JOIN store partner_store " +
+            "                        ON partner_store.partner_id = dissemination_partner.partner_id " +
+            "      WHERE campaign.state = 'RUNNING') AS linked " +
+            "       INNER JOIN store " +
+            "                  ON store.id = linked.store_id " +
+            "WHERE store.state = 'ACTIVE' " +
+            "  AND store.lat IS NOT NULL " +
+            "  AND store.lon IS NOT NULL " +
+            "  AND linked.radius IS NOT NULL ";
+
+    @Query(
+            value = QUERY_ACTIVE_STORE_LOCATIONS_OF_RUNNING_DISSEMINATIONS +
+                    "GROUP BY store.id, store.partner_id, store.lat, store.lon",
+            nativeQuery = true)
+    List<Object[]> findAsRowsAllActiveLocationsOfRunningDisseminations();
+
+    @Query(
+            value = QUERY_ACTIVE_STORE_LOCATIONS_OF_RUNNING_DISSEMINATIONS +
+                    "  AND store.id IN :storeIds " +
+                    "GROUP BY store.id, store.partner_id, store.lat, store.lon",
+            nativeQuery = true)
+    List<Object[]> findAsRowsActiveLocationsOfRunningDisseminationsByIdIn(@Param("storeIds") Collection<UUID> storeIds);
+
+    /**
+     * Ищет местоположения активных торговых точек, участвующих (напрямую или через партнера)
+     * в запущенных рассылках по геолокации
+     */
+    default List<StoreLocation> findAllActiveLocationsOfRunningDisseminations() {
+        return findAsRowsAllActiveLocationsOfRunningDisseminations().stream()
+                .map(this::mapToStoreLocation)
+                .collect(Collectors.toList());
+    }
+
+    default List<StoreLocation> findActiveLocationsOfRunningDisseminationsByIdIn(Collection<UUID> storeIds) {
+        return findAsRowsActiveLocationsOfRunningDisseminationsByIdIn(storeIds).stream()
+                .map(this::mapToStoreLocation)
+                .collect(Collectors.toList());
+    }
+
+    default StoreLocation mapToStoreLocation(Object[] row) {
+        return StoreLocation.builder()
+                .storeId(UUID.fromString((String) row[0]))
+                .partnerId(row[1] == null ? null : UUID.fromString((String) row[1]))
+                .lat(((Number) row[2]).doubleValue())
+                .lon(((Number) row[3]).doubleValue())
+                .radius(((Number) row[4]).longValue())
+                .build();
+    }
+
     @Query(value = "SELECT DISTINCT city FROM Store")
     List<String> findDistinctCities();
 
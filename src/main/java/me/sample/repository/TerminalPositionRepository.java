@@ -0,0 +1,55 @@
+package me.sample.repository;
+
+import me.sample.domain.TerminalPosition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Repository
+public interface TerminalPositionRepository extends JpaRepository<TerminalPosition, UUID>, TerminalPositionRepositoryCustom {
+
+    /**
+     * Сохраняет местоположение терминала, если оно не старее уже сохраненного
+     */
+    @Modifying
+    @Query(
+            value = "INSERT INTO terminal_position (terminal_id, lat, lon, udat) " +
+                    "VALUES (:terminalId, :lat, :lon, :updatedDate) " +
+                    "ON CONFLICT (terminal_id) DO UPDATE " +
+                    "  SET lat = excluded.lat, " +
+                    "      lon = excluded.lon, " +
+                    "      udat = excluded.udat " +
+                    "  WHERE terminal_position.udat <= excluded.udat",
+            nativeQuery = true)
+    int upsert(@Param("terminalId") UUID terminalId,
+               @Param("lat") Double lat,
+               @Param("lon") Double lon,
+               @Param("updatedDate") LocalDateTime updatedDate);
+
+    @Query(
+            value = "SELECT DISTINCT cast(terminal_position.terminal_id AS TEXT) " +
+                    "FROM terminal_position " +
+                    "       INNER JOIN store " +
+                    "                  ON earth_box(ll_to_earth(store.lat, store.lon), :radius) @> ll_to_earth(terminal_position.lat, terminal_position.lon) " +
+                    "                 AND earth_distance(ll_to_earth(store.lat, store.lon), ll_to_earth(terminal_position.lat, terminal_position.lon)) <= :radius " +
+                    "WHERE store.id IN :storeIds " +
+                    "  AND terminal_position.udat >= :since",
+            nativeQuery = true)
+    Set<String> findTerminalIdsAsStringsWithinRadiusOfStoresAndUpdatedDateAfter(@Param("radius") Long radius,
+                                                                                @Param("storeIds") Set<UUID> storeIds,
+                                                                                @Param("since") LocalDateTime since);
+
+    default Set<UUID> findTerminalIdsWithinRadiusOfStoresAndUpdatedDateAfter(Long radius, Set<UUID> storeIds, LocalDateTime since) {
+        return findTerminalIdsAsStringsWithinRadiusOfStoresAndUpdatedDateAfter(radius, storeIds, since)
+                .stream()
+                .map(UUID::fromString)
+                .collect(Collectors.toSet());
+    }
+}
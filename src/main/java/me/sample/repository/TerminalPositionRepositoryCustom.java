@@ -0,0 +1,14 @@
+package me.sample.repository;
+
+import me.sample.domain.TerminalPosition;
+
+import java.util.Collection;
+
+public interface TerminalPositionRepositoryCustom {
+
+    /**
+     * Сохраняет местоположения терминалов одной пакетной операцией.
+     * Местоположение не сохраняется, если оно старее уже сохраненного. Терминалы не должны повторяться
+     */
+    void upsertAll(Collection<TerminalPosition> positions);
+}
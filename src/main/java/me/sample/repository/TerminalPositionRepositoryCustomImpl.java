@@ -0,0 +1,45 @@
+package me.sample.repository;
+
+import me.sample.domain.TerminalPosition;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class TerminalPositionRepositoryCustomImpl implements TerminalPositionRepositoryCustom {
+
+    private static final String UPSERT_POSITIONS_SQL = "" +
+            "INSERT INTO terminal_position (terminal_id, lat, lon, udat) " +
+            "VALUES (?, ?, ?, ?) " +
+            "ON CONFLICT (terminal_id) DO UPDATE " +
+            "  SET lat = excluded.lat, " +
+            "      lon = excluded.lon, " +
+            "      udat = excluded.udat " +
+            "  WHERE terminal_position.udat <= excluded.udat";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TerminalPositionRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void upsertAll(Collection<TerminalPosition> positions) {
+        if (positions.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(positions.size());
+        for (TerminalPosition position : positions) {
+            rows.add(new Object[]{
+                    position.getId(),
+                    position.getLat(),
+                    position.getLon(),
+                    Timestamp.valueOf(position.getUpdatedDate())});
+        }
+
+        jdbcTemplate.batchUpdate(UPSERT_POSITIONS_SQL, rows);
+    }
+}
@@ -2,21 +2,40 @@ package me.sample.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import me.sample.domain.Terminal;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Stream;
 
 @Repository
-public interface TerminalRepository extends JpaRepository<Terminal, UUID>, JpaSpecificationExecutor<Terminal> {
+public interface TerminalRepository extends JpaRepository<Terminal, UUID>, JpaSpecificationExecutor<Terminal>, TerminalRepositoryCustom {
 
     Long countByTest(Boolean test);
 
     @Query("SELECT terminal FROM Terminal terminal")
     Stream<Terminal> findAsStreamAll();
 
-    Optional<Terminal> findFirstByHardwareIdAndApplicationApiKeyOrderByUpdatedDateDesc(String hardwareId, String applicationApiKey);
+    Optional<Terminal> findByHardwareIdAndApplicationApiKey(String hardwareId, String applicationApiKey);
+
+    @Query("SELECT terminal.id FROM Terminal terminal WHERE terminal.hardwareId = :hardwareId AND terminal.application.apiKey = :applicationApiKey")
+    Optional<UUID> findIdByHardwareIdAndApplicationApiKey(@Param("hardwareId") String hardwareId,
+                                                          @Param("applicationApiKey") String applicationApiKey);
+
+    @Modifying
+    @Query("UPDATE Terminal terminal SET terminal.test = :test WHERE terminal.id = :id")
+    int updateTestById(@Param("id") UUID id, @Param("test") Boolean test);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE Terminal terminal SET terminal.city = :city, terminal.lastLocationUpdate = :lastLocationUpdate WHERE terminal.id = :id")
+    int updateCityById(@Param("id") UUID id,
+                       @Param("city") String city,
+                       @Param("lastLocationUpdate") LocalDateTime lastLocationUpdate);
 }
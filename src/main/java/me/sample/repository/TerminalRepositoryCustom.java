@@ -0,0 +1,28 @@
+package me.sample.repository;
+
+import me.sample.domain.Terminal;
+import org.springframework.data.jpa.domain.Specification;
+
+import java.util.List;
+import java.util.UUID;
+
+public interface TerminalRepositoryCustom {
+
+    /**
+     * Возвращает не более limit терминалов, удовлетворяющих спецификации,
+     * с идентификатором больше указанного (в порядке возрастания идентификатора).
+     * Позволяет обходить большие выборки постранично без смещения и подсчета общего количества
+     *
+     * @param afterId идентификатор последнего терминала предыдущей страницы либо null для первой страницы
+     */
+    List<Terminal> findAllByIdAfter(Specification<Terminal> specification, UUID afterId, int limit);
+
+    /**
+     * Создает терминал либо, если терминал с тем же hardwareId уже зарегистрирован для приложения,
+     * обновляет его непустыми атрибутами и дополняет свойства (props) одним запросом.
+     * Признак test у существующего терминала не изменяется
+     *
+     * @return сохраненный терминал (вне контекста персистентности)
+     */
+    Terminal upsert(Terminal data);
+}
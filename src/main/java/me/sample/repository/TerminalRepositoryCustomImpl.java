@@ -0,0 +1,129 @@
+package me.sample.repository;
+
+import me.sample.domain.Terminal;
+import me.sample.domain.TerminalPlatform;
+import me.sample.utils.JsonUtil;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class TerminalRepositoryCustomImpl implements TerminalRepositoryCustom {
+
+    private static final String UPSERT_TERMINAL_SQL = "" +
+            "INSERT INTO terminal (id, cdat, udat, application_id, hardware_id, platform, push_id, vendor, model, " +
+            "os_version, app_version, msisdn, ip, test, props) " +
+            "VALUES (?, ?, ?, ?, ?, CAST(? AS terminal_platform_type), ?, ?, ?, ?, ?, ?, ?, ?, CAST(? AS jsonb)) " +
+            "ON CONFLICT (hardware_id, application_id) DO UPDATE " +
+            "SET udat = excluded.udat, " +
+            "platform = COALESCE(excluded.platform, terminal.platform), " +
+            "push_id = COALESCE(excluded.push_id, terminal.push_id), " +
+            "vendor = COALESCE(excluded.vendor, terminal.vendor), " +
+            "model = COALESCE(excluded.model, terminal.model), " +
+            "os_version = COALESCE(excluded.os_version, terminal.os_version), " +
+            "app_version = COALESCE(excluded.app_version, terminal.app_version), " +
+            "msisdn = COALESCE(excluded.msisdn, terminal.msisdn), " +
+            "ip = COALESCE(excluded.ip, terminal.ip), " +
+            "props = COALESCE(terminal.props, CAST('{}' AS jsonb)) || excluded.props " +
+            "RETURNING id, cdat, udat, hardware_id, CAST(platform AS text), push_id, vendor, model, " +
+            "os_version, app_version, msisdn, ip, city, last_location_update, test, CAST(props AS text)";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public TerminalRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public List<Terminal> findAllByIdAfter(Specification<Terminal> specification, UUID afterId, int limit) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Terminal> query = builder.createQuery(Terminal.class);
+        Root<Terminal> root = query.from(Terminal.class);
+
+        List<Predicate> predicates = new ArrayList<>();
+        if (specification != null) {
+            Predicate predicate = specification.toPredicate(root, query, builder);
+            if (predicate != null) {
+                predicates.add(predicate);
+            }
+        }
+        if (afterId != null) {
+            predicates.add(builder.greaterThan(root.get("id"), afterId));
+        }
+
+        query.select(root)
+                .where(predicates.toArray(new Predicate[0]))
+                .orderBy(builder.asc(root.get("id")));
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public Terminal upsert(Terminal data) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+
+        return jdbcTemplate.queryForObject(
+                UPSERT_TERMINAL_SQL,
+                (ResultSet resultSet, int rowNum) -> toTerminal(resultSet, data),
+                UUID.randomUUID(),
+                now,
+                now,
+                data.getApplication().getId(),
+                data.getHardwareId(),
+                data.getPlatform() != null ? data.getPlatform().name() : null,
+                data.getPushId(),
+                data.getVendor(),
+                data.getModel(),
+                data.getOsVersion(),
+                data.getAppVersion(),
+                data.getMsisdn(),
+                data.getIp(),
+                data.getTest(),
+                JsonUtil.json(data.getProps() != null ? data.getProps() : new LinkedHashMap<>()));
+    }
+
+    private static Terminal toTerminal(ResultSet resultSet, Terminal data) throws SQLException {
+        String platform = resultSet.getString(5);
+        Timestamp lastLocationUpdate = resultSet.getTimestamp(14);
+        Map<String, Object> props = JsonUtil.unmarshallMapFromJson(resultSet.getString(16));
+
+        return Terminal.builder()
+                .id(resultSet.getObject(1, UUID.class))
+                .createdDate(resultSet.getTimestamp(2).toLocalDateTime())
+                .updatedDate(resultSet.getTimestamp(3).toLocalDateTime())
+                .application(data.getApplication())
+                .hardwareId(resultSet.getString(4))
+                .platform(platform != null ? TerminalPlatform.of(platform) : null)
+                .pushId(resultSet.getString(6))
+                .vendor(resultSet.getString(7))
+                .model(resultSet.getString(8))
+                .osVersion(resultSet.getString(9))
+                .appVersion(resultSet.getString(10))
+                .msisdn(resultSet.getString(11))
+                .ip(resultSet.getString(12))
+                .city(resultSet.getString(13))
+                .lastLocationUpdate(lastLocationUpdate != null ? lastLocationUpdate.toLocalDateTime() : null)
+                .test((Boolean) resultSet.getObject(15))
+                .props(props != null ? new LinkedHashMap<>(props) : new LinkedHashMap<>())
+                .build();
+    }
+}
@@ -0,0 +1,32 @@
+package me.sample.service;
+
+import me.sample.domain.geo.StoreLocation;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Индекс местоположений активных торговых точек, участвующих в запущенных рассылках по геолокации
+ */
+public interface ActiveStoreIndexService {
+
+    /**
+     * Ищет торговые точки, в радиус захвата которых попадает указанная геопозиция.
+     * Поиск выполняется без обращения к базе данных
+     *
+     * @return пары (торговая точка, расстояние до геопозиции в метрах), упорядоченные по возрастанию расстояния
+     */
+    List<Map.Entry<StoreLocation, Double>> findNeighbouringStores(double lat, double lon);
+
+    /**
+     * Полностью перестраивает индекс
+     */
+    void rebuildIndex();
+
+    /**
+     * Перестраивает индекс только для указанных торговых точек
+     */
+    void refreshStores(Collection<UUID> storeIds);
+}
@@ -0,0 +1,34 @@
+package me.sample.service;
+
+import me.sample.domain.ClientIdSet;
+import me.sample.domain.Terminal;
+
+import java.util.UUID;
+
+/**
+ * Списки клиентов кампаний, ограниченных по клиентам
+ */
+public interface CampaignClientService {
+
+    /**
+     * Возвращает множество идентификаторов клиентов кампании.
+     * Пустое множество означает, что кампания не ограничена по клиентам
+     */
+    ClientIdSet findCampaignClientIds(UUID campaignId);
+
+    /**
+     * Заменяет закешированное множество идентификаторов клиентов кампании
+     */
+    ClientIdSet putCampaignClientIds(UUID campaignId, ClientIdSet clientIds);
+
+    /**
+     * Проверяет, что клиент терминала входит в список клиентов кампании
+     */
+    boolean isCampaignClient(UUID campaignId, Terminal terminal);
+
+    /**
+     * Проверяет, что кампания доступна для терминала:
+     * кампания не ограничена по клиентам, либо клиент терминала входит в список ее клиентов
+     */
+    boolean isAvailableForTerminal(UUID campaignId, Terminal terminal);
+}
@@ -0,0 +1,32 @@
+package me.sample.service;
+
+import me.sample.domain.CampaignSendCounter;
+
+import java.util.UUID;
+
+/**
+ * Счетчики уведомлений, отправленных в рамках кампаний
+ */
+public interface CampaignNotificationCounterService {
+
+    /**
+     * Возвращает счетчики отправленных уведомлений кампании
+     */
+    CampaignSendCounter findCampaignSendCounter(UUID campaignId);
+
+    /**
+     * Возвращает количество уведомлений, отправленных в рамках кампании
+     */
+    long countSent(UUID campaignId);
+
+    /**
+     * Возвращает количество уведомлений, отправленных терминалу в рамках кампании
+     */
+    long countSent(UUID campaignId, UUID terminalId);
+
+    /**
+     * Регистрирует отправку уведомления терминалу в рамках кампании.
+     * Счетчики, еще не загруженные из базы, не изменяются: загрузка учтет уже записанную отправку
+     */
+    void registerSent(UUID campaignId, UUID terminalId);
+}
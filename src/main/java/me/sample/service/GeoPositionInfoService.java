@@ -5,9 +5,9 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import me.sample.domain.GeoPositionInfo;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 
 public interface GeoPositionInfoService {
 
@@ -19,5 +19,9 @@ public interface GeoPositionInfoService {
 
     GeoPositionInfo saveGeoposition(GeoPositionInfo data);
 
-    CompletableFuture<GeoPositionInfo> saveGeopositionAsync(GeoPositionInfo data);
+    /**
+     * Сохраняет геопозиции одной пакетной вставкой и обновляет последние местоположения их терминалов.
+     * Идентификаторы и моменты создания геопозиций должны быть назначены заранее
+     */
+    void saveGeopositions(List<GeoPositionInfo> data);
 }
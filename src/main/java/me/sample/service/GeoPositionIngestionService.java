@@ -0,0 +1,16 @@
+package me.sample.service;
+
+import me.sample.domain.GeoPositionInfo;
+
+/**
+ * Прием геопозиций терминалов с отложенной пакетной записью
+ */
+public interface GeoPositionIngestionService {
+
+    /**
+     * Ставит геопозицию в очередь на запись
+     *
+     * @return false, если очередь заполнена и геопозиция отброшена
+     */
+    boolean ingest(GeoPositionInfo data);
+}
@@ -0,0 +1,19 @@
+package me.sample.service;
+
+import me.sample.domain.geo.GeoposDisseminationSnapshot;
+
+/**
+ * Снимок правил запущенных рассылок по геолокации
+ */
+public interface GeoposDisseminationSnapshotService {
+
+    /**
+     * Возвращает актуальный снимок правил. Обращения к базе данных не выполняется
+     */
+    GeoposDisseminationSnapshot getSnapshot();
+
+    /**
+     * Перестраивает снимок правил по данным из базы
+     */
+    void rebuildSnapshot();
+}
@@ -3,7 +3,16 @@ package me.sample.service;
 import me.sample.dto.GeoPositionInfoDTO;
 import me.sample.domain.Terminal;
 
+import java.util.List;
+
 public interface LocationConsumerService {
 
     void handleAsync(Terminal terminal, GeoPositionInfoDTO geoPosInfoDTO);
+
+    /**
+     * Принимает геопозиции, накопленные терминалом (например, без связи). Геопозиции сохраняются в хронологическом
+     * порядке, а рассылка выполняется только по последней из них, если она не старее max-age.
+     * Момент геопозиции из будущего или не указанный заменяется текущим, геопозиции старее retention отбрасываются
+     */
+    void handleBatchAsync(Terminal terminal, List<GeoPositionInfoDTO> geoPosInfoDTOs);
 }
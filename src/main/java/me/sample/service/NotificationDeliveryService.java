@@ -1,14 +1,29 @@
 package me.sample.service;
 
+import me.sample.domain.Campaign;
+import me.sample.domain.Notification;
 import me.sample.domain.data.NotificationData;
 import me.sample.domain.data.NotificationStateData;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface NotificationDeliveryService {
 
     UUID sendNotification(UUID id);
 
+    /**
+     * Отправляет уже сохраненные уведомления кампании, используя переданные терминалы без повторного чтения.
+     * Взятие еще не отправленных уведомлений на отправку продлевается каждую треть visibility-timeout,
+     * уведомления, взятые на отправку повторно, пропускаются
+     */
+    void sendNotifications(Campaign campaign, List<Notification> notifications);
+
+    /**
+     * Отправляет уже сохраненное уведомление кампании в реальном времени, вне очереди отправок кампаний
+     */
+    void sendRealtimeNotification(Campaign campaign, Notification notification);
+
     NotificationStateData sendNotificationData(NotificationData data);
 
     void sendNotificationViaQueue(UUID id);
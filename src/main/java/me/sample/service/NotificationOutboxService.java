@@ -0,0 +1,26 @@
+package me.sample.service;
+
+/**
+ * Очередь уведомлений, ожидающих отправки, в базе данных.
+ * <p>
+ * Уведомление ожидает отправки, пока у него задан момент доступности (available_at). Узел берет уведомления
+ * на отправку пакетами, продлевая момент доступности на visibility-timeout и увеличивая счетчик попыток.
+ * Уведомления, не отправленные до истечения этого времени, берутся на отправку повторно любым узлом
+ */
+public interface NotificationOutboxService {
+
+    /**
+     * Берет на отправку и отправляет доступные уведомления запущенных кампаний (не более batch-size)
+     *
+     * @return количество взятых уведомлений
+     */
+    int dispatchAvailable();
+
+    /**
+     * Переводит в состояние FAILED доступные уведомления, исчерпавшие попытки отправки,
+     * и ожидающие отправки уведомления завершенных кампаний
+     *
+     * @return количество таких уведомлений
+     */
+    int expireExhausted();
+}
@@ -0,0 +1,24 @@
+package me.sample.service;
+
+import me.sample.domain.Campaign;
+
+/**
+ * Ограничение скорости отправки уведомлений (сообщений в секунду) по кампаниям и в целом по узлу
+ */
+public interface NotificationSendRateService {
+
+    /**
+     * Ожидает разрешения на отправку очередного уведомления кампании
+     */
+    void acquireCampaignSend(Campaign campaign);
+
+    /**
+     * Регистрирует отправку уведомления в реальном времени (по местоположению терминала) вне очереди кампаний
+     */
+    void acquireRealtimeSend();
+
+    /**
+     * Возвращает вес кампании: долю общей скорости и очередность выполнения ее рассылок относительно других кампаний
+     */
+    double weight(Campaign campaign);
+}
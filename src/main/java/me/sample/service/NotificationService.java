@@ -9,6 +9,8 @@ import me.sample.domain.Notification;
 import me.sample.domain.NotificationLimitValidationResult;
 import me.sample.domain.Terminal;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -35,4 +37,14 @@ public interface NotificationService {
     void updateNotificationStateAsync(UUID id, NotificationState state);
 
     Notification sendNotification(Terminal terminal, Campaign campaign);
+
+    /**
+     * Создает уведомление кампании для терминала и отправляет его в реальном времени, вне очереди отправок кампаний
+     */
+    Notification sendRealtimeNotification(Terminal terminal, Campaign campaign);
+
+    /**
+     * Создает уведомления кампании для терминалов одной пакетной вставкой и отправляет их
+     */
+    List<Notification> sendNotifications(Collection<Terminal> terminals, Campaign campaign);
 }
@@ -0,0 +1,22 @@
+package me.sample.service;
+
+import me.sample.domain.NotificationState;
+
+import java.util.UUID;
+
+/**
+ * Отложенная пакетная запись состояний уведомлений
+ */
+public interface NotificationStateBufferService {
+
+    /**
+     * Добавляет переход уведомления в состояние в буфер.
+     * Переход будет записан при очередном сбросе буфера (по размеру, по времени или при остановке приложения)
+     */
+    void enqueueNotificationState(UUID id, NotificationState state, String stateReason);
+
+    /**
+     * Записывает накопленные состояния
+     */
+    void flush();
+}
@@ -0,0 +1,20 @@
+package me.sample.service;
+
+/**
+ * Сброс push-идентификаторов терминалов, отвергнутых серверами уведомлений как недействительные
+ */
+public interface PushTokenInvalidationService {
+
+    /**
+     * Добавляет push-идентификатор в очередь на сброс.
+     * Идентификатор будет сброшен у всех терминалов, у которых он все еще задан, при очередной обработке очереди
+     */
+    void invalidatePushToken(String pushId);
+
+    /**
+     * Сбрасывает накопленные push-идентификаторы
+     *
+     * @return количество терминалов, у которых был сброшен push-идентификатор
+     */
+    int flush();
+}
@@ -0,0 +1,28 @@
+package me.sample.service;
+
+import me.sample.domain.TerminalChangeBuffer;
+
+import java.util.UUID;
+
+/**
+ * Отложенная пакетная запись изменений атрибутов терминалов
+ */
+public interface TerminalChangeBufferService {
+
+    /**
+     * Добавляет изменения терминала в буфер.
+     * Изменения будут записаны при очередном сбросе буфера (по времени или при остановке приложения)
+     */
+    void enqueueTerminalChanges(UUID id, TerminalChangeBuffer.Changes changes);
+
+    /**
+     * Записывает накопленные изменения
+     */
+    void flush();
+
+    /**
+     * Записывает накопленные изменения терминала. После возврата в базу не будут записаны изменения терминала,
+     * поступившие в буфер ранее (в том числе извлеченные одновременным сбросом буфера)
+     */
+    void flush(UUID id);
+}
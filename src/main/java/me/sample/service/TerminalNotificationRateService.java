@@ -0,0 +1,20 @@
+package me.sample.service;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * Учет отправленных терминалам уведомлений в скользящих окнах (минута, час, сутки) без обращения к базе
+ */
+public interface TerminalNotificationRateService {
+
+    /**
+     * Регистрирует отправку уведомления терминалу
+     */
+    void registerSent(UUID terminalId, LocalDateTime at);
+
+    /**
+     * Возвращает количество уведомлений, отправленных терминалу позднее указанного момента
+     */
+    int countSent(UUID terminalId, LocalDateTime since);
+}
@@ -21,6 +21,15 @@ public interface TerminalService {
 
     List<Terminal> findTerminals(Specification<Terminal> specification);
 
+    /**
+     * Возвращает очередную страницу терминалов при обходе выборки в порядке возрастания идентификатора.
+     * Страница загружается в отдельной транзакции, поэтому загруженные терминалы не накапливаются
+     * в контексте персистентности вызывающей стороны
+     *
+     * @param afterId идентификатор последнего терминала предыдущей страницы либо null для первой страницы
+     */
+    List<Terminal> findTerminalsAfter(Specification<Terminal> specification, UUID afterId, int limit);
+
     Optional<Terminal> findTerminal(UUID id);
 
     Optional<Terminal> findTerminal(String hardwareId, String applicationApiKey);
@@ -29,10 +38,19 @@ public interface TerminalService {
 
     CompletableFuture<Terminal> saveOrUpdateTerminalAsync(TerminalDTO dto);
 
-    Terminal saveTerminal(Terminal data);
+    /**
+     * Создает терминал либо обновляет терминал с тем же hardwareId в приложении одним запросом к базе.
+     * Свойства (props) существующего терминала дополняются переданными
+     */
+    Terminal upsertTerminal(Terminal data);
 
     Optional<Terminal> updateTerminal(UUID id, Terminal data);
 
+    /**
+     * Применяет к терминалу непустые атрибуты и свойства переданных данных.
+     * Переданный терминал не изменяется: возвращается измененная копия, а изменения записываются в базу
+     * отложенно ({@link TerminalChangeBufferService})
+     */
     Terminal updateTerminal(Terminal found, Terminal data);
 
     Terminal updateTerminalCityByIp(Terminal found, String ip);
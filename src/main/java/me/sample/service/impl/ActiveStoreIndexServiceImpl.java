@@ -0,0 +1,120 @@
+package me.sample.service.impl;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.geo.StoreGridIndex;
+import me.sample.domain.geo.StoreLocation;
+import me.sample.repository.StoreRepository;
+import me.sample.service.ActiveStoreIndexService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import javax.annotation.PostConstruct;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Индекс хранится в памяти и заменяется целиком (copy-on-write), поэтому поиск выполняется без блокировок.
+ * <p>
+ * Изменения торговых точек, партнеров и кампаний применяются инкрементально после фиксации транзакции.
+ * Периодическое полное перестроение выравнивает индекс с изменениями, выполненными на других узлах
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+@Service
+public class ActiveStoreIndexServiceImpl implements ActiveStoreIndexService {
+
+    StoreRepository storeRepository;
+
+    AtomicReference<StoreGridIndex> index = new AtomicReference<>();
+
+    @NonFinal
+    @Value("${dissemination.store-index.cell-size:0.01}")
+    double cellSize;
+
+    @PostConstruct
+    private void postConstruct() {
+        index.set(StoreGridIndex.empty(cellSize));
+
+        try {
+            rebuildIndex();
+        } catch (RuntimeException exception) {
+            log.error("Failed to build active store index. Deferring to scheduled rebuild", exception);
+        }
+    }
+
+    @Override
+    public List<Map.Entry<StoreLocation, Double>> findNeighbouringStores(double lat, double lon) {
+        return index.get().findWithinRadius(lat, lon);
+    }
+
+    @Scheduled(
+            initialDelayString = "${dissemination.store-index.rebuild-interval:300000}",
+            fixedDelayString = "${dissemination.store-index.rebuild-interval:300000}")
+    @Override
+    public void rebuildIndex() {
+        List<StoreLocation> locations = storeRepository.findAllActiveLocationsOfRunningDisseminations();
+
+        index.set(StoreGridIndex.of(cellSize, locations));
+
+        log.debug("Rebuilt active store index. Stores: {}", locations.size());
+    }
+
+    @Override
+    public void refreshStores(Collection<UUID> storeIds) {
+        if (storeIds.isEmpty()) {
+            return;
+        }
+
+        List<StoreLocation> updated = storeRepository.findActiveLocationsOfRunningDisseminationsByIdIn(storeIds);
+
+        Set<UUID> removedStoreIds = new HashSet<>(storeIds);
+        removedStoreIds.removeAll(updated.stream()
+                .map(StoreLocation::getStoreId)
+                .collect(Collectors.toSet()));
+
+        index.updateAndGet((StoreGridIndex current) -> current.with(updated, removedStoreIds));
+
+        log.debug("Refreshed active store index. Updated: {}, removed: {}", updated.size(), removedStoreIds.size());
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onChangeStoresAfterCommit(ChangeStoresEvent event) {
+        log.debug(".onChangeStoresAfterCommit(Store.ids: {})", event.getStoreIds());
+
+        refreshStores(event.getStoreIds());
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onSaveDisseminationAfterCommit(SaveScheduledGeoposDisseminationEvent event) {
+        log.debug(".onSaveDisseminationAfterCommit(Dissemination.id: {})", event.getDisseminationId());
+
+        rebuildIndex();
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeleteDisseminationAfterCommit(DeleteScheduledGeoposDisseminationEvent event) {
+        log.debug(".onDeleteDisseminationAfterCommit(Dissemination.id: {})", event.getDisseminationId());
+
+        rebuildIndex();
+    }
+}
@@ -7,6 +7,7 @@ import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import me.sample.service.BankSynchronizationService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
@@ -52,6 +53,8 @@ public class BankSynchronizationServiceImpl implements BankSynchronizationServic
     @NonFinal
     BankSynchronizationService self;
 
+    ApplicationEventPublisher applicationEventPublisher;
+
     BankGateway bankGateway;
     BankApiMapper bankApiMapper;
 
@@ -264,6 +267,12 @@ public class BankSynchronizationServiceImpl implements BankSynchronizationServic
         Partner result = partnerRepository.save(partner.setStores(stores));
         log.debug("Saved stores count: {}", stores.size());
 
+        applicationEventPublisher.publishEvent(ChangeStoresEvent.builder()
+                .storeIds(stores.stream()
+                        .map(Store::getId)
+                        .collect(Collectors.toSet()))
+                .build());
+
         return result;
     }
 }
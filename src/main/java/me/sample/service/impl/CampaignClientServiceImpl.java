@@ -0,0 +1,98 @@
+package me.sample.service.impl;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.ClientIdSet;
+import me.sample.domain.Terminal;
+import me.sample.repository.CampaignClientRepository;
+import me.sample.service.CampaignClientService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Множества клиентов кампаний кешируются в памяти.
+ * На узле, выполнившем загрузку списка клиентов, кеш обновляется сразу после фиксации транзакции,
+ * на остальных узлах - загружается из базы при первом обращении после истечения срока хранения
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@CacheConfig(cacheNames = CampaignClientServiceImpl.CACHE_NAME_CAMPAIGN_CLIENT, cacheManager = "campaignCacheManager")
+@Transactional(readOnly = true)
+@Service
+public class CampaignClientServiceImpl implements CampaignClientService {
+
+    public static final String CACHE_NAME_CAMPAIGN_CLIENT = "campaign.client";
+
+
+    @NonFinal
+    CampaignClientService self;
+
+    CampaignClientRepository campaignClientRepository;
+
+    @Autowired
+    public void setSelf(@Lazy CampaignClientService self) {
+        this.self = self;
+    }
+
+    @Cacheable(key = "#campaignId")
+    @Override
+    public ClientIdSet findCampaignClientIds(UUID campaignId) {
+        log.debug(".findCampaignClientIds(Campaign.id: {})", campaignId);
+
+        List<String> clientIds = campaignClientRepository.findClientIdsByCampaignId(campaignId);
+
+        return ClientIdSet.of(clientIds);
+    }
+
+    @CachePut(key = "#campaignId")
+    @Override
+    public ClientIdSet putCampaignClientIds(UUID campaignId, ClientIdSet clientIds) {
+        return clientIds;
+    }
+
+    @Override
+    public boolean isCampaignClient(UUID campaignId, Terminal terminal) {
+        Object clientId = terminal.getProp(Terminal.PROP_KEY_CLIENT_ID);
+        if (clientId == null) {
+            return false;
+        }
+
+        return self.findCampaignClientIds(campaignId).contains(String.valueOf(clientId));
+    }
+
+    @Override
+    public boolean isAvailableForTerminal(UUID campaignId, Terminal terminal) {
+        ClientIdSet clientIds = self.findCampaignClientIds(campaignId);
+        if (clientIds.isEmpty()) {
+            return true;
+        }
+
+        Object clientId = terminal.getProp(Terminal.PROP_KEY_CLIENT_ID);
+
+        return clientId != null && clientIds.contains(String.valueOf(clientId));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUpdateCampaignClientsAfterCommit(UpdateCampaignClientsEvent event) {
+        UUID campaignId = event.getCampaignId();
+        log.debug(".onUpdateCampaignClientsAfterCommit(Campaign.id: {}, clientIds.size: {})",
+                campaignId,
+                event.getClientIds().size());
+
+        self.putCampaignClientIds(campaignId, ClientIdSet.of(event.getClientIds()));
+    }
+}
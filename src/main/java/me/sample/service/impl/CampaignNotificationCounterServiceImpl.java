@@ -0,0 +1,106 @@
+package me.sample.service.impl;
+
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.CampaignSendCounter;
+import me.sample.domain.NotificationState;
+import me.sample.repository.NotificationRepository;
+import me.sample.service.CampaignNotificationCounterService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Счетчики кампании загружаются из базы одним агрегирующим запросом при первом обращении
+ * и далее увеличиваются при переходе уведомлений в отправленное состояние.
+ * По истечении срока хранения в кеше счетчики загружаются повторно, учитывая отправки других узлов.
+ * Отправки увеличивают только уже загруженные счетчики: загрузка из базы учитывает записанные отправки
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@CacheConfig(cacheNames = CampaignNotificationCounterServiceImpl.CACHE_NAME_CAMPAIGN_NOTIFICATION_COUNTER, cacheManager = "campaignCacheManager")
+@Service
+public class CampaignNotificationCounterServiceImpl implements CampaignNotificationCounterService {
+
+    public static final String CACHE_NAME_CAMPAIGN_NOTIFICATION_COUNTER = "campaign.notification.counter";
+
+
+    @NonFinal
+    CampaignNotificationCounterService self;
+
+    NotificationRepository notificationRepository;
+
+    Cache cache;
+
+    public CampaignNotificationCounterServiceImpl(NotificationRepository notificationRepository,
+                                                  @Qualifier("campaignCacheManager") CacheManager cacheManager) {
+        this.notificationRepository = notificationRepository;
+        this.cache = cacheManager.getCache(CACHE_NAME_CAMPAIGN_NOTIFICATION_COUNTER);
+    }
+
+    @Autowired
+    public void setSelf(@Lazy CampaignNotificationCounterService self) {
+        this.self = self;
+    }
+
+    @Cacheable(key = "#campaignId")
+    @Transactional(readOnly = true)
+    @Override
+    public CampaignSendCounter findCampaignSendCounter(UUID campaignId) {
+        log.debug(".findCampaignSendCounter(Campaign.id: {})", campaignId);
+
+        CampaignSendCounter result = new CampaignSendCounter();
+        notificationRepository.countAsRowsByCampaignIdAndStateInGroupByTerminalId(
+                campaignId,
+                Arrays.asList(
+                        NotificationState.ACCEPTED_BY_SERVER,
+                        NotificationState.RECEIVED_BY_CLIENT,
+                        NotificationState.ACKNOWLEDGED_BY_CLIENT))
+                .forEach((Object[] row) -> result.add((UUID) row[0], ((Number) row[1]).intValue()));
+
+        return result;
+    }
+
+    @Override
+    public long countSent(UUID campaignId) {
+        if (campaignId == null) {
+            return 0L;
+        }
+
+        return self.findCampaignSendCounter(campaignId).getTotal();
+    }
+
+    @Override
+    public long countSent(UUID campaignId, UUID terminalId) {
+        if (campaignId == null || terminalId == null) {
+            return 0L;
+        }
+
+        return self.findCampaignSendCounter(campaignId).getTotal(terminalId);
+    }
+
+    @Override
+    public void registerSent(UUID campaignId, UUID terminalId) {
+        if (campaignId == null) {
+            return;
+        }
+
+        CampaignSendCounter found = cache.get(campaignId, CampaignSendCounter.class);
+        if (found == null) {
+            return;
+        }
+
+        found.increment(terminalId);
+    }
+}
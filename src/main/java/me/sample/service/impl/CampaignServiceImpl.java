@@ -8,6 +8,7 @@ import lombok.extern.slf4j.Slf4j;
 import me.sample.service.CampaignService;
 import me.sample.service.DistributionService;
 import me.sample.service.ScheduledGeoposDisseminationService;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -28,6 +29,7 @@ import me.sample.repository.NotificationStatisticRepository;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -44,6 +46,8 @@ public class CampaignServiceImpl implements CampaignService {
     private static final int BATCH_SIZE_CAMPAIGN_CLIENT_ID_SAVE = 1000;
 
 
+    ApplicationEventPublisher applicationEventPublisher;
+
     CampaignRepository campaignRepository;
     CampaignClientRepository campaignClientRepository;
 
@@ -103,6 +107,11 @@ public class CampaignServiceImpl implements CampaignService {
         }
         log.info("Saved {} campaign clients", campaignClientCount);
 
+        applicationEventPublisher.publishEvent(UpdateCampaignClientsEvent.builder()
+                .campaignId(campaignId)
+                .clientIds(clientIds)
+                .build());
+
         return campaignRepository.save(found.setClientBased(true));
     }
 
@@ -138,6 +147,10 @@ public class CampaignServiceImpl implements CampaignService {
 
         found.setState(CampaignState.RUNNING);
 
+        applicationEventPublisher.publishEvent(ChangeCampaignStateEvent.builder()
+                .campaignId(found.getId())
+                .build());
+
         Optional.ofNullable(found.getDistribution())
                 .ifPresent(distributionService::startDissemination);
 
@@ -166,6 +179,10 @@ public class CampaignServiceImpl implements CampaignService {
 
         found.setState(CampaignState.PAUSE);
 
+        applicationEventPublisher.publishEvent(ChangeCampaignStateEvent.builder()
+                .campaignId(found.getId())
+                .build());
+
         Optional.ofNullable(found.getDistribution())
                 .ifPresent(distributionService::pauseDissemination);
 
@@ -179,6 +196,10 @@ public class CampaignServiceImpl implements CampaignService {
     public Campaign completeCampaign(Campaign found) {
         found.setState(CampaignState.COMPLETED);
 
+        applicationEventPublisher.publishEvent(ChangeCampaignStateEvent.builder()
+                .campaignId(found.getId())
+                .build());
+
         Optional.ofNullable(found.getDistribution())
                 .ifPresent(distributionService::completeDissemination);
 
@@ -267,6 +288,11 @@ public class CampaignServiceImpl implements CampaignService {
 
         campaignClientRepository.deleteAllByCampaignId(found.getId());
 
+        applicationEventPublisher.publishEvent(UpdateCampaignClientsEvent.builder()
+                .campaignId(found.getId())
+                .clientIds(Collections.emptyList())
+                .build());
+
         campaignRepository.delete(found);
 
         return found.getId();
@@ -1,5 +1,6 @@
 package me.sample.service.impl;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
@@ -7,6 +8,7 @@ import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import me.sample.service.CampaignService;
+import me.sample.service.NotificationSendRateService;
 import me.sample.service.NotificationService;
 import me.sample.service.TerminalService;
 import org.quartz.CronScheduleBuilder;
@@ -20,6 +22,7 @@ import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
 import org.quartz.impl.matchers.GroupMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
@@ -27,6 +30,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
@@ -36,6 +40,7 @@ import me.sample.domain.Distribution;
 import me.sample.domain.NotificationLimitValidationResult;
 import me.sample.domain.Terminal;
 import me.sample.domain.TerminalSpecifications;
+import me.sample.domain.WeightedFairQueue;
 import me.sample.repository.CampaignClientRepository;
 import me.sample.repository.DistributionRepository;
 import me.sample.service.DistributionService;
@@ -43,14 +48,25 @@ import me.sample.service.DistributionService;
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.sql.Date;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 
 /**
- * Сервис выполняет рассылку по времени
+ * Сервис выполняет рассылку по времени.
+ * <p>
+ * Части рассылок (по chunk-size терминалов) ставятся в очереди своих кампаний и выполняются worker-count потоками,
+ * которые обходят очереди кампаний взвешенным циклическим обходом ({@link WeightedFairQueue}).
+ * Тем самым крупная рассылка не занимает все потоки, пока части других кампаний ожидают выполнения
  */
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -72,12 +88,38 @@ public class DistributionServiceImpl implements DistributionService {
 
     TerminalService terminalService;
     NotificationService notificationService;
+    NotificationSendRateService notificationSendRateService;
+
+    WeightedFairQueue<UUID, Runnable> chunkQueue = new WeightedFairQueue<>();
 
     @NonFinal
     CampaignService campaignService;
 
+    @NonFinal
+    @Value("${dissemination.execution.chunk-size:1000}")
+    int chunkSize;
+
+    @NonFinal
+    @Value("${dissemination.execution.worker-count:4}")
+    int workerCount;
+
+    @NonFinal
+    ExecutorService disseminationExecutor;
+
+    @NonFinal
+    volatile boolean running;
+
     @PostConstruct
     private void postConstruct() throws SchedulerException {
+        running = true;
+        disseminationExecutor = Executors.newFixedThreadPool(workerCount, new ThreadFactoryBuilder()
+                .setNameFormat("dissemination-worker-%d")
+                .setDaemon(true)
+                .build());
+        for (int index = 0; index < workerCount; index++) {
+            disseminationExecutor.execute(this::executeChunks);
+        }
+
         // Удалить джобы рассылки, для которых в базе нет соответствующей сущности рассылки
         for (JobKey jobKey : scheduler.getJobKeys(GroupMatcher.groupEquals(DistributionJob.JOB_GROUP_NAME))) {
             if (!distributionRepository.existsById(UUID.fromString(jobKey.getName()))) {
@@ -92,6 +134,8 @@ public class DistributionServiceImpl implements DistributionService {
     @PreDestroy
     private void preDestroy() throws SchedulerException {
         scheduler.shutdown(false);
+        running = false;
+        disseminationExecutor.shutdown();
     }
 
     @Autowired
@@ -176,6 +220,11 @@ public class DistributionServiceImpl implements DistributionService {
         return found;
     }
 
+    /**
+     * Выполняется без транзакции: рассылка длится долго, а части рассылки выполняются другими потоками
+     * в собственных транзакциях. Рассылка и кампания читаются короткой транзакцией чтения репозитория
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public Optional<Distribution> executeDissemination(UUID id) {
         return distributionRepository.findById(id)
@@ -198,7 +247,6 @@ public class DistributionServiceImpl implements DistributionService {
             return found;
         }
 
-        // FIXME may cause out of memory, make iteration over pages
         long terminalLimit = campaignNotificationLimitValidation.getLimit() != null ?
                 campaignNotificationLimitValidation.getLimit() - campaignNotificationLimitValidation.getCount() :
                 Long.MAX_VALUE;
@@ -210,39 +258,97 @@ public class DistributionServiceImpl implements DistributionService {
                     .and(TerminalSpecifications.existsCampaignClientForCampaignId(campaign.getId()));
         }
 
-        terminalService.findTerminals(terminalSpecification)
-                .stream()
-                .filter((Terminal terminal) -> {
-                    NotificationLimitValidationResult campaignTerminalNotificationLimitValidation =
-                            notificationService.validateNotificationLimit(campaign, terminal);
-                    boolean validationFailed = campaignTerminalNotificationLimitValidation.getFailed();
-                    if (validationFailed) {
-                        log.debug("No notification performed for terminal: {}. Reason: {}",
-                                terminal.getId(),
-                                campaignTerminalNotificationLimitValidation.getReason());
-                    }
-
-                    return !validationFailed;
-                })
-                .filter((Terminal terminal) -> {
-                    NotificationLimitValidationResult terminalNotificationLimitValidation =
-                            notificationService.validateNotificationLimit(terminal);
-                    boolean validationFailed = terminalNotificationLimitValidation.getFailed();
-                    if (validationFailed) {
-                        log.debug("No notification performed for terminal: {}. Reason: {}",
-                                terminal.getId(),
-                                terminalNotificationLimitValidation.getReason());
-                    }
-
-                    return !validationFailed;
-                })
-                .limit(terminalLimit)
-                .forEach((Terminal terminal) ->
-                        notificationService.sendNotification(terminal, campaign));
+        AtomicLong remaining = new AtomicLong(terminalLimit);
+        Semaphore inFlightChunks = new Semaphore(maxInFlightChunks());
+        UUID afterId = null;
+        List<Terminal> chunk;
+        while (remaining.get() > 0 &&
+                !(chunk = terminalService.findTerminalsAfter(terminalSpecification, afterId, chunkSize)).isEmpty()) {
+            afterId = chunk.get(chunk.size() - 1).getId();
+            log.debug("Submitting chunk of {} terminals for dissemination id: {}", chunk.size(), id);
+
+            List<Terminal> submitted = chunk;
+            inFlightChunks.acquireUninterruptibly();
+            chunkQueue.offer(campaign.getId(), notificationSendRateService.weight(campaign), () -> {
+                try {
+                    executeDisseminationForTerminals(campaign, submitted, remaining);
+                } catch (RuntimeException exception) {
+                    log.error("Failed to execute dissemination id: {} for chunk of terminals", id, exception);
+                } finally {
+                    inFlightChunks.release();
+                }
+            });
+
+            if (chunk.size() < chunkSize) {
+                break;
+            }
+        }
+
+        // Дождаться обработки всех отправленных на выполнение частей
+        inFlightChunks.acquireUninterruptibly(maxInFlightChunks());
+        inFlightChunks.release(maxInFlightChunks());
 
         return found;
     }
 
+    private void executeDisseminationForTerminals(Campaign campaign, List<Terminal> terminals, AtomicLong remaining) {
+        List<Terminal> accepted = new ArrayList<>(terminals.size());
+        for (Terminal terminal : terminals) {
+            if (remaining.get() <= 0) {
+                break;
+            }
+
+            NotificationLimitValidationResult campaignTerminalNotificationLimitValidation =
+                    notificationService.validateNotificationLimit(campaign, terminal);
+            if (campaignTerminalNotificationLimitValidation.getFailed()) {
+                log.debug("No notification performed for terminal: {}. Reason: {}",
+                        terminal.getId(),
+                        campaignTerminalNotificationLimitValidation.getReason());
+
+                continue;
+            }
+
+            NotificationLimitValidationResult terminalNotificationLimitValidation =
+                    notificationService.validateNotificationLimit(terminal);
+            if (terminalNotificationLimitValidation.getFailed()) {
+                log.debug("No notification performed for terminal: {}. Reason: {}",
+                        terminal.getId(),
+                        terminalNotificationLimitValidation.getReason());
+
+                continue;
+            }
+
+            if (remaining.getAndUpdate((long value) -> value > 0 ? value - 1 : 0) <= 0) {
+                break;
+            }
+
+            accepted.add(terminal);
+        }
+
+        notificationService.sendNotifications(accepted, campaign);
+    }
+
+    private void executeChunks() {
+        while (running) {
+            Runnable chunk;
+            try {
+                chunk = chunkQueue.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+
+                return;
+            }
+
+            if (chunk != null) {
+                chunk.run();
+            }
+        }
+    }
+
+    private int maxInFlightChunks() {
+        return workerCount * 2;
+    }
+
     @Override
     public Optional<UUID> deleteDissemination(UUID id) {
         log.debug(".deleteDissemination(Dissemination.id: {})", id);
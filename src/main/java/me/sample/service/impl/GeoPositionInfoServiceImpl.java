@@ -8,16 +8,21 @@ import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import me.sample.domain.GeoPositionInfo;
+import me.sample.domain.Terminal;
+import me.sample.domain.TerminalPosition;
 import me.sample.repository.GeoPositionInfoRepository;
+import me.sample.repository.TerminalPositionRepository;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.UUID;
-import java.util.concurrent.CompletableFuture;
 
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @RequiredArgsConstructor
@@ -29,6 +34,7 @@ public class GeoPositionInfoServiceImpl implements GeoPositionInfoService {
     public static final String CACHE_NAME_GEOPOSITION = "geoposinfo";
 
     GeoPositionInfoRepository geoPositionInfoRepository;
+    TerminalPositionRepository terminalPositionRepository;
 
     @Override
     public Long countGeopositions(Specification<GeoPositionInfo> specification) {
@@ -50,13 +56,43 @@ public class GeoPositionInfoServiceImpl implements GeoPositionInfoService {
     @Transactional(propagation = Propagation.REQUIRES_NEW)
     @Override
     public GeoPositionInfo saveGeoposition(GeoPositionInfo data) {
-        return geoPositionInfoRepository.save(data);
+        GeoPositionInfo result = geoPositionInfoRepository.save(data);
+
+        Terminal terminal = result.getTerminal();
+        if (terminal != null && result.getLat() != null && result.getLon() != null) {
+            terminalPositionRepository.upsert(
+                    terminal.getId(),
+                    result.getLat(),
+                    result.getLon(),
+                    result.getCreatedDate() == null ? LocalDateTime.now() : result.getCreatedDate());
+        }
+
+        return result;
     }
 
-    @Async
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
     @Override
-    public CompletableFuture<GeoPositionInfo> saveGeopositionAsync(GeoPositionInfo data){
-        return CompletableFuture.completedFuture(saveGeoposition(data));
+    public void saveGeopositions(List<GeoPositionInfo> data) {
+        geoPositionInfoRepository.insertAll(data);
+
+        // Строки блокируются в порядке идентификаторов терминалов, чтобы параллельные пачки не взаимоблокировались
+        Map<UUID, TerminalPosition> latestPositions = new TreeMap<>();
+        for (GeoPositionInfo geoposition : data) {
+            Terminal terminal = geoposition.getTerminal();
+            if (terminal == null || geoposition.getLat() == null || geoposition.getLon() == null) {
+                continue;
+            }
+
+            TerminalPosition found = latestPositions.get(terminal.getId());
+            if (found == null || !found.getUpdatedDate().isAfter(geoposition.getCreatedDate())) {
+                latestPositions.put(terminal.getId(), TerminalPosition.builder()
+                        .id(terminal.getId())
+                        .lat(geoposition.getLat())
+                        .lon(geoposition.getLon())
+                        .updatedDate(geoposition.getCreatedDate())
+                        .build());
+            }
+        }
+
+        terminalPositionRepository.upsertAll(latestPositions.values());
     }
 }
@@ -0,0 +1,188 @@
+package me.sample.service.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.GeoPositionInfo;
+import me.sample.domain.RingBuffer;
+import me.sample.service.GeoPositionInfoService;
+import me.sample.service.GeoPositionIngestionService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Геопозиции складываются в ограниченный кольцевой буфер ({@link RingBuffer}) и записываются несколькими
+ * потоками-писателями пакетами до batch-size геопозиций в одной транзакции. Пустой буфер писатели
+ * опрашивают с интервалом poll-interval. При заполненном буфере новые геопозиции отбрасываются,
+ * как и пакет, запись которого не удалась. При остановке приложения буфер записывается полностью
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Service
+public class GeoPositionIngestionServiceImpl implements GeoPositionIngestionService {
+
+    GeoPositionInfoService geoPositionInfoService;
+
+    MeterRegistry meterRegistry;
+
+    @NonFinal
+    @Value("${geoposition.ingestion.capacity:65536}")
+    int capacity;
+
+    @NonFinal
+    @Value("${geoposition.ingestion.writer-count:2}")
+    int writerCount;
+
+    @NonFinal
+    @Value("${geoposition.ingestion.batch-size:500}")
+    int batchSize;
+
+    @NonFinal
+    @Value("${geoposition.ingestion.poll-interval:20}")
+    long pollIntervalMillis;
+
+    @NonFinal
+    RingBuffer<PendingGeoposition> buffer;
+
+    @NonFinal
+    ExecutorService writers;
+
+    @NonFinal
+    volatile boolean running;
+
+    @NonFinal
+    Counter queueFullDrops;
+
+    @NonFinal
+    Counter writeFailedDrops;
+
+    @NonFinal
+    DistributionSummary batchSizes;
+
+    @NonFinal
+    Timer lag;
+
+    @PostConstruct
+    private void postConstruct() {
+        buffer = new RingBuffer<>(capacity);
+
+        meterRegistry.gauge("geoposition.ingest.queue", buffer, RingBuffer::size);
+        queueFullDrops = meterRegistry.counter("geoposition.ingest.dropped", "reason", "queue_full");
+        writeFailedDrops = meterRegistry.counter("geoposition.ingest.dropped", "reason", "write_failed");
+        batchSizes = DistributionSummary.builder("geoposition.ingest.batch-size")
+                .register(meterRegistry);
+        lag = Timer.builder("geoposition.ingest.lag")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+
+        running = true;
+        writers = Executors.newFixedThreadPool(writerCount, new ThreadFactoryBuilder()
+                .setNameFormat("geoposition-writer-%d")
+                .setDaemon(true)
+                .build());
+        for (int index = 0; index < writerCount; index++) {
+            writers.execute(this::write);
+        }
+    }
+
+    @PreDestroy
+    private void preDestroy() throws InterruptedException {
+        running = false;
+        writers.shutdown();
+        writers.awaitTermination(30, TimeUnit.SECONDS);
+
+        List<PendingGeoposition> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    @Override
+    public boolean ingest(GeoPositionInfo data) {
+        if (data.getId() == null) {
+            data.setId(UUID.randomUUID());
+        }
+
+        if (data.getCreatedDate() == null) {
+            data.setCreatedDate(LocalDateTime.now());
+        }
+
+        if (!buffer.offer(new PendingGeoposition(data, System.nanoTime()))) {
+            queueFullDrops.increment();
+            log.debug("Geoposition dropped for terminal id: {}. Reason: Ingestion queue is full",
+                    data.getTerminal() != null ? data.getTerminal().getId() : null);
+
+            return false;
+        }
+
+        return true;
+    }
+
+    private void write() {
+        List<PendingGeoposition> batch = new ArrayList<>(batchSize);
+        while (running) {
+            if (buffer.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollIntervalMillis));
+
+                continue;
+            }
+
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(List<PendingGeoposition> batch) {
+        List<GeoPositionInfo> geopositions = new ArrayList<>(batch.size());
+        for (PendingGeoposition pending : batch) {
+            geopositions.add(pending.getGeoposition());
+        }
+
+        try {
+            geoPositionInfoService.saveGeopositions(geopositions);
+        } catch (RuntimeException exception) {
+            writeFailedDrops.increment(batch.size());
+            log.error("Failed to write {} geopositions", batch.size(), exception);
+
+            return;
+        }
+
+        long now = System.nanoTime();
+        batchSizes.record(batch.size());
+        for (PendingGeoposition pending : batch) {
+            lag.record(now - pending.getEnqueuedAt(), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor
+    @Getter
+    private static final class PendingGeoposition {
+
+        GeoPositionInfo geoposition;
+
+        long enqueuedAt;
+    }
+}
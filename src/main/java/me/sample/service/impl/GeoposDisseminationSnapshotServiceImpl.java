@@ -0,0 +1,149 @@
+package me.sample.service.impl;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.Campaign;
+import me.sample.domain.CampaignState;
+import me.sample.domain.Partner;
+import me.sample.domain.PropFilter;
+import me.sample.domain.ScheduledGeoposDissemination;
+import me.sample.domain.Store;
+import me.sample.domain.TerminalFilter;
+import me.sample.domain.geo.GeoposDisseminationRule;
+import me.sample.domain.geo.GeoposDisseminationSnapshot;
+import me.sample.repository.CampaignRepository;
+import me.sample.service.CampaignClientService;
+import me.sample.service.GeoposDisseminationSnapshotService;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Снимок перестраивается целиком и подменяется атомарно после фиксации транзакций,
+ * изменяющих состояние кампаний или состав рассылок.
+ * Периодическое перестроение выравнивает снимок с изменениями, выполненными на других узлах
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+@Service
+public class GeoposDisseminationSnapshotServiceImpl implements GeoposDisseminationSnapshotService {
+
+    CampaignRepository campaignRepository;
+
+    CampaignClientService campaignClientService;
+
+    AtomicReference<GeoposDisseminationSnapshot> snapshot = new AtomicReference<>(GeoposDisseminationSnapshot.empty());
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        try {
+            rebuildSnapshot();
+        } catch (RuntimeException exception) {
+            log.error("Failed to build dissemination snapshot. Deferring to scheduled rebuild", exception);
+        }
+    }
+
+    @Override
+    public GeoposDisseminationSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    @Scheduled(
+            initialDelayString = "${dissemination.snapshot.rebuild-interval:300000}",
+            fixedDelayString = "${dissemination.snapshot.rebuild-interval:300000}")
+    @Override
+    public void rebuildSnapshot() {
+        List<GeoposDisseminationRule> rules;
+        try (Stream<Campaign> campaigns = campaignRepository.findAllByStateIn(Collections.singletonList(CampaignState.RUNNING))) {
+            rules = campaigns
+                    .filter((Campaign campaign) -> campaign.getScheduledGeoposDissemination() != null)
+                    .map(this::mapToRule)
+                    .collect(Collectors.toList());
+        }
+
+        snapshot.set(GeoposDisseminationSnapshot.of(rules));
+
+        log.debug("Rebuilt dissemination snapshot. Rules: {}", rules.size());
+    }
+
+    private GeoposDisseminationRule mapToRule(Campaign campaign) {
+        ScheduledGeoposDissemination dissemination = campaign.getScheduledGeoposDissemination();
+        List<PropFilter> filters = Collections.unmodifiableList(new ArrayList<>(
+                Optional.ofNullable(dissemination.getFilters()).orElse(Collections.<PropFilter>emptyList())));
+
+        return GeoposDisseminationRule.builder()
+                .disseminationId(dissemination.getId())
+                .campaignId(campaign.getId())
+                .companyId(campaign.getCompany().getId())
+                .radius(Optional.ofNullable(campaign.getRadius()).orElse(0L))
+                .priority(Optional.ofNullable(dissemination.getPriority()).orElse(0))
+                .notificationLimit(campaign.getNotificationLimit())
+                .notificationLimitPerTerminal(campaign.getNotificationLimitPerTerminal())
+                .start(dissemination.getStart())
+                .end(dissemination.getEnd())
+                .filters(filters)
+                .filter(compileFilter(dissemination.getId(), filters))
+                .storeIds(dissemination.getStores().stream()
+                        .map(Store::getId)
+                        .collect(Collectors.collectingAndThen(Collectors.toSet(), Collections::unmodifiableSet)))
+                .partnerIds(dissemination.getPartners().stream()
+                        .map(Partner::getId)
+                        .collect(Collectors.collectingAndThen(Collectors.toSet(), Collections::unmodifiableSet)))
+                .build();
+    }
+
+    private TerminalFilter compileFilter(UUID disseminationId, List<PropFilter> filters) {
+        try {
+            return TerminalFilter.compile(filters, campaignClientService::isCampaignClient);
+        } catch (RuntimeException exception) {
+            log.error("Invalid filters of dissemination id: {}. No terminal will match. Filters: {}",
+                    disseminationId,
+                    filters,
+                    exception);
+
+            return TerminalFilter.none();
+        }
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onChangeCampaignStateAfterCommit(ChangeCampaignStateEvent event) {
+        log.debug(".onChangeCampaignStateAfterCommit(Campaign.id: {})", event.getCampaignId());
+
+        rebuildSnapshot();
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onSaveDisseminationAfterCommit(SaveScheduledGeoposDisseminationEvent event) {
+        log.debug(".onSaveDisseminationAfterCommit(Dissemination.id: {})", event.getDisseminationId());
+
+        rebuildSnapshot();
+    }
+
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeleteDisseminationAfterCommit(DeleteScheduledGeoposDisseminationEvent event) {
+        log.debug(".onDeleteDisseminationAfterCommit(Dissemination.id: {})", event.getDisseminationId());
+
+        rebuildSnapshot();
+    }
+}
@@ -1,12 +1,20 @@
 package me.sample.service.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
-import me.sample.service.GeoPositionInfoService;
+import me.sample.domain.LatestWinsMailbox;
+import me.sample.service.GeoPositionIngestionService;
 import me.sample.service.LocationConsumerService;
 import me.sample.service.ScheduledGeoposDisseminationService;
+import me.sample.utils.geo.GeoUtils;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -14,6 +22,21 @@ import me.sample.dto.GeoPositionInfoDTO;
 import me.sample.mapper.GeoPositionInfoMapper;
 import me.sample.domain.Terminal;
 
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Геопозиции сохраняются все (пакетами, см. {@link GeoPositionIngestionService}), а рассылка для терминала выполняется по последней из поступивших:
+ * геопозиции, пришедшие во время выполнения рассылки для того же терминала, схлопываются до последней.
+ * Повторная рассылка не выполняется, если с предыдущей прошло меньше минимального интервала
+ * и терминал сместился меньше чем на заданное расстояние
+ */
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
 @RequiredArgsConstructor
@@ -21,16 +44,93 @@ import me.sample.domain.Terminal;
 @Service
 public class LocationConsumerServiceImpl implements LocationConsumerService {
 
-    GeoPositionInfoService geoPositionInfoService;
+    GeoPositionIngestionService geoPositionIngestionService;
     GeoPositionInfoMapper geoPositionInfoMapper;
     ScheduledGeoposDisseminationService scheduledGeoposDisseminationService;
 
+    @NonFinal
+    @Value("${dissemination.location.min-interval:60000}")
+    long minIntervalMillis;
+
+    @NonFinal
+    @Value("${dissemination.location.min-distance:50}")
+    double minDistanceMeters;
+
+    @NonFinal
+    @Value("${dissemination.location.max-age:300000}")
+    long maxAgeMillis;
+
+    @NonFinal
+    @Value("${dissemination.location.retention:604800000}")
+    long retentionMillis;
+
+    @NonFinal
+    Cache<UUID, TerminalLocationSlot> slots;
+
+    @PostConstruct
+    private void postConstruct() {
+        slots = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMillis(Math.max(minIntervalMillis, 1)))
+                .build();
+    }
+
     @Async
     @Override
     public void handleAsync(Terminal terminal, GeoPositionInfoDTO geoPosInfoDTO) {
         geoPosInfoDTO.setTerminalId(terminal.getId().toString());
-        geoPositionInfoService.saveGeopositionAsync(geoPositionInfoMapper.toEntity(geoPosInfoDTO));
+        geoPositionIngestionService.ingest(geoPositionInfoMapper.toEntity(geoPosInfoDTO));
+
+        triggerDissemination(terminal, geoPosInfoDTO);
+    }
+
+    @Async
+    @Override
+    public void handleBatchAsync(Terminal terminal, List<GeoPositionInfoDTO> geoPosInfoDTOs) {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime retainedSince = now.minus(retentionMillis, ChronoUnit.MILLIS);
+
+        List<GeoPositionInfoDTO> sorted = new ArrayList<>(geoPosInfoDTOs.size());
+        for (GeoPositionInfoDTO geoPosInfoDTO : geoPosInfoDTOs) {
+            if (geoPosInfoDTO.getLat() == null || geoPosInfoDTO.getLon() == null) {
+                continue;
+            }
 
+            if (geoPosInfoDTO.getCreatedDate() == null || geoPosInfoDTO.getCreatedDate().isAfter(now)) {
+                geoPosInfoDTO.setCreatedDate(now);
+            }
+
+            if (geoPosInfoDTO.getCreatedDate().isBefore(retainedSince)) {
+                continue;
+            }
+
+            geoPosInfoDTO.setTerminalId(terminal.getId().toString());
+            sorted.add(geoPosInfoDTO);
+        }
+
+        if (sorted.isEmpty()) {
+            log.debug("No locations accepted for terminal id: {}. Received: {}", terminal.getId(), geoPosInfoDTOs.size());
+
+            return;
+        }
+
+        sorted.sort(Comparator.comparing(GeoPositionInfoDTO::getCreatedDate));
+        for (GeoPositionInfoDTO geoPosInfoDTO : sorted) {
+            geoPositionIngestionService.ingest(geoPositionInfoMapper.toEntity(geoPosInfoDTO));
+        }
+
+        GeoPositionInfoDTO latest = sorted.get(sorted.size() - 1);
+        if (latest.getCreatedDate().isBefore(now.minus(maxAgeMillis, ChronoUnit.MILLIS))) {
+            log.debug("No dissemination triggered for terminal id: {}. Reason: Latest location is outdated: {}",
+                    terminal.getId(),
+                    latest.getCreatedDate());
+
+            return;
+        }
+
+        triggerDissemination(terminal, latest);
+    }
+
+    private void triggerDissemination(Terminal terminal, GeoPositionInfoDTO geoPosInfoDTO) {
         if (terminal.getPushId() == null || terminal.getPushId().trim().isEmpty()) {
             log.debug("No dissemination triggered for terminal id: {}. Reason: No pushId is provided for terminal",
                     terminal.getId());
@@ -38,9 +138,64 @@ public class LocationConsumerServiceImpl implements LocationConsumerService {
             return;
         }
 
+        if (geoPosInfoDTO.getLat() == null || geoPosInfoDTO.getLon() == null) {
+            log.debug("No dissemination triggered for terminal id: {}. Reason: No location is provided",
+                    terminal.getId());
+
+            return;
+        }
+
+        TerminalLocationSlot slot = slots.get(terminal.getId(), (UUID key) -> new TerminalLocationSlot());
+        slot.getMailbox().offer(
+                new TerminalLocation(terminal, geoPosInfoDTO.getLat(), geoPosInfoDTO.getLon()),
+                (TerminalLocation location) -> executeDisseminationForTerminal(slot, location));
+    }
+
+    /**
+     * Вызывается не более чем одним потоком одновременно для одного терминала
+     */
+    private void executeDisseminationForTerminal(TerminalLocationSlot slot, TerminalLocation location) {
+        long now = System.currentTimeMillis();
+
+        TerminalLocation lastLocation = slot.lastLocation;
+        if (lastLocation != null &&
+                now - slot.lastEvaluatedAt < minIntervalMillis &&
+                GeoUtils.getDistanceInMeters(lastLocation.getLat(), lastLocation.getLon(), location.getLat(), location.getLon()) < minDistanceMeters) {
+            log.debug("No dissemination triggered for terminal id: {}. Reason: Location has not changed since last evaluation",
+                    location.getTerminal().getId());
+
+            return;
+        }
+
+        slot.lastLocation = location;
+        slot.lastEvaluatedAt = now;
+
         scheduledGeoposDisseminationService.executeDisseminationForTerminal(
-                terminal,
-                geoPosInfoDTO.getLat(),
-                geoPosInfoDTO.getLon());
+                location.getTerminal(),
+                location.getLat(),
+                location.getLon());
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @AllArgsConstructor
+    @Getter
+    private static final class TerminalLocation {
+
+        Terminal terminal;
+
+        double lat;
+
+        double lon;
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    @Getter
+    private static final class TerminalLocationSlot {
+
+        final LatestWinsMailbox<TerminalLocation> mailbox = new LatestWinsMailbox<>();
+
+        TerminalLocation lastLocation;
+
+        long lastEvaluatedAt;
     }
 }
@@ -2,9 +2,12 @@ package me.sample.service.impl;
 
 import com.eatthepath.pushy.apns.ApnsPushNotification;
 import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
@@ -13,12 +16,15 @@ import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.amqp.rabbit.annotation.RabbitListener;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Lazy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import me.sample.config.RabbitConfiguration;
+import me.sample.gateway.GatewayException;
+import me.sample.gateway.push.PayloadTemplate;
+import me.sample.gateway.push.PushDispatcher;
+import me.sample.gateway.push.PushRetryScheduler;
 import me.sample.gateway.push.apns.ApnsGateway;
 import me.sample.gateway.push.apns.request.ApnsRequest;
 import me.sample.gateway.push.apns.request.ApnsRequestAlert;
@@ -40,11 +46,23 @@ import me.sample.domain.event.NotificationSendRequestEvent;
 import me.sample.domain.event.NotificationSendResponseEvent;
 import me.sample.repository.NotificationRepository;
 import me.sample.service.NotificationDeliveryService;
-import me.sample.service.NotificationService;
+import me.sample.service.NotificationSendRateService;
+import me.sample.service.NotificationStateBufferService;
+import me.sample.service.PushTokenInvalidationService;
 import me.sample.utils.JsonUtil;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -56,17 +74,35 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
     FcmGateway fcmGateway;
     ApnsGateway apnsGateway;
 
+    PushDispatcher pushDispatcher;
+
+    PushRetryScheduler pushRetryScheduler;
+
 //    RabbitTemplate rabbitTemplate;
 
     NotificationRepository notificationRepository;
 
+    NotificationStateBufferService notificationStateBufferService;
+
+    PushTokenInvalidationService pushTokenInvalidationService;
+
+    NotificationSendRateService notificationSendRateService;
+
+    /**
+     * Сколько запрос отправки уведомления (sendNotificationData) ожидает ответа сервера, включая повторные попытки
+     */
     @NonFinal
-    NotificationService notificationService;
+    @Value("${push.send-data.timeout:10000}")
+    long sendDataTimeoutMillis;
 
-    @Autowired
-    public void setNotificationService(@Lazy NotificationService notificationService) {
-        this.notificationService = notificationService;
-    }
+    @NonFinal
+    @Value("${notification.outbox.visibility-timeout:300000}")
+    long outboxVisibilityTimeoutMillis;
+
+    Cache<PayloadKey, PayloadTemplate> payloadTemplates = Caffeine.newBuilder()
+            .maximumSize(1000)
+            .expireAfterAccess(Duration.ofHours(1))
+            .build();
 
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
@@ -76,26 +112,75 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
         Notification found = notificationRepository.findById(id)
                 .orElseThrow(() -> new NotFoundResourceException("Notification", id));
 
-        Terminal terminal = found.getTerminal();
+        notificationSendRateService.acquireCampaignSend(found.getCampaign());
+        sendNotification(id, found.getTerminal(), found.getCampaign(), false);
+
+        return id;
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public void sendNotifications(Campaign campaign, List<Notification> notifications) {
+        log.debug(".sendNotifications(Campaign.id: {}, count: {})", campaign.getId(), notifications.size());
+
+        long claimRenewalIntervalMillis = outboxVisibilityTimeoutMillis / 3;
+        long claimRenewAt = System.currentTimeMillis() + claimRenewalIntervalMillis;
+        Set<UUID> claimed = null;
+        for (int index = 0; index < notifications.size(); index++) {
+            Notification notification = notifications.get(index);
+            notificationSendRateService.acquireCampaignSend(campaign);
+
+            // Отправка пакета может длиться дольше visibility-timeout (ограничение скорости кампании, ожидание разрешения
+            // на отправку), поэтому взятие еще не отправленных уведомлений продлевается, пока они не взяты повторно
+            if (System.currentTimeMillis() >= claimRenewAt) {
+                LocalDateTime claimedUntil = LocalDateTime.now().plus(outboxVisibilityTimeoutMillis, ChronoUnit.MILLIS);
+                claimed = notificationRepository.extendClaims(notifications.subList(index, notifications.size()), claimedUntil)
+                        .stream()
+                        .map(Notification::getId)
+                        .collect(Collectors.toSet());
+                claimRenewAt = System.currentTimeMillis() + claimRenewalIntervalMillis;
+            }
+
+            if (claimed != null && !claimed.contains(notification.getId())) {
+                log.debug("Notification id: {} skipped. Reason: Claimed again or processed", notification.getId());
+
+                continue;
+            }
+
+            sendNotification(notification.getId(), notification.getTerminal(), campaign, false);
+        }
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public void sendRealtimeNotification(Campaign campaign, Notification notification) {
+        log.debug(".sendRealtimeNotification(Campaign.id: {}, Notification.id: {})", campaign.getId(), notification.getId());
+
+        notificationSendRateService.acquireRealtimeSend();
+        sendNotification(notification.getId(), notification.getTerminal(), campaign, true);
+    }
+
+    private void sendNotification(UUID id, Terminal terminal, Campaign campaign, boolean realtime) {
         UUID terminalId = terminal.getId();
 
         TerminalPlatform terminalPlatform = terminal.getPlatform();
         if (terminalPlatform == null) {
             log.warn("Notification skipped for terminal id: {}. Reason: No terminal platform provided",
                     terminalId);
+            notificationStateBufferService.enqueueNotificationState(id, NotificationState.FAILED, "No terminal platform provided");
 
-            return id;
+            return;
         }
 
         String terminalPushId = terminal.getPushId();
         if (terminalPushId == null || terminalPushId.trim().isEmpty()) {
             log.warn("Notification skipped for terminal id: {}. Reason: No terminal push id provided",
                     terminalId);
+            notificationStateBufferService.enqueueNotificationState(id, NotificationState.FAILED, "No terminal push id provided");
 
-            return id;
+            return;
         }
 
-        Campaign campaign = found.getCampaign();
         NotificationTemplate notificationTemplate = campaign.getNotificationTemplate();
         switch (terminalPlatform) {
             case ANDROID:
@@ -108,9 +193,11 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                                 .notificationId(id)
                                 .customDataKey(notificationTemplate.getCustomPushPartName())
                                 .customDataValue(notificationTemplate.getCustomPushPartValue())
-                                .build())
+                                .build(),
+                        false,
+                        realtime)
                         .thenAccept((NotificationStateData data) ->
-                                notificationService.updateNotificationState(
+                                notificationStateBufferService.enqueueNotificationState(
                                         id,
                                         data.getState(),
                                         data.getStateReason()));
@@ -126,9 +213,11 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                                 .notificationId(id)
                                 .customDataKey(notificationTemplate.getCustomPushPartName())
                                 .customDataValue(notificationTemplate.getCustomPushPartValue())
-                                .build())
+                                .build(),
+                        false,
+                        realtime)
                         .thenAccept((NotificationStateData data) ->
-                                notificationService.updateNotificationState(
+                                notificationStateBufferService.enqueueNotificationState(
                                         id,
                                         data.getState(),
                                         data.getStateReason()));
@@ -138,11 +227,12 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                 log.warn("Notification skipped for terminal id: {}. Reason: Unsupported terminal platform: {}",
                         terminalId,
                         terminalPlatform);
+                notificationStateBufferService.enqueueNotificationState(id, NotificationState.FAILED, String.format(
+                        "Unsupported terminal platform: %s",
+                        terminalPlatform));
 
                 break;
         }
-
-        return id;
     }
 
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
@@ -155,7 +245,7 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
 
         String terminalPushId = data.getTerminalPushId();
 
-        NotificationStateData result;
+        CompletableFuture<NotificationStateData> result;
         switch (terminalPlatform) {
             case ANDROID:
                 result = sendFcmNotificationAsync(
@@ -163,8 +253,9 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                         data.getSubject(),
                         data.getBody(),
                         AuxiliaryNotificationData.builder()
-                                .build())
-                        .join();
+                                .build(),
+                        true,
+                        false);
 
                 break;
             case IOS:
@@ -173,8 +264,9 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                         data.getSubject(),
                         data.getBody(),
                         AuxiliaryNotificationData.builder()
-                                .build())
-                        .join();
+                                .build(),
+                        true,
+                        false);
 
                 break;
             default:
@@ -183,7 +275,22 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                         terminalPlatform));
         }
 
-        return result;
+        try {
+            return result.get(sendDataTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException exception) {
+            log.warn("No server response for terminal push id: {} within {} ms", terminalPushId, sendDataTimeoutMillis);
+
+            return NotificationStateData.builder()
+                    .state(NotificationState.QUEUED)
+                    .stateReason(String.format("No server response within %s ms", sendDataTimeoutMillis))
+                    .build();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            throw new GatewayException(exception);
+        } catch (ExecutionException exception) {
+            throw new GatewayException(exception.getCause());
+        }
     }
 
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
@@ -286,26 +393,38 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
         log.debug(".onNotificationSendResponse(id: {}, state: {}, stateReason: {})",
                 id, state, stateReason);
 
-        notificationService.updateNotificationState(id, state, stateReason);
+        notificationStateBufferService.enqueueNotificationState(id, state, stateReason);
     }
 
     private CompletableFuture<NotificationStateData> sendFcmNotificationAsync(String terminalPushId,
                                                                               String subject, String body,
-                                                                              AuxiliaryNotificationData data) {
+                                                                              AuxiliaryNotificationData data,
+                                                                              boolean gatewayRequestRecorded,
+                                                                              boolean realtime) {
         UUID notificationId = data.getNotificationId();
 
         FcmRequest request = FcmRequest.builder()
                 .title(subject)
                 .body(body)
-                .build()
-                .setData(FcmRequestData.builder()
-                        .notificationId(notificationId)
-                        .build()
-                        .addCustomData(
-                                data.getCustomDataKey(),
-                                data.getCustomDataValue()));
-
-        return fcmGateway.sendRequestAsync(terminalPushId, request)
+                .data(renderPayload(TerminalPlatform.ANDROID, subject, body, data,
+                        (UUID id) -> JsonUtil.json(FcmRequestData.builder()
+                                .notificationId(id)
+                                .build()
+                                .addCustomData(
+                                        data.getCustomDataKey(),
+                                        data.getCustomDataValue()))))
+                .build();
+        String gatewayRequest = gatewayRequestRecorded ? JsonUtil.json(request) : null;
+
+        return pushRetryScheduler.execute(
+                TerminalPlatform.ANDROID,
+                () -> realtime ?
+                        pushDispatcher.<String>dispatchRealtime(
+                                TerminalPlatform.ANDROID,
+                                () -> fcmGateway.sendRequestNowAsync(terminalPushId, request),
+                                FcmGateway::isThrottled) :
+                        fcmGateway.sendRequestAsync(terminalPushId, request),
+                FcmGateway::transientFailureReason)
                 .handle((String response, Throwable throwable) -> {
                     if (response != null) {
                         log.info("Notification id: {} accepted by server: response {}",
@@ -314,7 +433,7 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
 
                         return NotificationStateData.builder()
                                 .state(NotificationState.ACCEPTED_BY_SERVER)
-                                .gatewayRequest(JsonUtil.json(request))
+                                .gatewayRequest(gatewayRequest)
                                 .gatewayResponse(response)
                                 .build();
                     } else {
@@ -322,10 +441,14 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                                 notificationId,
                                 throwable);
 
+                        if (FcmGateway.isTokenInvalid(throwable)) {
+                            pushTokenInvalidationService.invalidatePushToken(terminalPushId);
+                        }
+
                         return NotificationStateData.builder()
                                 .state(NotificationState.FAILED)
                                 .stateReason(formatFailureReason(throwable))
-                                .gatewayRequest(JsonUtil.json(request))
+                                .gatewayRequest(gatewayRequest)
                                 .gatewayResponse(response)
                                 .build();
                     }
@@ -334,26 +457,41 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
 
     private CompletableFuture<NotificationStateData> sendApnsNotificationAsync(String terminalPushId,
                                                                                String subject, String body,
-                                                                               AuxiliaryNotificationData data) {
+                                                                               AuxiliaryNotificationData data,
+                                                                               boolean gatewayRequestRecorded,
+                                                                               boolean realtime) {
         UUID notificationId = data.getNotificationId();
 
-        ApnsRequest request = ApnsRequest.builder()
-                .serviceParams(ApnsRequestServiceParams.builder()
-                        .alert(ApnsRequestAlert.builder()
-                                .title(subject)
-                                .body(body)
+        String payload = renderPayload(TerminalPlatform.IOS, subject, body, data,
+                (UUID id) -> JsonUtil.json(ApnsRequest.builder()
+                        .serviceParams(ApnsRequestServiceParams.builder()
+                                .alert(ApnsRequestAlert.builder()
+                                        .title(subject)
+                                        .body(body)
+                                        .build())
+                                .build())
+                        .data(ApnsRequestData.builder()
+                                .campaignId(data.getCampaignId())
+                                .notificationId(id)
                                 .build())
-                        .build())
-                .data(ApnsRequestData.builder()
-                        .campaignId(data.getCampaignId())
-                        .notificationId(notificationId)
-                        .build())
-                .build()
-                .addCustomJsonData(
-                        data.getCustomDataKey(),
-                        data.getCustomDataValue());
-
-        return apnsGateway.sendRequestAsync(terminalPushId, request)
+                        .build()
+                        .addCustomJsonData(
+                                data.getCustomDataKey(),
+                                data.getCustomDataValue())));
+        String gatewayRequest = gatewayRequestRecorded ? payload : null;
+
+        return pushRetryScheduler.execute(
+                TerminalPlatform.IOS,
+                () -> realtime ?
+                        pushDispatcher.<PushNotificationResponse<? extends ApnsPushNotification>>dispatchRealtime(
+                                TerminalPlatform.IOS,
+                                () -> apnsGateway.sendPayloadAsync(terminalPushId, payload),
+                                ApnsGateway::isThrottled) :
+                        pushDispatcher.<PushNotificationResponse<? extends ApnsPushNotification>>dispatch(
+                                TerminalPlatform.IOS,
+                                () -> apnsGateway.sendPayloadAsync(terminalPushId, payload),
+                                ApnsGateway::isThrottled),
+                ApnsGateway::transientFailureReason)
                 .handle((PushNotificationResponse<? extends ApnsPushNotification> response, Throwable throwable) -> {
                     if (response != null) {
                         if (response.isAccepted()) {
@@ -363,7 +501,7 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
 
                             return NotificationStateData.builder()
                                     .state(NotificationState.ACCEPTED_BY_SERVER)
-                                    .gatewayRequest(JsonUtil.json(request))
+                                    .gatewayRequest(gatewayRequest)
                                     .gatewayResponse(String.valueOf(response))
                                     .build();
                         } else {
@@ -373,10 +511,14 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                                     response,
                                     rejectionReason);
 
+                            if (ApnsGateway.isTokenInvalid(response)) {
+                                pushTokenInvalidationService.invalidatePushToken(terminalPushId);
+                            }
+
                             return NotificationStateData.builder()
                                     .state(NotificationState.REJECTED_BY_SERVER)
                                     .stateReason(rejectionReason)
-                                    .gatewayRequest(JsonUtil.json(request))
+                                    .gatewayRequest(gatewayRequest)
                                     .gatewayResponse(String.valueOf(response))
                                     .build();
                         }
@@ -389,13 +531,38 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
                         return NotificationStateData.builder()
                                 .state(NotificationState.FAILED)
                                 .stateReason(formatFailureReason(throwable))
-                                .gatewayRequest(JsonUtil.json(request))
+                                .gatewayRequest(gatewayRequest)
                                 .gatewayResponse(String.valueOf(response))
                                 .build();
                     }
                 });
     }
 
+    /**
+     * Формирует содержимое уведомления по шаблону, общему для всех уведомлений кампании с тем же содержимым.
+     * Уведомления без идентификатора формируются без шаблона
+     */
+    private String renderPayload(TerminalPlatform platform,
+                                 String subject, String body,
+                                 AuxiliaryNotificationData data,
+                                 Function<UUID, String> renderer) {
+        UUID notificationId = data.getNotificationId();
+        if (notificationId == null) {
+            return renderer.apply(null);
+        }
+
+        PayloadKey key = new PayloadKey(
+                platform,
+                data.getCampaignId(),
+                subject,
+                body,
+                data.getCustomDataKey(),
+                data.getCustomDataValue());
+
+        return payloadTemplates.get(key, (PayloadKey found) -> PayloadTemplate.compile(renderer))
+                .render(notificationId);
+    }
+
     private static String formatFailureReason(Throwable throwable) {
         if (throwable == null) {
             return null;
@@ -422,4 +589,25 @@ public class NotificationDeliveryServiceImpl implements NotificationDeliveryServ
 
         String customDataValue;
     }
+
+    /**
+     * Все, от чего зависит содержимое уведомления, кроме его идентификатора
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    @EqualsAndHashCode
+    private static final class PayloadKey {
+
+        TerminalPlatform platform;
+
+        UUID campaignId;
+
+        String subject;
+
+        String body;
+
+        String customDataKey;
+
+        String customDataValue;
+    }
 }
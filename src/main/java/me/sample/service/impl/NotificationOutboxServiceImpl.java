@@ -0,0 +1,198 @@
+package me.sample.service.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.Notification;
+import me.sample.domain.NotificationState;
+import me.sample.repository.NotificationRepository;
+import me.sample.service.NotificationDeliveryService;
+import me.sample.service.NotificationOutboxService;
+import me.sample.service.NotificationStateBufferService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Уведомления берутся на отправку запросом SELECT ... FOR UPDATE SKIP LOCKED, поэтому несколько
+ * обработчиков на одном или разных узлах не берут одни и те же уведомления. Уведомления кампаний, не находящихся
+ * в состоянии RUNNING, не берутся: уведомления приостановленной кампании ожидают ее возобновления,
+ * а уведомления завершенной переводятся в состояние FAILED
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Service
+public class NotificationOutboxServiceImpl implements NotificationOutboxService {
+
+    private static final String CLAIM_SQL = "" +
+            "UPDATE notification n " +
+            "SET state = CAST('QUEUED' AS notification_state_type), " +
+            "attempts = n.attempts + 1, available_at = ?, udat = ? " +
+            "FROM (SELECT id FROM notification " +
+            "WHERE available_at <= ? AND attempts < ? " +
+            "AND (campaign_id IS NULL OR campaign_id IN (" +
+            "SELECT id FROM campaign WHERE state = CAST('RUNNING' AS campaign_state_type))) " +
+            "ORDER BY available_at " +
+            "LIMIT ? " +
+            "FOR UPDATE SKIP LOCKED) claimed " +
+            "WHERE n.id = claimed.id " +
+            "RETURNING n.id";
+
+    private static final String EXPIRE_SQL = "" +
+            "UPDATE notification " +
+            "SET state = CAST('FAILED' AS notification_state_type), available_at = NULL, udat = ? " +
+            "WHERE available_at <= ? AND attempts >= ?";
+
+    private static final String DISCARD_COMPLETED_SQL = "" +
+            "UPDATE notification " +
+            "SET state = CAST('FAILED' AS notification_state_type), available_at = NULL, udat = ? " +
+            "WHERE available_at IS NOT NULL AND campaign_id IN (" +
+            "SELECT id FROM campaign WHERE state = CAST('COMPLETED' AS campaign_state_type))";
+
+
+    JdbcTemplate jdbcTemplate;
+
+    NotificationRepository notificationRepository;
+
+    NotificationDeliveryService notificationDeliveryService;
+
+    NotificationStateBufferService notificationStateBufferService;
+
+    @NonFinal
+    @Value("${notification.outbox.worker-count:2}")
+    int workerCount;
+
+    @NonFinal
+    @Value("${notification.outbox.batch-size:100}")
+    int batchSize;
+
+    @NonFinal
+    @Value("${notification.outbox.poll-interval:1000}")
+    long pollIntervalMillis;
+
+    @NonFinal
+    @Value("${notification.outbox.visibility-timeout:300000}")
+    long visibilityTimeoutMillis;
+
+    @NonFinal
+    @Value("${notification.outbox.max-attempts:3}")
+    int maxAttempts;
+
+    @NonFinal
+    ScheduledExecutorService workers;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        workers = Executors.newScheduledThreadPool(workerCount, new ThreadFactoryBuilder()
+                .setNameFormat("notification-outbox-worker-%d")
+                .setDaemon(true)
+                .build());
+        for (int index = 0; index < workerCount; index++) {
+            workers.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        log.info("Started {} notification outbox workers", workerCount);
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+
+    private void poll() {
+        try {
+            int claimed;
+            do {
+                claimed = dispatchAvailable();
+            } while (claimed >= batchSize && !workers.isShutdown());
+        } catch (RuntimeException exception) {
+            log.error("Failed to dispatch notifications from outbox", exception);
+        }
+    }
+
+    @Override
+    public int dispatchAvailable() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime claimedUntil = now.plus(visibilityTimeoutMillis, ChronoUnit.MILLIS);
+
+        List<UUID> ids = jdbcTemplate.query(
+                (Connection connection) -> {
+                    PreparedStatement statement = connection.prepareStatement(CLAIM_SQL);
+                    statement.setTimestamp(1, Timestamp.valueOf(claimedUntil));
+                    statement.setTimestamp(2, Timestamp.valueOf(now));
+                    statement.setTimestamp(3, Timestamp.valueOf(now));
+                    statement.setInt(4, maxAttempts);
+                    statement.setInt(5, batchSize);
+
+                    return statement;
+                },
+                (ResultSet resultSet, int rowNum) -> resultSet.getObject(1, UUID.class));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        log.debug("Claimed {} notifications from outbox", ids.size());
+
+        List<Notification> found = notificationRepository.findAllById(ids);
+        found.stream()
+                .filter((Notification notification) -> notification.getCampaign() == null)
+                .forEach((Notification notification) ->
+                        notificationStateBufferService.enqueueNotificationState(
+                                notification.getId(),
+                                NotificationState.FAILED,
+                                "No campaign provided"));
+
+        found.stream()
+                .filter((Notification notification) -> notification.getCampaign() != null)
+                .collect(Collectors.groupingBy(
+                        (Notification notification) -> notification.getCampaign().getId(),
+                        LinkedHashMap::new,
+                        Collectors.toList()))
+                .values()
+                .forEach((List<Notification> notifications) ->
+                        notificationDeliveryService.sendNotifications(notifications.get(0).getCampaign(), notifications));
+
+        return ids.size();
+    }
+
+    @Scheduled(fixedDelayString = "${notification.outbox.poll-interval:1000}")
+    @Override
+    public int expireExhausted() {
+        LocalDateTime now = LocalDateTime.now();
+        int result = jdbcTemplate.update(EXPIRE_SQL, Timestamp.valueOf(now), Timestamp.valueOf(now), maxAttempts);
+        if (result > 0) {
+            log.warn("Failed {} notifications after {} delivery attempts", result, maxAttempts);
+        }
+
+        int discarded = jdbcTemplate.update(DISCARD_COMPLETED_SQL, Timestamp.valueOf(now));
+        if (discarded > 0) {
+            log.warn("Failed {} notifications. Reason: Campaign is completed", discarded);
+        }
+
+        return result + discarded;
+    }
+}
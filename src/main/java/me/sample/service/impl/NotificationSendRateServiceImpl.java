@@ -0,0 +1,208 @@
+package me.sample.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.Campaign;
+import me.sample.domain.TokenBucket;
+import me.sample.service.NotificationSendRateService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отправки кампаний проходят два "ведра маркеров": собственное ведро кампании и общее ведро узла.
+ * <p>
+ * Общая скорость делится между активными кампаниями пропорционально их весам (взвешенное справедливое
+ * распределение): скорость кампании - ее доля общей скорости, но не более push.rate.campaign. Доля,
+ * не использованная кампаниями с меньшим пределом, распределяется между остальными. Кампания считается
+ * активной, пока отправляет уведомления, и исключается из распределения после idle-timeout бездействия.
+ * <p>
+ * Отправки в реальном времени (по местоположению терминала) не ожидают: они забирают маркер общего ведра
+ * вне очереди, а образовавшийся недостаток маркеров ожидают отправки кампаний
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Service
+public class NotificationSendRateServiceImpl implements NotificationSendRateService {
+
+    private static final double MIN_RATE = 1D;
+
+
+    MeterRegistry meterRegistry;
+
+    Map<UUID, Lane> lanes = new ConcurrentHashMap<>();
+
+    @NonFinal
+    @Value("${push.rate.global:1000}")
+    double globalRate;
+
+    @NonFinal
+    @Value("${push.rate.global-burst:50}")
+    double globalBurst;
+
+    @NonFinal
+    @Value("${push.rate.campaign:500}")
+    double campaignRate;
+
+    @NonFinal
+    @Value("${push.rate.campaign-burst:10}")
+    double campaignBurst;
+
+    @NonFinal
+    @Value("${push.rate.weight.distribution:1}")
+    double distributionWeight;
+
+    @NonFinal
+    @Value("${push.rate.weight.geo:1}")
+    double geoWeight;
+
+    @NonFinal
+    @Value("${push.rate.idle-timeout:10000}")
+    long idleTimeoutMillis;
+
+    @NonFinal
+    TokenBucket global;
+
+    @NonFinal
+    Counter realtimeSends;
+
+    @NonFinal
+    Timer campaignWait;
+
+    @PostConstruct
+    private void postConstruct() {
+        global = new TokenBucket(globalRate, globalBurst, System.nanoTime());
+
+        realtimeSends = meterRegistry.counter("push.rate.realtime");
+        campaignWait = Timer.builder("push.rate.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        meterRegistry.gauge("push.rate.campaigns", lanes, Map::size);
+    }
+
+    @Override
+    public void acquireCampaignSend(Campaign campaign) {
+        long now = System.nanoTime();
+
+        Lane lane = lanes.get(campaign.getId());
+        if (lane == null) {
+            Lane created = new Lane(new TokenBucket(campaignRate, campaignBurst, now), weight(campaign));
+            created.usedAt = now;
+            lane = lanes.putIfAbsent(campaign.getId(), created);
+            if (lane == null) {
+                lane = created;
+                rebalance();
+            }
+        }
+
+        lane.usedAt = now;
+
+        pause(lane.bucket.reserve(now));
+        pause(global.reserve(System.nanoTime()));
+
+        campaignWait.record(System.nanoTime() - now, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void acquireRealtimeSend() {
+        global.take(System.nanoTime());
+        realtimeSends.increment();
+    }
+
+    @Override
+    public double weight(Campaign campaign) {
+        return campaign.getScheduledGeoposDissemination() != null ? geoWeight : distributionWeight;
+    }
+
+    /**
+     * Исключает бездействующие кампании и перераспределяет общую скорость между активными
+     */
+    @Scheduled(fixedDelayString = "${push.rate.rebalance-interval:1000}")
+    public void expireIdle() {
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+
+        boolean expired = lanes.values().removeIf((Lane lane) -> lane.usedAt - idleSince < 0);
+        if (expired) {
+            rebalance();
+        }
+    }
+
+    private synchronized void rebalance() {
+        long now = System.nanoTime();
+
+        List<Lane> pending = new ArrayList<>(lanes.values());
+        double remaining = globalRate;
+        boolean capped = true;
+        while (capped && !pending.isEmpty()) {
+            capped = false;
+
+            double share = remaining / totalWeight(pending);
+            for (Iterator<Lane> iterator = pending.iterator(); iterator.hasNext(); ) {
+                Lane lane = iterator.next();
+                if (campaignRate <= share * lane.weight) {
+                    lane.bucket.setRate(campaignRate, now);
+                    remaining -= campaignRate;
+                    iterator.remove();
+                    capped = true;
+                }
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            double share = remaining / totalWeight(pending);
+            for (Lane lane : pending) {
+                lane.bucket.setRate(Math.max(share * lane.weight, MIN_RATE), now);
+            }
+        }
+
+        log.debug("Rebalanced send rates for {} campaigns", lanes.size());
+    }
+
+    private static double totalWeight(List<Lane> lanes) {
+        double result = 0;
+        for (Lane lane : lanes) {
+            result += lane.weight;
+        }
+
+        return result;
+    }
+
+    private static void pause(long nanos) {
+        if (nanos <= 0) {
+            return;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    @RequiredArgsConstructor
+    private static final class Lane {
+
+        final TokenBucket bucket;
+
+        final double weight;
+
+        volatile long usedAt;
+    }
+}
@@ -7,18 +7,19 @@ import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import me.sample.repository.NotificationRepository;
 import me.sample.repository.NotificationStateLogRepository;
+import me.sample.service.CampaignNotificationCounterService;
 import me.sample.service.NotificationService;
+import me.sample.service.NotificationStateBufferService;
+import me.sample.service.TerminalNotificationRateService;
 import me.sample.service.properties.PushPropertiesProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import me.sample.domain.Campaign;
-import me.sample.domain.NotFoundResourceException;
 import me.sample.domain.Notification;
 import me.sample.domain.NotificationLimitValidationResult;
 import me.sample.domain.NotificationState;
@@ -28,6 +29,11 @@ import me.sample.domain.Terminal;
 import me.sample.service.NotificationDeliveryService;
 
 import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
@@ -45,10 +51,20 @@ public class NotificationServiceImpl implements NotificationService {
 
     PushPropertiesProvider pushProperties;
 
+    TerminalNotificationRateService terminalNotificationRateService;
+
+    CampaignNotificationCounterService campaignNotificationCounterService;
+
+    NotificationStateBufferService notificationStateBufferService;
+
     @NonFinal
     @Value("${notification.state-log.enabled:false}")
     boolean notificationStateLogEnabled;
 
+    @NonFinal
+    @Value("${notification.outbox.visibility-timeout:300000}")
+    long outboxVisibilityTimeoutMillis;
+
     @Transactional(readOnly = true)
     @Override
     public Page<Notification> findNotifications(Pageable pageable) {
@@ -71,9 +87,7 @@ public class NotificationServiceImpl implements NotificationService {
     @Override
     public NotificationLimitValidationResult validateNotificationLimit(Campaign campaign) {
         Long limit = campaign.getNotificationLimit();
-        long count = campaign.getNotifications().stream()
-                .filter(Notification::wasSent)
-                .count();
+        long count = campaignNotificationCounterService.countSent(campaign.getId());
 
         return NotificationLimitValidationResult.builder()
                 .failed(limit != null && limit <= count)
@@ -91,10 +105,7 @@ public class NotificationServiceImpl implements NotificationService {
     @Override
     public NotificationLimitValidationResult validateNotificationLimit(Campaign campaign, Terminal terminal) {
         Long limit = campaign.getNotificationLimitPerTerminal();
-        long count = campaign.getNotifications().stream()
-                .filter((Notification notification) -> terminal.getId().equals(notification.getTerminal().getId()))
-                .filter(Notification::wasSent)
-                .count();
+        long count = campaignNotificationCounterService.countSent(campaign.getId(), terminal.getId());
 
         return NotificationLimitValidationResult.builder()
                 .failed(limit != null && limit <= count)
@@ -129,7 +140,7 @@ public class NotificationServiceImpl implements NotificationService {
 
     private NotificationLimitValidationResult validateNotificationLimitPerMinute(Terminal terminal, LocalDateTime at) {
         Integer limit = pushProperties.getMaxPushOnMinute();
-        int count = countSentBetweenDates(terminal, at.minusMinutes(1), at);
+        int count = countSentSince(terminal, at.minusMinutes(1));
 
         return NotificationLimitValidationResult.builder()
                 .failed(limit != null && limit <= count)
@@ -145,7 +156,7 @@ public class NotificationServiceImpl implements NotificationService {
 
     private NotificationLimitValidationResult validateNotificationLimitPerHour(Terminal terminal, LocalDateTime at) {
         Integer limit = pushProperties.getMaxPushOnHour();
-        int count = countSentBetweenDates(terminal, at.minusHours(1), at);
+        int count = countSentSince(terminal, at.minusHours(1));
 
         return NotificationLimitValidationResult.builder()
                 .failed(limit != null && limit <= count)
@@ -161,7 +172,7 @@ public class NotificationServiceImpl implements NotificationService {
 
     private NotificationLimitValidationResult validateNotificationLimitPerDay(Terminal terminal, LocalDateTime at) {
         Integer limit = pushProperties.getMaxPushOnDay();
-        int count = countSentBetweenDates(terminal, at.minusDays(1), at);
+        int count = countSentSince(terminal, at.minusDays(1));
 
         return NotificationLimitValidationResult.builder()
                 .failed(limit != null && limit <= count)
@@ -175,8 +186,8 @@ public class NotificationServiceImpl implements NotificationService {
                 .build();
     }
 
-    private int countSentBetweenDates(Terminal terminal, LocalDateTime from, LocalDateTime to) {
-        return notificationRepository.countSentBetweenDates(terminal, from, to);
+    private int countSentSince(Terminal terminal, LocalDateTime since) {
+        return terminalNotificationRateService.countSent(terminal.getId(), since);
     }
 
     @Override
@@ -212,12 +223,23 @@ public class NotificationServiceImpl implements NotificationService {
     }
 
     private Notification updateNotificationState(Notification found, NotificationState state, String stateReason) {
+        boolean sentBefore = found.wasSent();
         if (state != null && state != found.getState()) {
             found.setState(state);
+            if (state.compareTo(NotificationState.QUEUED) > 0) {
+                found.setAvailableAt(null);
+            }
         }
 
         Notification result = notificationRepository.save(found);
 
+        if (!sentBefore && result.wasSent()) {
+            terminalNotificationRateService.registerSent(result.getTerminal().getId(), LocalDateTime.now());
+            if (result.getCampaign() != null) {
+                campaignNotificationCounterService.registerSent(result.getCampaign().getId(), result.getTerminal().getId());
+            }
+        }
+
         if (notificationStateLogEnabled) {
             notificationStateLogRepository.save(NotificationStateLog.builder()
                     .notification(result)
@@ -229,20 +251,45 @@ public class NotificationServiceImpl implements NotificationService {
         return result;
     }
 
-    @Async
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public void updateNotificationStateAsync(UUID id, NotificationState state) {
-        updateNotificationState(id, state)
-                .orElseThrow(() -> new NotFoundResourceException("Notification", id));
+        notificationStateBufferService.enqueueNotificationState(id, state, null);
     }
 
     @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public Notification sendNotification(Terminal terminal, Campaign campaign) {
+        log.info(".sendNotification(Campaign.id: {}, Terminal.id: {})", campaign.getId(), terminal.getId());
+
+        Notification result = createNotification(terminal, campaign);
+        if (result == null) {
+            return null;
+        }
+
+        notificationDeliveryService.sendNotifications(campaign, Collections.singletonList(result));
+
+        return result;
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public Notification sendRealtimeNotification(Terminal terminal, Campaign campaign) {
+        log.info(".sendRealtimeNotification(Campaign.id: {}, Terminal.id: {})", campaign.getId(), terminal.getId());
+
+        Notification result = createNotification(terminal, campaign);
+        if (result == null) {
+            return null;
+        }
+
+        notificationDeliveryService.sendRealtimeNotification(campaign, result);
+
+        return result;
+    }
+
+    private Notification createNotification(Terminal terminal, Campaign campaign) {
         UUID campaignId = campaign.getId();
         UUID terminalId = terminal.getId();
-        log.info(".sendNotification(Campaign.id: {}, Terminal.id: {})", campaignId, terminalId);
 
         NotificationTemplate campaignNotificationTemplate = campaign.getNotificationTemplate();
         if (campaignNotificationTemplate == null) {
@@ -254,15 +301,62 @@ public class NotificationServiceImpl implements NotificationService {
             return null;
         }
 
-        Notification result = saveNotification(Notification.builder()
+        return saveNotification(Notification.builder()
                 .campaign(campaign)
                 .terminal(terminal)
-                .state(NotificationState.CREATED)
+                .state(NotificationState.QUEUED)
                 .text(campaignNotificationTemplate.getText())
+                .availableAt(claimedUntil())
+                .attempts(1)
                 .build());
+    }
+
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    @Override
+    public List<Notification> sendNotifications(Collection<Terminal> terminals, Campaign campaign) {
+        UUID campaignId = campaign.getId();
+        log.info(".sendNotifications(Campaign.id: {}, count: {})", campaignId, terminals.size());
+
+        if (terminals.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        NotificationTemplate campaignNotificationTemplate = campaign.getNotificationTemplate();
+        if (campaignNotificationTemplate == null) {
+            log.warn("Notifications skipped for {} terminals. Reason: No notification template defined for campaign id: {}",
+                    terminals.size(),
+                    campaignId);
 
-        notificationDeliveryService.sendNotification(result.getId());
+            return Collections.emptyList();
+        }
+
+        LocalDateTime claimedUntil = claimedUntil();
+        List<Notification> result = new ArrayList<>(terminals.size());
+        for (Terminal terminal : terminals) {
+            result.add(Notification.builder()
+                    .id(UUID.randomUUID())
+                    .campaign(campaign)
+                    .terminal(terminal)
+                    .state(NotificationState.QUEUED)
+                    .text(campaignNotificationTemplate.getText())
+                    .availableAt(claimedUntil)
+                    .attempts(1)
+                    .build());
+        }
+
+        notificationRepository.insertAll(result, notificationStateLogEnabled);
+
+        notificationDeliveryService.sendNotifications(campaign, result);
 
         return result;
     }
+
+    /**
+     * Уведомления создаются сразу взятыми на отправку данным узлом. Если отправка не будет завершена
+     * до истечения visibility-timeout (например, из-за остановки узла), уведомление будет взято на отправку повторно
+     * ({@link me.sample.service.NotificationOutboxService})
+     */
+    private LocalDateTime claimedUntil() {
+        return LocalDateTime.now().plus(outboxVisibilityTimeoutMillis, ChronoUnit.MILLIS);
+    }
 }
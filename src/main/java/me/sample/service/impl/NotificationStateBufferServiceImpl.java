@@ -0,0 +1,225 @@
+package me.sample.service.impl;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.NotificationState;
+import me.sample.domain.NotificationStateBuffer;
+import me.sample.service.CampaignNotificationCounterService;
+import me.sample.service.NotificationStateBufferService;
+import me.sample.service.TerminalNotificationRateService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Состояния уведомлений накапливаются в памяти ({@link NotificationStateBuffer}) и записываются пакетами:
+ * одним UPDATE на каждое состояние и пакетной вставкой журнала переходов.
+ * Буфер сбрасывается по таймеру, при достижении max-batch-size и при остановке приложения.
+ * Состояние уведомления не понижается: уведомления, уже находящиеся в том же или большем состоянии, не обновляются.
+ * Переходы несуществующих уведомлений пропускаются.
+ * Уведомления, перешедшие дальше состояния {@link NotificationState#QUEUED}, снимаются с очереди на отправку
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Service
+public class NotificationStateBufferServiceImpl implements NotificationStateBufferService {
+
+    private static final String UPDATE_STATES_SQL = "" +
+            "UPDATE notification n " +
+            "SET state = CAST(? AS notification_state_type), udat = ?, " +
+            "available_at = CASE WHEN ? THEN NULL ELSE n.available_at END " +
+            "FROM (SELECT id, state FROM notification WHERE id = ANY(?) FOR UPDATE) previous " +
+            "WHERE n.id = previous.id " +
+            "AND CAST(previous.state AS text) <> ALL(?) " +
+            "RETURNING n.terminal_id, n.campaign_id, CAST(previous.state AS text)";
+
+    private static final String INSERT_TRANSITIONS_SQL = "" +
+            "INSERT INTO notification_state_log (id, created_at, state, state_reason, notification_id) " +
+            "SELECT ?, ?, CAST(? AS notification_state_type), ?, id FROM notification WHERE id = ?";
+
+
+    JdbcTemplate jdbcTemplate;
+
+    TerminalNotificationRateService terminalNotificationRateService;
+
+    CampaignNotificationCounterService campaignNotificationCounterService;
+
+    Lock flushLock = new ReentrantLock();
+
+    AtomicBoolean flushRequested = new AtomicBoolean();
+
+    @NonFinal
+    @Value("${notification.state-log.enabled:false}")
+    boolean notificationStateLogEnabled;
+
+    @NonFinal
+    @Value("${notification.state-buffer.max-batch-size:1000}")
+    int maxBatchSize;
+
+    @NonFinal
+    NotificationStateBuffer buffer;
+
+    @NonFinal
+    ExecutorService flusher;
+
+    @PostConstruct
+    private void postConstruct() {
+        buffer = new NotificationStateBuffer(notificationStateLogEnabled);
+        flusher = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("notification-state-flusher-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    @PreDestroy
+    private void preDestroy() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(30, TimeUnit.SECONDS);
+
+        flush();
+        if (!buffer.isEmpty()) {
+            log.error("Failed to flush {} notification states on shutdown", buffer.size());
+        }
+    }
+
+    @Override
+    public void enqueueNotificationState(UUID id, NotificationState state, String stateReason) {
+        if (id == null || state == null) {
+            return;
+        }
+
+        int size = buffer.offer(id, state, stateReason, LocalDateTime.now());
+        if (size >= maxBatchSize && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(() -> {
+                    flushRequested.set(false);
+                    flush();
+                });
+            } catch (RuntimeException exception) {
+                flushRequested.set(false);
+                log.warn("Failed to request notification state flush: {}", exception.getMessage());
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${notification.state-buffer.flush-interval:1000}")
+    @Override
+    public void flush() {
+        flushLock.lock();
+        try {
+            flushStates();
+            flushTransitions();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushStates() {
+        Map<NotificationState, List<UUID>> drained = buffer.drainStates();
+        drained.forEach((NotificationState state, List<UUID> ids) -> {
+            try {
+                updateStates(state, ids);
+            } catch (RuntimeException exception) {
+                log.error("Failed to update {} notifications to state: {}", ids.size(), state, exception);
+                buffer.restore(state, ids);
+            }
+        });
+    }
+
+    private void updateStates(NotificationState state, List<UUID> ids) {
+        LocalDateTime now = LocalDateTime.now();
+        Object[] notLowerStates = Arrays.stream(NotificationState.values())
+                .filter((NotificationState found) -> found.compareTo(state) >= 0)
+                .map(NotificationState::name)
+                .toArray();
+
+        List<Object[]> updated = jdbcTemplate.query(
+                (Connection connection) -> {
+                    PreparedStatement statement = connection.prepareStatement(UPDATE_STATES_SQL);
+                    statement.setString(1, state.name());
+                    statement.setTimestamp(2, Timestamp.valueOf(now));
+                    statement.setBoolean(3, state.compareTo(NotificationState.QUEUED) > 0);
+                    statement.setArray(4, connection.createArrayOf("uuid", ids.toArray()));
+                    statement.setArray(5, connection.createArrayOf("text", notLowerStates));
+
+                    return statement;
+                },
+                (ResultSet resultSet, int rowNum) -> new Object[]{
+                        resultSet.getObject(1, UUID.class),
+                        resultSet.getObject(2, UUID.class),
+                        resultSet.getString(3)});
+
+        log.debug("Updated {} of {} notifications to state: {}", updated.size(), ids.size(), state);
+
+        if (!state.isSent()) {
+            return;
+        }
+
+        for (Object[] row : updated) {
+            String previousState = (String) row[2];
+            if (previousState != null && NotificationState.valueOf(previousState).isSent()) {
+                continue;
+            }
+
+            UUID terminalId = (UUID) row[0];
+            UUID campaignId = (UUID) row[1];
+            terminalNotificationRateService.registerSent(terminalId, now);
+            if (campaignId != null) {
+                campaignNotificationCounterService.registerSent(campaignId, terminalId);
+            }
+        }
+    }
+
+    private void flushTransitions() {
+        List<NotificationStateBuffer.Transition> drained;
+        while (!(drained = buffer.drainTransitions(maxBatchSize)).isEmpty()) {
+            try {
+                insertTransitions(drained);
+            } catch (RuntimeException exception) {
+                log.error("Failed to log {} notification state transitions", drained.size(), exception);
+                buffer.restore(drained);
+
+                return;
+            }
+        }
+    }
+
+    private void insertTransitions(List<NotificationStateBuffer.Transition> transitions) {
+        List<Object[]> rows = new ArrayList<>(transitions.size());
+        for (NotificationStateBuffer.Transition transition : transitions) {
+            rows.add(new Object[]{
+                    UUID.randomUUID(),
+                    Timestamp.valueOf(transition.getAt()),
+                    transition.getState().name(),
+                    transition.getStateReason(),
+                    transition.getId()});
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_TRANSITIONS_SQL, rows);
+    }
+}
@@ -7,6 +7,7 @@ import lombok.extern.slf4j.Slf4j;
 import me.sample.service.PartnerService;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.domain.Specification;
@@ -16,10 +17,12 @@ import me.sample.domain.BadResourceException;
 import me.sample.domain.Partner;
 import me.sample.domain.PartnerState;
 import me.sample.domain.Source;
+import me.sample.domain.Store;
 import me.sample.repository.PartnerRepository;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.stream.Collectors;
 
 @Slf4j
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
@@ -31,6 +34,8 @@ public class PartnerServiceImpl implements PartnerService {
 
     public static final String PARTNER_CACHE = "partner";
 
+    ApplicationEventPublisher applicationEventPublisher;
+
     PartnerRepository partnerRepository;
 
     @Transactional(readOnly = true)
@@ -150,7 +155,11 @@ public class PartnerServiceImpl implements PartnerService {
             found.setIconUrl(iconUrl);
         }
 
-        return Optional.of(partnerRepository.save(found));
+        Partner result = partnerRepository.save(found);
+
+        publishChangeStoresEvent(result);
+
+        return Optional.of(result);
     }
 
     @CacheEvict(allEntries = true)
@@ -170,8 +179,18 @@ public class PartnerServiceImpl implements PartnerService {
                     source));
         }
 
+        publishChangeStoresEvent(found);
+
         partnerRepository.deleteById(id);
 
         return Optional.of(id);
     }
+
+    private void publishChangeStoresEvent(Partner partner) {
+        applicationEventPublisher.publishEvent(ChangeStoresEvent.builder()
+                .storeIds(partner.getStores().stream()
+                        .map(Store::getId)
+                        .collect(Collectors.toSet()))
+                .build());
+    }
 }
@@ -0,0 +1,135 @@
+package me.sample.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.service.PushTokenInvalidationService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Недействительные push-идентификаторы накапливаются в памяти и сбрасываются пакетами по таймеру.
+ * Сбрасывается именно идентификатор, а не терминал: если терминал успел зарегистрировать новый
+ * push-идентификатор, он не затрагивается. Записи сброшенных терминалов удаляются из кэша терминалов
+ * данного узла, на прочих узлах они устаревают по времени
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@Service
+public class PushTokenInvalidationServiceImpl implements PushTokenInvalidationService {
+
+    private static final String RESET_PUSH_IDS_SQL = "" +
+            "UPDATE terminal t " +
+            "SET push_id = NULL " +
+            "FROM application a " +
+            "WHERE a.id = t.application_id " +
+            "AND t.push_id = ANY(?) " +
+            "RETURNING t.hardware_id, a.api_key";
+
+
+    JdbcTemplate jdbcTemplate;
+
+    Cache terminalCache;
+
+    Counter invalidated;
+
+    Set<String> pending = ConcurrentHashMap.newKeySet();
+
+    @NonFinal
+    @Value("${push.token-invalidation.batch-size:1000}")
+    int batchSize;
+
+    public PushTokenInvalidationServiceImpl(JdbcTemplate jdbcTemplate,
+                                            CacheManager cacheManager,
+                                            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.terminalCache = cacheManager.getCache(TerminalServiceImpl.CACHE_NAME_TERMINAL);
+        this.invalidated = Counter.builder("push.token.invalidated")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        flush();
+    }
+
+    @Override
+    public void invalidatePushToken(String pushId) {
+        if (pushId == null || pushId.trim().isEmpty()) {
+            return;
+        }
+
+        pending.add(pushId);
+    }
+
+    @Scheduled(fixedDelayString = "${push.token-invalidation.flush-interval:5000}")
+    @Override
+    public synchronized int flush() {
+        int result = 0;
+        List<String> batch;
+        while (!(batch = drain()).isEmpty()) {
+            try {
+                result += resetPushIds(batch);
+            } catch (RuntimeException exception) {
+                log.error("Failed to reset {} push ids", batch.size(), exception);
+                pending.addAll(batch);
+
+                break;
+            }
+        }
+
+        if (result > 0) {
+            log.info("Reset invalid push ids of {} terminals", result);
+        }
+
+        return result;
+    }
+
+    private List<String> drain() {
+        List<String> result = new ArrayList<>();
+        Iterator<String> iterator = pending.iterator();
+        while (result.size() < batchSize && iterator.hasNext()) {
+            result.add(iterator.next());
+            iterator.remove();
+        }
+
+        return result;
+    }
+
+    private int resetPushIds(List<String> pushIds) {
+        List<List<String>> keys = jdbcTemplate.query(
+                (Connection connection) -> {
+                    PreparedStatement statement = connection.prepareStatement(RESET_PUSH_IDS_SQL);
+                    statement.setArray(1, connection.createArrayOf("text", pushIds.toArray()));
+
+                    return statement;
+                },
+                (ResultSet resultSet, int rowNum) -> Arrays.asList(resultSet.getString(1), resultSet.getString(2)));
+
+        if (terminalCache != null) {
+            keys.forEach(terminalCache::evict);
+        }
+
+        invalidated.increment(keys.size());
+
+        return keys.size();
+    }
+}
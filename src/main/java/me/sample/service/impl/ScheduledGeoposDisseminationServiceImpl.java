@@ -1,15 +1,25 @@
 package me.sample.service.impl;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Streams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.experimental.FieldDefaults;
 import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import me.sample.repository.ScheduledGeoposDisseminationRepository;
-import me.sample.repository.StoreRepository;
+import me.sample.repository.TerminalPositionRepository;
 import me.sample.repository.TerminalRepository;
+import me.sample.service.ActiveStoreIndexService;
+import me.sample.service.CampaignClientService;
+import me.sample.service.CampaignNotificationCounterService;
 import me.sample.service.CampaignService;
+import me.sample.service.GeoposDisseminationSnapshotService;
 import me.sample.service.NotificationService;
 import org.quartz.CronScheduleBuilder;
 import org.quartz.CronTrigger;
@@ -22,6 +32,7 @@ import org.quartz.TriggerBuilder;
 import org.quartz.TriggerKey;
 import org.quartz.impl.matchers.GroupMatcher;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.jpa.domain.Specification;
@@ -30,7 +41,6 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.transaction.event.TransactionPhase;
 import org.springframework.transaction.event.TransactionalEventListener;
 import me.sample.domain.Campaign;
-import me.sample.domain.CampaignClientId;
 import me.sample.domain.CampaignState;
 import me.sample.job.ScheduledGeoposDisseminationJob;
 import me.sample.domain.NotificationLimitValidationResult;
@@ -41,22 +51,29 @@ import me.sample.domain.Store;
 import me.sample.domain.StoreState;
 import me.sample.domain.Terminal;
 import me.sample.domain.TerminalSpecifications;
-import me.sample.repository.CampaignClientRepository;
-import me.sample.repository.GeoPositionInfoRepository;
+import me.sample.domain.geo.FilterStageStatistics;
+import me.sample.domain.geo.GeoposDisseminationFilterStage;
+import me.sample.domain.geo.GeoposDisseminationRule;
+import me.sample.domain.geo.GeoposDisseminationSnapshot;
+import me.sample.domain.geo.StoreLocation;
 import me.sample.service.ScheduledGeoposDisseminationService;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
-import java.util.AbstractMap;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -67,25 +84,59 @@ import java.util.stream.Stream;
 @Service
 public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposDisseminationService {
 
+    private static final int TERMINAL_CHUNK_SIZE = 1000;
+
+    private static final long FILTER_STAGE_MIN_EVALUATIONS = 1000;
+
+
     Scheduler scheduler;
 
     ApplicationEventPublisher applicationEventPublisher;
 
     ScheduledGeoposDisseminationRepository scheduledGeoposDisseminationRepository;
+    GeoposDisseminationSnapshotService geoposDisseminationSnapshotService;
 
-    StoreRepository storeRepository;
+    ActiveStoreIndexService activeStoreIndexService;
 
     TerminalRepository terminalRepository;
-    GeoPositionInfoRepository geoPositionInfoRepository;
-    CampaignClientRepository campaignClientRepository;
+    TerminalPositionRepository terminalPositionRepository;
+    CampaignClientService campaignClientService;
+    CampaignNotificationCounterService campaignNotificationCounterService;
 
     NotificationService notificationService;
 
+    MeterRegistry meterRegistry;
+
+    Map<GeoposDisseminationFilterStage, FilterStageStatistics> filterStageStatistics = new EnumMap<>(GeoposDisseminationFilterStage.class);
+    Map<GeoposDisseminationFilterStage, Timer> filterStageTimers = new EnumMap<>(GeoposDisseminationFilterStage.class);
+    Map<GeoposDisseminationFilterStage, Counter> filterStageRejections = new EnumMap<>(GeoposDisseminationFilterStage.class);
+
     @NonFinal
     CampaignService campaignService;
 
+    @NonFinal
+    @Value("${dissemination.terminal-position.freshness-hours:24}")
+    long terminalPositionFreshnessHours;
+
+    /**
+     * Порядок этапов отбора правил. Если не задан, этапы упорядочиваются по накопленной статистике
+     */
+    @NonFinal
+    @Value("${dissemination.filter.stage-order:}")
+    List<GeoposDisseminationFilterStage> filterStageOrder;
+
     @PostConstruct
     private void postConstruct() throws SchedulerException {
+        for (GeoposDisseminationFilterStage stage : GeoposDisseminationFilterStage.values()) {
+            filterStageStatistics.put(stage, new FilterStageStatistics());
+            filterStageTimers.put(stage, Timer.builder("dissemination.filter.stage")
+                    .tag("stage", stage.name())
+                    .register(meterRegistry));
+            filterStageRejections.put(stage, Counter.builder("dissemination.filter.stage.rejected")
+                    .tag("stage", stage.name())
+                    .register(meterRegistry));
+        }
+
         // Удалить джобы рассылки, для которых в базе нет соответствующей сущности рассылки
         for (JobKey jobKey : scheduler.getJobKeys(GroupMatcher.groupEquals(ScheduledGeoposDisseminationJob.JOB_GROUP_NAME))) {
             if (!scheduledGeoposDisseminationRepository.existsById(UUID.fromString(jobKey.getName()))) {
@@ -135,162 +186,112 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
 
         UUID companyId = terminal.getApplication().getCompany().getId();
 
-        List<Map.Entry<Store, Double>> stores = storeRepository.findAllNeighbouringWithDistanceToGeoposition(lat, lon);
-        List<ScheduledGeoposDissemination> geoposDisseminations = stores.stream()
-                .peek((Map.Entry<Store, Double> entry) -> {
-                    Store store = entry.getKey();
-                    Double distanceToGeoposition = entry.getValue();
-
-                    log.debug("Store: id: {}, lat: {}, lon: {}, distanceToGeoposition: {}",
-                            store.getId(),
-                            store.getLat(),
-                            store.getLon(),
-                            distanceToGeoposition);
-                })
-                .flatMap((Map.Entry<Store, Double> entry) -> {
-                    Store store = entry.getKey();
-                    Double distanceToGeoposition = entry.getValue();
-
-                    return Stream.concat(
-                            store.getScheduledGeoposDisseminations().stream()
-                                    .map((ScheduledGeoposDissemination dissemination) ->
-                                            new AbstractMap.SimpleImmutableEntry<>(dissemination, distanceToGeoposition)),
-                            store.getPartner().getScheduledGeoposDisseminations().stream()
-                                    .map((ScheduledGeoposDissemination dissemination) ->
-                                            new AbstractMap.SimpleImmutableEntry<>(dissemination, distanceToGeoposition)));
-                })
-                .distinct()
-                .filter((Map.Entry<ScheduledGeoposDissemination, Double> entry) -> {
-                    ScheduledGeoposDissemination dissemination = entry.getKey();
-                    Long disseminationRadius = dissemination.getCampaign().getRadius();
-                    Double distanceToGeoposition = entry.getValue();
-
-                    boolean result = distanceToGeoposition <= disseminationRadius;
-
-                    log.debug("[{}] Dissemination id: {}. Test: distanceToGeoposition: {} <= disseminationRadius: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            distanceToGeoposition,
-                            disseminationRadius);
-
-                    return result;
-                }).map(Map.Entry::getKey)
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    UUID disseminationCompanyId = dissemination.getCampaign().getCompany().getId();
-
-                    boolean result = companyId.equals(disseminationCompanyId);
-
-                    log.debug("[{}] Dissemination id: {}. Test: companyId: {} == Dissemination.companyId: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            companyId,
-                            disseminationCompanyId);
-
-                    return result;
-                })
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    CampaignState disseminationState = dissemination.getCampaign().getState();
-
-                    boolean result = CampaignState.RUNNING == disseminationState;
+        List<Map.Entry<StoreLocation, Double>> neighbouringStores = activeStoreIndexService.findNeighbouringStores(lat, lon);
+        if (neighbouringStores.isEmpty()) {
+            log.debug("No active stores found within radius of geoposition");
 
-                    log.debug("[{}] Dissemination id: {}. Test: state: {} == RUNNING",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            disseminationState);
-
-                    return result;
-                })
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    NotificationLimitValidationResult campaignNotificationLimitValidation =
-                            notificationService.validateNotificationLimit(dissemination.getCampaign());
-
-                    boolean result = !campaignNotificationLimitValidation.getFailed();
-
-                    log.debug("[{}] Dissemination id: {}. Test: notificationLimit: count: {} < limit: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            campaignNotificationLimitValidation.getCount(),
-                            campaignNotificationLimitValidation.getLimit());
-
-                    return result;
-                })
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    NotificationLimitValidationResult campaignTerminalNotificationLimitValidation =
-                            notificationService.validateNotificationLimit(dissemination.getCampaign(), terminal);
+            return Optional.empty();
+        }
 
-                    boolean result = !campaignTerminalNotificationLimitValidation.getFailed();
+        GeoposDisseminationSnapshot snapshot = geoposDisseminationSnapshotService.getSnapshot();
 
-                    log.debug("[{}] Dissemination id: {}. Test: notificationLimitPerTerminal: count: {} < limit: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            campaignTerminalNotificationLimitValidation.getCount(),
-                            campaignTerminalNotificationLimitValidation.getLimit());
+        // Торговые точки упорядочены по возрастанию расстояния, поэтому для правила сохраняется минимальное из них
+        Map<GeoposDisseminationRule, Double> rules = new LinkedHashMap<>();
+        for (Map.Entry<StoreLocation, Double> entry : neighbouringStores) {
+            StoreLocation store = entry.getKey();
+            Double distanceToGeoposition = entry.getValue();
 
-                    return result;
-                })
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    // TODO нужно будет добавить учет часовых поясов ТТ и терминала
-                    LocalDateTime disseminationStart = dissemination.getStart();
-                    LocalDateTime disseminationEnd = dissemination.getEnd();
-
-                    boolean result = now.isAfter(disseminationStart) &&
-                            (now.isBefore(disseminationEnd) || now.isEqual(disseminationEnd));
-
-                    log.debug("[{}] Dissemination id: {}. Test: Dissemination.start: {} < now: {} <= Dissemination.end: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            disseminationStart,
-                            now,
-                            disseminationEnd);
-
-                    return result;
-                })
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    boolean result = terminal.matches(dissemination.getFilters());
+            if (log.isDebugEnabled()) {
+                log.debug("Store: id: {}, lat: {}, lon: {}, distanceToGeoposition: {}",
+                        store.getStoreId(),
+                        store.getLat(),
+                        store.getLon(),
+                        distanceToGeoposition);
+            }
 
-                    log.debug("[{}] Dissemination id: {}. Test: Dissemination.filters: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            dissemination.getFilters());
+            for (GeoposDisseminationRule rule : snapshot.findRules(store.getStoreId(), store.getPartnerId())) {
+                rules.putIfAbsent(rule, distanceToGeoposition);
+            }
+        }
 
-                    return result;
-                })
-                .filter((ScheduledGeoposDissemination dissemination) -> {
-                    UUID campaignId = dissemination.getCampaign().getId();
-                    boolean clientLimitedCampaign = campaignClientRepository.existsByCampaignId(campaignId);
-                    if (!clientLimitedCampaign) {
-                        return true;
-                    }
+        // Проверки в памяти выполняются для всех правил, остальные - в порядке приоритета до первого подходящего правила.
+        // Снимок может отставать от состояния кампаний (приостановка на другом узле), поэтому состояние
+        // кампании выбранной рассылки проверяется по загруженной рассылке
+        List<GeoposDisseminationFilterStage> stages = orderFilterStages(false);
+        List<GeoposDisseminationFilterStage> deferredStages = orderFilterStages(true);
+        GeoposDisseminationFilterStage.Context context = new FilterContext(terminal, companyId, now);
+
+        return rules.entrySet().stream()
+                .filter((Map.Entry<GeoposDisseminationRule, Double> entry) ->
+                        acceptFilterStages(stages, entry.getKey(), entry.getValue(), context))
+                .map(Map.Entry::getKey)
+                .sorted(Comparator.comparingInt(GeoposDisseminationRule::getPriority).reversed())
+                .filter((GeoposDisseminationRule rule) ->
+                        acceptFilterStages(deferredStages, rule, rules.get(rule), context))
+                .map((GeoposDisseminationRule rule) -> scheduledGeoposDisseminationRepository.findById(rule.getDisseminationId())
+                        .filter(this::isCampaignRunning)
+                        .orElse(null))
+                .filter(Objects::nonNull)
+                .peek((ScheduledGeoposDissemination dissemination) ->
+                        log.debug("GeoposDissemination (prioritised): id: {}, priority: {}",
+                                dissemination.getId(),
+                                dissemination.getPriority()))
+                .findFirst();
+    }
 
-                    Object terminalClientIdValue = terminal.getProp(Terminal.PROP_KEY_CLIENT_ID);
-                    if (terminalClientIdValue == null) {
-                        return false;
-                    }
+    private boolean isCampaignRunning(ScheduledGeoposDissemination dissemination) {
+        CampaignState disseminationState = dissemination.getCampaign().getState();
 
-                    String terminalClientId = String.valueOf(terminalClientIdValue);
+        boolean result = CampaignState.RUNNING == disseminationState;
 
-                    boolean result = campaignClientRepository.existsById(CampaignClientId.builder()
-                            .campaignId(campaignId)
-                            .clientId(terminalClientId)
-                            .build());
+        log.debug("[{}] Dissemination id: {}. Test: state: {} == RUNNING",
+                result ? "Accepted" : "Rejected",
+                dissemination.getId(),
+                disseminationState);
 
-                    log.debug("[{}] Dissemination id: {}. Test: Campaign.client exists: {}",
-                            result ? "Accepted" : "Rejected",
-                            dissemination.getId(),
-                            dissemination.getFilters());
+        return result;
+    }
 
-                    return result;
-                })
-                .sorted(Comparator.comparing(ScheduledGeoposDissemination::getPriority).reversed())
+    /**
+     * Упорядочивает этапы отбора: в порядке, заданном конфигурацией,
+     * либо по накопленной статистике - сначала дешевые и чаще отклоняющие кандидатов
+     */
+    private List<GeoposDisseminationFilterStage> orderFilterStages(boolean deferred) {
+        Comparator<GeoposDisseminationFilterStage> comparator = filterStageOrder.isEmpty() ?
+                Comparator.comparingDouble((GeoposDisseminationFilterStage stage) ->
+                        filterStageStatistics.get(stage).getRank(FILTER_STAGE_MIN_EVALUATIONS)) :
+                Comparator.comparingInt((GeoposDisseminationFilterStage stage) -> {
+                    int index = filterStageOrder.indexOf(stage);
+
+                    return index < 0 ? Integer.MAX_VALUE : index;
+                });
+
+        return Arrays.stream(GeoposDisseminationFilterStage.values())
+                .filter((GeoposDisseminationFilterStage stage) -> stage.isDeferred() == deferred)
+                .sorted(comparator)
                 .collect(Collectors.toList());
+    }
 
-        log.debug("GeoposDisseminations (filtered, sorted by priority):");
-        geoposDisseminations.forEach((ScheduledGeoposDissemination dissemination) ->
-                log.debug("GeoposDissemination: id: {}, priority: {}",
-                        dissemination.getId(),
-                        dissemination.getPriority()));
+    private boolean acceptFilterStages(List<GeoposDisseminationFilterStage> stages,
+                                       GeoposDisseminationRule rule,
+                                       double distanceToGeoposition,
+                                       GeoposDisseminationFilterStage.Context context) {
+        for (GeoposDisseminationFilterStage stage : stages) {
+            long startedAt = System.nanoTime();
+            boolean result = stage.test(rule, distanceToGeoposition, context);
+            long elapsedNanos = System.nanoTime() - startedAt;
+
+            filterStageStatistics.get(stage).record(elapsedNanos, result);
+            filterStageTimers.get(stage).record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if (!result) {
+                filterStageRejections.get(stage).increment();
+                log.debug("[Rejected] Dissemination id: {}. Stage: {}", rule.getDisseminationId(), stage);
+
+                return false;
+            }
+        }
 
-        return geoposDisseminations.stream().findFirst();
+        return true;
     }
 
     @Override
@@ -312,6 +313,8 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
         UUID id = found.getId();
         log.debug(".startDissemination(Dissemination.id: {}", id);
 
+        publishChangeStoresEvent(found);
+
         LocalDateTime startAt = found.getStart();
         if (startAt == null) {
             log.error("No start time provided for dissemination id: {}", id);
@@ -368,6 +371,8 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
         UUID id = found.getId();
         log.debug(".pauseDissemination(Dissemination.id: {}", id);
 
+        publishChangeStoresEvent(found);
+
         JobKey jobKey = JobKey.jobKey(String.valueOf(id), ScheduledGeoposDisseminationJob.JOB_GROUP_NAME);
         scheduler.pauseJob(jobKey);
 
@@ -380,12 +385,30 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
         UUID id = found.getId();
         log.debug(".completeDissemination(Dissemination.id: {}", id);
 
+        publishChangeStoresEvent(found);
+
         JobKey jobKey = JobKey.jobKey(String.valueOf(id), ScheduledGeoposDisseminationJob.JOB_GROUP_NAME);
         scheduler.pauseJob(jobKey);
 
         return found;
     }
 
+    /**
+     * Оповещает об изменении набора торговых точек, участвующих в запущенных рассылках
+     */
+    private void publishChangeStoresEvent(ScheduledGeoposDissemination found) {
+        applicationEventPublisher.publishEvent(ChangeStoresEvent.builder()
+                .storeIds(Stream.concat(
+                        found.getPartners().stream()
+                                .map(Partner::getStores)
+                                .filter(Objects::nonNull)
+                                .flatMap(Collection::stream),
+                        found.getStores().stream())
+                        .map(Store::getId)
+                        .collect(Collectors.toSet()))
+                .build());
+    }
+
     @Override
     public Optional<ScheduledGeoposDissemination> executeDissemination(UUID id) {
         return scheduledGeoposDisseminationRepository.findById(id)
@@ -429,23 +452,29 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
             return found;
         }
 
-        Set<UUID> terminalIds = geoPositionInfoRepository.findDistinctTerminalIdsWithinRadiusOfStores(disseminationRadius, storeIds);
+        LocalDateTime positionedSince = LocalDateTime.now().minusHours(terminalPositionFreshnessHours);
+        Set<UUID> terminalIds = terminalPositionRepository.findTerminalIdsWithinRadiusOfStoresAndUpdatedDateAfter(
+                disseminationRadius,
+                storeIds,
+                positionedSince);
+        log.debug("Found {} terminals positioned since: {} for dissemination", terminalIds.size(), positionedSince);
+
         Specification<Terminal> terminalSpecification = Specification.not(TerminalSpecifications.pushIdIsNull())
-                .and(TerminalSpecifications.idIn(terminalIds))
                 .and(TerminalSpecifications.createForFilters(found.getFilters()));
-        if (campaignClientRepository.existsByCampaignId(campaign.getId())) {
+        if (!campaignClientService.findCampaignClientIds(campaign.getId()).isEmpty()) {
             terminalSpecification = terminalSpecification
                     .and(TerminalSpecifications.existsCampaignClientForCampaignId(campaign.getId()));
         }
 
-        List<Terminal> terminals = terminalRepository.findAll(terminalSpecification);
-
-        log.debug("Found {} terminals for dissemination", terminalIds.size());
+        Specification<Terminal> chunkSpecification = terminalSpecification;
+        Stream<Terminal> terminals = Streams.stream(Iterables.partition(terminalIds, TERMINAL_CHUNK_SIZE))
+                .flatMap((List<UUID> chunk) ->
+                        terminalRepository.findAll(chunkSpecification.and(TerminalSpecifications.idIn(chunk))).stream());
 
         long terminalLimit = campaignNotificationLimitValidation.getLimit() != null ?
                 campaignNotificationLimitValidation.getLimit() - campaignNotificationLimitValidation.getCount() :
                 Long.MAX_VALUE;
-        terminals.stream()
+        terminals
                 .peek((Terminal terminal) ->
                         log.debug("Terminal.id: {}", terminal.getId()))
                 .filter((Terminal terminal) -> {
@@ -502,7 +531,7 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
 
         Campaign campaign = found.getCampaign();
 
-        notificationService.sendNotification(terminal, campaign);
+        notificationService.sendRealtimeNotification(terminal, campaign);
 
         return Optional.of(found);
     }
@@ -535,4 +564,34 @@ public class ScheduledGeoposDisseminationServiceImpl implements ScheduledGeoposD
         JobKey jobKey = JobKey.jobKey(String.valueOf(disseminationId), ScheduledGeoposDisseminationJob.JOB_GROUP_NAME);
         scheduler.deleteJob(jobKey);
     }
+
+    /**
+     * Данные терминала для проверки правил
+     */
+    @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+    @RequiredArgsConstructor
+    @Getter
+    private final class FilterContext implements GeoposDisseminationFilterStage.Context {
+
+        Terminal terminal;
+
+        UUID companyId;
+
+        LocalDateTime now;
+
+        @Override
+        public long countSent(UUID campaignId) {
+            return campaignNotificationCounterService.countSent(campaignId);
+        }
+
+        @Override
+        public long countSent(UUID campaignId, UUID terminalId) {
+            return campaignNotificationCounterService.countSent(campaignId, terminalId);
+        }
+
+        @Override
+        public boolean isCampaignAvailableForTerminal(UUID campaignId) {
+            return campaignClientService.isAvailableForTerminal(campaignId, terminal);
+        }
+    }
 }
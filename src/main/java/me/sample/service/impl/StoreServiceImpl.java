@@ -6,6 +6,7 @@ import lombok.experimental.FieldDefaults;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -23,6 +24,7 @@ import me.sample.repository.StoreRepository;
 import me.sample.service.StoreService;
 
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
@@ -41,6 +43,8 @@ public class StoreServiceImpl implements StoreService {
     private static final int BATCH_SIZE_STORE_CITY_UPDATE = 1000;
 
 
+    ApplicationEventPublisher applicationEventPublisher;
+
     StoreRepository storeRepository;
 
     DadataGateway dadataGateway;
@@ -88,7 +92,11 @@ public class StoreServiceImpl implements StoreService {
             throw new BadResourceException(String.format("Store already exists for id: %s", id));
         }
 
-        return storeRepository.save(data);
+        Store result = storeRepository.save(data);
+
+        publishChangeStoreEvent(result.getId());
+
+        return result;
     }
 
     @Override
@@ -164,7 +172,11 @@ public class StoreServiceImpl implements StoreService {
             found.setLon(lon);
         }
 
-        return Optional.of(storeRepository.save(found));
+        Store result = storeRepository.save(found);
+
+        publishChangeStoreEvent(result.getId());
+
+        return Optional.of(result);
     }
 
     @Override
@@ -216,6 +228,14 @@ public class StoreServiceImpl implements StoreService {
 
         storeRepository.delete(found);
 
+        publishChangeStoreEvent(id);
+
         return Optional.of(id);
     }
+
+    private void publishChangeStoreEvent(UUID id) {
+        applicationEventPublisher.publishEvent(ChangeStoresEvent.builder()
+                .storeIds(Collections.singleton(id))
+                .build());
+    }
 }
@@ -0,0 +1,165 @@
+package me.sample.service.impl;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.TerminalChangeBuffer;
+import me.sample.service.TerminalChangeBufferService;
+import me.sample.utils.JsonUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Изменения атрибутов терминалов накапливаются в памяти ({@link TerminalChangeBuffer}) и записываются
+ * по таймеру пакетами до batch-size терминалов. Обновляются только измененные атрибуты,
+ * свойства (props) дополняют уже сохраненные. Терминал, изменявшийся многократно между сбросами,
+ * обновляется одним UPDATE. Изменения, которые не удалось записать, возвращаются в буфер
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Service
+public class TerminalChangeBufferServiceImpl implements TerminalChangeBufferService {
+
+    private static final String UPDATE_TERMINAL_SQL = "" +
+            "UPDATE terminal " +
+            "SET platform = COALESCE(CAST(? AS terminal_platform_type), platform), " +
+            "push_id = COALESCE(?, push_id), " +
+            "vendor = COALESCE(?, vendor), " +
+            "model = COALESCE(?, model), " +
+            "os_version = COALESCE(?, os_version), " +
+            "app_version = COALESCE(?, app_version), " +
+            "msisdn = COALESCE(?, msisdn), " +
+            "ip = COALESCE(?, ip), " +
+            "props = COALESCE(props, CAST('{}' AS jsonb)) || CAST(? AS jsonb), " +
+            "udat = ? " +
+            "WHERE id = ?";
+
+
+    JdbcTemplate jdbcTemplate;
+
+    MeterRegistry meterRegistry;
+
+    TerminalChangeBuffer buffer = new TerminalChangeBuffer();
+
+    Lock flushLock = new ReentrantLock();
+
+    @NonFinal
+    @Value("${terminal.write-behind.batch-size:500}")
+    int batchSize;
+
+    @NonFinal
+    Counter flushed;
+
+    @PostConstruct
+    private void postConstruct() {
+        meterRegistry.gauge("terminal.write-behind.pending", buffer, TerminalChangeBuffer::size);
+        flushed = meterRegistry.counter("terminal.write-behind.flushed");
+    }
+
+    @PreDestroy
+    private void preDestroy() {
+        flush();
+        if (!buffer.isEmpty()) {
+            log.error("Failed to flush {} terminal changes on shutdown", buffer.size());
+        }
+    }
+
+    @Override
+    public void enqueueTerminalChanges(UUID id, TerminalChangeBuffer.Changes changes) {
+        if (id == null || changes == null) {
+            return;
+        }
+
+        if (changes.getUpdatedDate() == null) {
+            changes.setUpdatedDate(LocalDateTime.now());
+        }
+
+        buffer.offer(id, changes);
+    }
+
+    @Scheduled(fixedDelayString = "${terminal.write-behind.flush-interval:300}")
+    @Override
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<UUID, TerminalChangeBuffer.Changes> drained = buffer.drain();
+            Map<UUID, TerminalChangeBuffer.Changes> batch = new LinkedHashMap<>();
+            for (Map.Entry<UUID, TerminalChangeBuffer.Changes> entry : drained.entrySet()) {
+                batch.put(entry.getKey(), entry.getValue());
+                if (batch.size() >= batchSize) {
+                    updateTerminals(batch);
+                    batch = new LinkedHashMap<>();
+                }
+            }
+
+            updateTerminals(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public void flush(UUID id) {
+        flushLock.lock();
+        try {
+            TerminalChangeBuffer.Changes changes = buffer.drain(id);
+            if (changes != null) {
+                updateTerminals(Collections.singletonMap(id, changes));
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void updateTerminals(Map<UUID, TerminalChangeBuffer.Changes> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        batch.forEach((UUID id, TerminalChangeBuffer.Changes changes) -> rows.add(new Object[]{
+                changes.getPlatform() != null ? changes.getPlatform().name() : null,
+                changes.getPushId(),
+                changes.getVendor(),
+                changes.getModel(),
+                changes.getOsVersion(),
+                changes.getAppVersion(),
+                changes.getMsisdn(),
+                changes.getIp(),
+                JsonUtil.json(changes.getProps()),
+                Timestamp.valueOf(changes.getUpdatedDate()),
+                id}));
+
+        try {
+            jdbcTemplate.batchUpdate(UPDATE_TERMINAL_SQL, rows);
+        } catch (RuntimeException exception) {
+            log.error("Failed to update {} terminals", batch.size(), exception);
+            buffer.restore(batch);
+
+            return;
+        }
+
+        flushed.increment(batch.size());
+        log.debug("Updated {} terminals", batch.size());
+    }
+}
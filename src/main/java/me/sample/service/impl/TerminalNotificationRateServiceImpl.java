@@ -0,0 +1,127 @@
+package me.sample.service.impl;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.experimental.FieldDefaults;
+import lombok.experimental.NonFinal;
+import lombok.extern.slf4j.Slf4j;
+import me.sample.domain.NotificationState;
+import me.sample.domain.SlidingWindowLog;
+import me.sample.repository.NotificationRepository;
+import me.sample.service.TerminalNotificationRateService;
+import me.sample.service.properties.PushPropertiesProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Журналы отправок хранятся в памяти по терминалам и заполняются из базы при старте приложения
+ * (уведомления, отправленные за последние сутки). Далее учитываются отправки, зарегистрированные на данном узле
+ */
+@Slf4j
+@FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
+@RequiredArgsConstructor
+@Service
+public class TerminalNotificationRateServiceImpl implements TerminalNotificationRateService {
+
+    NotificationRepository notificationRepository;
+
+    PushPropertiesProvider pushProperties;
+
+    Map<UUID, SlidingWindowLog> logs = new ConcurrentHashMap<>();
+
+    @NonFinal
+    @Value("${notification.rate-limit.capacity:16}")
+    int defaultCapacity;
+
+    @Transactional(readOnly = true)
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        LocalDateTime since = LocalDateTime.now().minusDays(1);
+        log.info("Seeding terminal notification rates since: {}...", since);
+
+        int capacity = capacity();
+        AtomicLong count = new AtomicLong();
+        try (Stream<Object[]> rows = notificationRepository.findAsRowsTerminalIdsAndUpdatedDatesByStateInAndUpdatedDateAfter(
+                Arrays.asList(
+                        NotificationState.ACCEPTED_BY_SERVER,
+                        NotificationState.RECEIVED_BY_CLIENT,
+                        NotificationState.ACKNOWLEDGED_BY_CLIENT),
+                since)) {
+            rows.forEach((Object[] row) -> {
+                registerSent((UUID) row[0], (LocalDateTime) row[1], capacity);
+                count.incrementAndGet();
+            });
+        } catch (RuntimeException exception) {
+            log.error("Failed to seed terminal notification rates", exception);
+        }
+
+        log.info("Seeded {} terminal notification rates from {} notifications", logs.size(), count);
+    }
+
+    @Override
+    public void registerSent(UUID terminalId, LocalDateTime at) {
+        registerSent(terminalId, at, capacity());
+    }
+
+    private void registerSent(UUID terminalId, LocalDateTime at, int capacity) {
+        if (terminalId == null || at == null) {
+            return;
+        }
+
+        logs.computeIfAbsent(terminalId, (UUID key) -> new SlidingWindowLog(capacity))
+                .record(toEpochMilli(at), capacity);
+    }
+
+    @Override
+    public int countSent(UUID terminalId, LocalDateTime since) {
+        SlidingWindowLog found = logs.get(terminalId);
+        if (found == null) {
+            return 0;
+        }
+
+        return found.count(toEpochMilli(since));
+    }
+
+    /**
+     * Удаляет журналы терминалов, которым не отправлялись уведомления в течение суток
+     */
+    @Scheduled(fixedDelayString = "${notification.rate-limit.cleanup-interval:600000}")
+    public void evictExpired() {
+        long before = toEpochMilli(LocalDateTime.now().minusDays(1));
+
+        int initialSize = logs.size();
+        logs.values().removeIf((SlidingWindowLog found) -> found.isExpired(before));
+
+        log.debug("Evicted {} expired terminal notification rates", initialSize - logs.size());
+    }
+
+    /**
+     * Емкость журнала должна покрывать наибольший из лимитов, иначе подсчет насытится раньше лимита
+     */
+    private int capacity() {
+        return Stream.of(
+                pushProperties.getMaxPushOnMinute(),
+                pushProperties.getMaxPushOnHour(),
+                pushProperties.getMaxPushOnDay())
+                .filter(Objects::nonNull)
+                .reduce(defaultCapacity, Math::max);
+    }
+
+    private static long toEpochMilli(LocalDateTime at) {
+        return at.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -1,5 +1,9 @@
 package me.sample.service.impl;
 
+import com.google.common.util.concurrent.Striped;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.AccessLevel;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -8,6 +12,8 @@ import lombok.experimental.NonFinal;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheConfig;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.CachePut;
@@ -29,21 +35,29 @@ import me.sample.domain.Application;
 import me.sample.domain.NotFoundResourceException;
 import me.sample.mapper.TerminalMapper;
 import me.sample.domain.Terminal;
+import me.sample.domain.TerminalChangeBuffer;
 import me.sample.domain.TerminalSpecifications;
 import me.sample.domain.TestTerminalMaxCountExceededException;
 import me.sample.repository.GeoPositionInfoRepository;
 import me.sample.repository.TerminalRepository;
 import me.sample.service.ApplicationService;
+import me.sample.service.TerminalChangeBufferService;
 import me.sample.service.TerminalService;
 
+
+import javax.annotation.PostConstruct;
 import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
 @Slf4j
 @FieldDefaults(level = AccessLevel.PRIVATE, makeFinal = true)
@@ -64,6 +78,12 @@ public class TerminalServiceImpl implements TerminalService {
     TerminalRepository terminalRepository;
     GeoPositionInfoRepository geoPositionInfoRepository;
 
+    TerminalChangeBufferService terminalChangeBufferService;
+
+    CacheManager cacheManager;
+
+    MeterRegistry meterRegistry;
+
     ApplicationService applicationService;
     TerminalMapper terminalMapper;
     DadataGateway dadataGateway;
@@ -76,11 +96,33 @@ public class TerminalServiceImpl implements TerminalService {
     @Value("${terminal.city.update-after-hours}")
     Integer updateLocationAfterHours;
 
+    @NonFinal
+    @Value("${terminal.lock.stripes:1024}")
+    int lockStripes;
+
+    @NonFinal
+    Striped<Lock> terminalLocks;
+
+    @NonFinal
+    Counter terminalLockContended;
+
+    @NonFinal
+    Timer terminalLockWait;
+
     @Autowired
     public void setSelf(@Lazy TerminalService self) {
         this.self = self;
     }
 
+    @PostConstruct
+    private void postConstruct() {
+        terminalLocks = Striped.lock(lockStripes);
+        terminalLockContended = meterRegistry.counter("terminal.lock.contended");
+        terminalLockWait = Timer.builder("terminal.lock.wait")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
     @Transactional(readOnly = true)
     @Override
     public long countTerminals(Specification<Terminal> specification) {
@@ -104,6 +146,12 @@ public class TerminalServiceImpl implements TerminalService {
         return terminalRepository.findAll(specification);
     }
 
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    @Override
+    public List<Terminal> findTerminalsAfter(Specification<Terminal> specification, UUID afterId, int limit) {
+        return terminalRepository.findAllByIdAfter(specification, afterId, limit);
+    }
+
     @Transactional(readOnly = true)
     @Override
     public Optional<Terminal> findTerminal(UUID id) {
@@ -116,36 +164,87 @@ public class TerminalServiceImpl implements TerminalService {
     public Optional<Terminal> findTerminal(@NonNull String hardwareId, @NonNull String applicationApiKey) {
         log.debug(".findTerminal(hardwareId: {}, applicationApiKey: {})", hardwareId, applicationApiKey);
 
-        return terminalRepository.findFirstByHardwareIdAndApplicationApiKeyOrderByUpdatedDateDesc(hardwareId, applicationApiKey);
+        return terminalRepository.findByHardwareIdAndApplicationApiKey(hardwareId, applicationApiKey);
     }
 
+    /**
+     * Запросы одного терминала (hardwareId, приложение) выполняются последовательно под блокировкой,
+     * запросы разных терминалов - параллельно. Каждый шаг выполняется в собственной транзакции,
+     * поэтому блокировка удерживается до фиксации изменений
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public Terminal saveOrUpdateTerminal(TerminalDTO dto) {
         String applicationApiKey = dto.getAppBundle();
         Application application = applicationService.findApplicationByApiKey(applicationApiKey)
                 .orElseThrow(() -> new NotFoundResourceException("Application", applicationApiKey));
 
-        return saveOrUpdateTerminal(terminalMapper.toEntity(dto).setApplication(application));
+        Lock lock = lockTerminal(dto.getHardwareId(), applicationApiKey);
+        try {
+            return saveOrUpdateTerminal(terminalMapper.toEntity(dto).setApplication(application));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Захватывает блокировку терминала (hardwareId, приложение)
+     */
+    private Lock lockTerminal(String hardwareId, String applicationApiKey) {
+        Lock result = terminalLocks.get(Arrays.asList(hardwareId, applicationApiKey));
+        if (!result.tryLock()) {
+            terminalLockContended.increment();
+
+            long started = System.nanoTime();
+            result.lock();
+            terminalLockWait.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        }
+
+        return result;
     }
 
     @Async
     @Override
     public CompletableFuture<Terminal> saveOrUpdateTerminalAsync(TerminalDTO dto) {
-        return CompletableFuture.completedFuture(saveOrUpdateTerminal(dto));
+        return CompletableFuture.completedFuture(self.saveOrUpdateTerminal(dto));
     }
 
+    /**
+     * Терминал, найденный в кэше, обновляется в памяти с отложенной записью. Иначе терминал создается
+     * либо обновляется в базе одним запросом, что исключает создание дубликатов при одновременной регистрации.
+     * Перед этим записываются изменения терминала, ожидающие отложенной записи (терминал мог быть вытеснен
+     * из кэша до сброса буфера), иначе более поздний сброс буфера перезаписал бы новые значения старыми
+     */
     private Terminal saveOrUpdateTerminal(Terminal data) {
-        return self.findTerminal(data.getHardwareId(), data.getApplication().getApiKey())
-                .map((Terminal found) -> self.updateTerminal(found, data))
-                .orElseGet(() -> self.saveTerminal(data));
+        Cache cache = cacheManager.getCache(CACHE_NAME_TERMINAL);
+        Terminal cached = cache == null ?
+                null :
+                cache.get(Arrays.asList(data.getHardwareId(), data.getApplication().getApiKey()), Terminal.class);
+        if (cached != null) {
+            return self.updateTerminal(cached, data);
+        }
+
+        terminalRepository.findIdByHardwareIdAndApplicationApiKey(data.getHardwareId(), data.getApplication().getApiKey())
+                .ifPresent(terminalChangeBufferService::flush);
+
+        Terminal result = self.upsertTerminal(data);
+
+        Boolean test = data.getTest();
+        if (test != null && !test.equals(result.getTest())) {
+            result = self.updateTerminal(result, Terminal.builder()
+                    .test(test)
+                    .build());
+        }
+
+        return result;
     }
 
     @CachePut(key = "{#data.hardwareId, #data.application.apiKey}")
     @Override
-    public Terminal saveTerminal(Terminal data) {
-        log.debug(".saveTerminal()");
+    public Terminal upsertTerminal(Terminal data) {
+        log.debug(".upsertTerminal()");
 
-        return terminalRepository.save(data);
+        return terminalRepository.upsert(data.setProps(normalizeProps(data.getProps())));
     }
 
     @Override
@@ -154,15 +253,23 @@ public class TerminalServiceImpl implements TerminalService {
                 .map((Terminal found) -> self.updateTerminal(found, data));
     }
 
+    /**
+     * Изменения применяются к копии терминала, которая затем заменяет терминал в кэше: терминал из кэша
+     * могут одновременно читать другие потоки. Признак тестового терминала записывается в базу сразу,
+     * чтобы проверка количества тестовых терминалов учитывала предыдущие изменения
+     */
     @CachePut(key = "{#found.hardwareId, #found.application.apiKey}")
     @Override
     public Terminal updateTerminal(Terminal found, Terminal data) {
         log.debug(".updateTerminal(id: {})", found.getId());
 
+        Terminal result = found.copy();
+
         boolean dirty = false;
+        TerminalChangeBuffer.Changes changes = new TerminalChangeBuffer.Changes();
 
         Boolean test = data.getTest();
-        if (test != null && !test.equals(found.getTest())) {
+        if (test != null && !test.equals(result.getTest())) {
             if (Boolean.TRUE.equals(test)) { // Updating otherwise not test terminal to be the one
                 Long testTerminalsCount = terminalRepository.countByTest(true);
                 if (testTerminalsMaxCount <= testTerminalsCount) {
@@ -173,111 +280,147 @@ public class TerminalServiceImpl implements TerminalService {
                 }
             }
 
-            log.debug(".test: {} -> {}", found.getTest(), test);
-            found.setTest(test);
-
-            dirty = true;
+            log.debug(".test: {} -> {}", result.getTest(), test);
+            result.setTest(test);
+            terminalRepository.updateTestById(result.getId(), test);
         }
 
         TerminalPlatform platform = data.getPlatform();
-        if (platform != null && !platform.equals(found.getPlatform())) {
-            log.debug(".platform: {} -> {}", found.getPlatform(), platform);
-            found.setPlatform(platform);
+        if (platform != null && !platform.equals(result.getPlatform())) {
+            log.debug(".platform: {} -> {}", result.getPlatform(), platform);
+            result.setPlatform(platform);
+            changes.setPlatform(platform);
 
             dirty = true;
         }
 
         String vendor = data.getVendor();
-        if (vendor != null && !vendor.equals(found.getVendor())) {
-            log.debug(".vendor: {} -> {}", found.getVendor(), vendor);
-            found.setVendor(vendor);
+        if (vendor != null && !vendor.equals(result.getVendor())) {
+            log.debug(".vendor: {} -> {}", result.getVendor(), vendor);
+            result.setVendor(vendor);
+            changes.setVendor(vendor);
 
             dirty = true;
         }
 
         String model = data.getModel();
-        if (model != null && !model.equals(found.getModel())) {
-            log.debug(".model: {} -> {}", found.getModel(), model);
-            found.setModel(model);
+        if (model != null && !model.equals(result.getModel())) {
+            log.debug(".model: {} -> {}", result.getModel(), model);
+            result.setModel(model);
+            changes.setModel(model);
 
             dirty = true;
         }
 
         String osVersion = data.getOsVersion();
-        if (osVersion != null && !osVersion.equals(found.getOsVersion())) {
-            log.debug(".osVersion: {} -> {}", found.getOsVersion(), osVersion);
-            found.setOsVersion(osVersion);
+        if (osVersion != null && !osVersion.equals(result.getOsVersion())) {
+            log.debug(".osVersion: {} -> {}", result.getOsVersion(), osVersion);
+            result.setOsVersion(osVersion);
+            changes.setOsVersion(osVersion);
 
             dirty = true;
         }
 
         String appVersion = data.getAppVersion();
-        if (appVersion != null && !appVersion.equals(found.getAppVersion())) {
-            log.debug(".appVersion: {} -> {}", found.getAppVersion(), appVersion);
-            found.setAppVersion(appVersion);
+        if (appVersion != null && !appVersion.equals(result.getAppVersion())) {
+            log.debug(".appVersion: {} -> {}", result.getAppVersion(), appVersion);
+            result.setAppVersion(appVersion);
+            changes.setAppVersion(appVersion);
 
             dirty = true;
         }
 
         String msisdn = data.getMsisdn();
-        if (msisdn != null && !msisdn.equals(found.getMsisdn())) {
-            log.debug(".msisdn: {} -> {}", found.getMsisdn(), msisdn);
-            found.setMsisdn(msisdn);
+        if (msisdn != null && !msisdn.equals(result.getMsisdn())) {
+            log.debug(".msisdn: {} -> {}", result.getMsisdn(), msisdn);
+            result.setMsisdn(msisdn);
+            changes.setMsisdn(msisdn);
 
             dirty = true;
         }
 
         String pushId = data.getPushId();
-        if (pushId != null && !pushId.equals(found.getPushId())) {
-            log.debug(".pushId: {} -> {}", found.getPushId(), pushId);
-            found.setPushId(pushId);
+        if (pushId != null && !pushId.equals(result.getPushId())) {
+            log.debug(".pushId: {} -> {}", result.getPushId(), pushId);
+            result.setPushId(pushId);
+            changes.setPushId(pushId);
 
             dirty = true;
         }
 
         String ip = data.getIp();
-        if (ip != null && !ip.equals(found.getIp())) {
-            log.debug(".ip: {} -> {}", found.getIp(), ip);
-            found.setIp(ip);
+        if (ip != null && !ip.equals(result.getIp())) {
+            log.debug(".ip: {} -> {}", result.getIp(), ip);
+            result.setIp(ip);
+            changes.setIp(ip);
 
             dirty = true;
         }
 
-        Map<String, Object> props = data.getProps();
-        if (props != null && !props.isEmpty()) {
-            for (Map.Entry<String, Object> entry : props.entrySet()) {
-                String key = entry.getKey();
-                if (key == null || key.trim().isEmpty()) {
-                    continue;
-                }
+        for (Map.Entry<String, Object> entry : normalizeProps(data.getProps()).entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (!Objects.equals(value, result.getProp(key))) {
+                log.debug(".props.{}: {} -> {}", key, result.getProp(key), value);
+                result.setProp(key, value);
+                changes.setProp(key, value);
+
+                dirty = true;
+            }
+        }
+
+        if (dirty) {
+            terminalChangeBufferService.enqueueTerminalChanges(result.getId(), changes);
+        }
+
+        return result;
+    }
 
-                Object value = entry.getValue();
-                if (value != null && !Objects.equals(value, found.getProp(key))) {
-                    if (Terminal.PROP_KEY_BIRTH_DATE.equals(key)) {
-                        if (String.valueOf(value).matches("\\d+")) {
-                            value = Integer.valueOf(String.valueOf(value));
-                        } else {
-                            log.debug(".props.{}: {} -> {} // Ignored. Reason: Invalid format",
-                                    Terminal.PROP_KEY_BIRTH_DATE,
-                                    found.getProp(key),
-                                    value);
-
-                            continue;
-                        }
-                    }
-
-                    log.debug(".props.{}: {} -> {}", key, found.getProp(key), value);
-                    found.setProp(key, value);
-
-                    dirty = true;
+    /**
+     * Отбрасывает свойства с пустыми ключами и значениями, приводит дату рождения к числу
+     * (дата рождения в ином формате отбрасывается)
+     */
+    private static Map<String, Object> normalizeProps(Map<String, Object> props) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        if (props == null) {
+            return result;
+        }
+
+        for (Map.Entry<String, Object> entry : props.entrySet()) {
+            String key = entry.getKey();
+            if (key == null || key.trim().isEmpty()) {
+                continue;
+            }
+
+            Object value = entry.getValue();
+            if (value == null) {
+                continue;
+            }
+
+            if (Terminal.PROP_KEY_BIRTH_DATE.equals(key)) {
+                if (String.valueOf(value).matches("\\d+")) {
+                    value = Integer.valueOf(String.valueOf(value));
+                } else {
+                    log.debug(".props.{}: {} // Ignored. Reason: Invalid format",
+                            Terminal.PROP_KEY_BIRTH_DATE,
+                            value);
+
+                    continue;
                 }
             }
+
+            result.put(key, value);
         }
 
-        return dirty ? terminalRepository.save(found) : found;
+        return result;
     }
 
-    @CachePut(key = "{#found.hardwareId, #found.application.apiKey}")
+    /**
+     * Город определяется по IP вне блокировки терминала. Затем под блокировкой терминала город записывается
+     * отдельным запросом, а в кэше заменяется копия актуального терминала из кэша, поэтому одновременные
+     * изменения других атрибутов (pushId, props) не теряются
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     @Override
     public Terminal updateTerminalCityByIp(Terminal found, String ip) {
         log.debug(".updateTerminalCityByIp(id: {}, ip: {})", found.getId(), ip);
@@ -300,15 +443,34 @@ public class TerminalServiceImpl implements TerminalService {
 
         String city = dadataGateway.findCityByIp(ip)
                 .orElse(null);
-        if (city != null && !city.equals(found.getCity())) {
-            log.debug(".city: {} -> {}", found.getCity(), city);
-            found.setCity(city);
-
-            log.debug(".lastLocationUpdate: {} -> {}", found.getLastLocationUpdate(), now);
-            found.setLastLocationUpdate(now);
+        if (city == null || city.equals(found.getCity())) {
+            return found;
         }
 
-        return terminalRepository.save(found);
+        String applicationApiKey = found.getApplication().getApiKey();
+        List<String> key = Arrays.asList(found.getHardwareId(), applicationApiKey);
+
+        Lock lock = lockTerminal(found.getHardwareId(), applicationApiKey);
+        try {
+            Cache cache = cacheManager.getCache(CACHE_NAME_TERMINAL);
+            Terminal cached = cache == null ? null : cache.get(key, Terminal.class);
+            Terminal result = (cached != null ? cached : found).copy();
+
+            log.debug(".city: {} -> {}", result.getCity(), city);
+            result.setCity(city);
+
+            log.debug(".lastLocationUpdate: {} -> {}", result.getLastLocationUpdate(), now);
+            result.setLastLocationUpdate(now);
+
+            terminalRepository.updateCityById(result.getId(), city, now);
+            if (cached != null) {
+                cache.put(key, result);
+            }
+
+            return result;
+        } finally {
+            lock.unlock();
+        }
     }
 
     @Override
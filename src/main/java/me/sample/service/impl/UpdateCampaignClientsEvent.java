@@ -0,0 +1,25 @@
+package me.sample.service.impl;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.experimental.FieldDefaults;
+
+import java.util.Collection;
+import java.util.UUID;
+
+@FieldDefaults(level = AccessLevel.PRIVATE)
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@Getter
+@Setter
+public class UpdateCampaignClientsEvent {
+
+    UUID campaignId;
+
+    Collection<String> clientIds;
+}
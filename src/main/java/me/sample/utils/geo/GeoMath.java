@@ -6,16 +6,22 @@ public class GeoMath {
 
 
     public static double getDistance(double[] p1, double[] p2) {
-        if (p1[0] == p2[0] && p1[1] == p2[1]) {
+        return getDistance(p1[0], p1[1], p2[0], p2[1]);
+    }
+
+    /**
+     * Угловое расстояние (в радианах) между точками, заданными долготой и широтой в радианах
+     */
+    public static double getDistance(double lon1, double lat1, double lon2, double lat2) {
+        if (lon1 == lon2 && lat1 == lat2) {
             return 0.0D;
         } else {
-            double hsinX = Math.sin((p1[0] - p2[0]) * 0.5D);
-            double hsinY = Math.sin((p1[1] - p2[1]) * 0.5D);
-            double a = hsinY * hsinY + Math.cos(p1[1]) * Math.cos(p2[1]) * hsinX * hsinX;
+            double hsinX = Math.sin((lon1 - lon2) * 0.5D);
+            double hsinY = Math.sin((lat1 - lat2) * 0.5D);
+            double a = hsinY * hsinY + Math.cos(lat1) * Math.cos(lat2) * hsinX * hsinX;
             return 2.0D * Math.asin(Math.min(1.0D, Math.sqrt(a)));
         }
     }
 
 
 }
-
@@ -13,4 +13,18 @@ public class GeoUtils {
     public static double getDistance(double[] pointXArrayRad, double[] pointYArrayRad) {
         return Converter.fromRadToKm(GeoMath.getDistance(pointXArrayRad, pointYArrayRad));
     }
+
+    /**
+     * calculate distance between two points in meters
+     * @param lat1 latitude of the first point in degrees
+     * @param lon1 longitude of the first point in degrees
+     * @param lat2 latitude of the second point in degrees
+     * @param lon2 longitude of the second point in degrees
+     * @return distance in meters
+     */
+    public static double getDistanceInMeters(double lat1, double lon1, double lat2, double lon2) {
+        return Converter.fromRadToKm(GeoMath.getDistance(
+                Converter.toRad(lon1), Converter.toRad(lat1),
+                Converter.toRad(lon2), Converter.toRad(lat2))) * 1000;
+    }
 }
@@ -0,0 +1,29 @@
+--liquibase formatted sql
+
+
+--changeset sample:0000000000043-1
+CREATE TABLE IF NOT EXISTS terminal_position
+(
+    terminal_id UUID PRIMARY KEY REFERENCES terminal (id) ON DELETE CASCADE,
+    lat         DOUBLE PRECISION NOT NULL,
+    lon         DOUBLE PRECISION NOT NULL,
+    udat        TIMESTAMP        NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS terminal_position_location_idx ON terminal_position USING gist (ll_to_earth(lat, lon));
+CREATE INDEX IF NOT EXISTS terminal_position_udat_idx ON terminal_position (udat);
+
+
+--changeset sample:0000000000043-2
+INSERT INTO terminal_position (terminal_id, lat, lon, udat)
+SELECT DISTINCT ON (geo_pos_info.terminal_id) geo_pos_info.terminal_id,
+                                              geo_pos_info.lat,
+                                              geo_pos_info.lon,
+                                              geo_pos_info.cdat
+FROM geo_pos_info
+WHERE geo_pos_info.terminal_id IS NOT NULL
+  AND geo_pos_info.lat IS NOT NULL
+  AND geo_pos_info.lon IS NOT NULL
+  AND geo_pos_info.cdat IS NOT NULL
+ORDER BY geo_pos_info.terminal_id, geo_pos_info.cdat DESC
+ON CONFLICT (terminal_id) DO NOTHING;
@@ -0,0 +1,9 @@
+--liquibase formatted sql
+
+
+--changeset sample:0000000000044-1
+ALTER TABLE notification
+    ADD COLUMN IF NOT EXISTS available_at TIMESTAMP,
+    ADD COLUMN IF NOT EXISTS attempts     INT NOT NULL DEFAULT 0;
+
+CREATE INDEX IF NOT EXISTS notification_available_at_idx ON notification (available_at) WHERE available_at IS NOT NULL;
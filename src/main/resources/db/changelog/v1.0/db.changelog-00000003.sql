@@ -0,0 +1,48 @@
+--liquibase formatted sql
+
+
+--changeset sample:0000000000045-1
+CREATE TEMPORARY TABLE terminal_duplicate ON COMMIT DROP AS
+SELECT id,
+       first_value(id) OVER (PARTITION BY hardware_id, application_id
+                             ORDER BY udat DESC NULLS LAST, cdat DESC NULLS LAST, id) AS keeper_id
+FROM terminal
+WHERE hardware_id IS NOT NULL
+  AND application_id IS NOT NULL;
+
+DELETE FROM terminal_duplicate WHERE id = keeper_id;
+
+UPDATE notification SET terminal_id = terminal_duplicate.keeper_id
+FROM terminal_duplicate
+WHERE notification.terminal_id = terminal_duplicate.id;
+
+UPDATE geo_pos_info SET terminal_id = terminal_duplicate.keeper_id
+FROM terminal_duplicate
+WHERE geo_pos_info.terminal_id = terminal_duplicate.id;
+
+UPDATE geo_cluster SET terminal_id = terminal_duplicate.keeper_id
+FROM terminal_duplicate
+WHERE geo_cluster.terminal_id = terminal_duplicate.id;
+
+UPDATE request_log SET terminal_id = terminal_duplicate.keeper_id
+FROM terminal_duplicate
+WHERE request_log.terminal_id = terminal_duplicate.id;
+
+INSERT INTO terminal_position (terminal_id, lat, lon, udat)
+SELECT DISTINCT ON (terminal_duplicate.keeper_id) terminal_duplicate.keeper_id,
+                                                  terminal_position.lat,
+                                                  terminal_position.lon,
+                                                  terminal_position.udat
+FROM terminal_position
+         INNER JOIN terminal_duplicate ON terminal_duplicate.id = terminal_position.terminal_id
+ORDER BY terminal_duplicate.keeper_id, terminal_position.udat DESC
+ON CONFLICT (terminal_id) DO UPDATE
+    SET lat  = excluded.lat,
+        lon  = excluded.lon,
+        udat = excluded.udat
+    WHERE terminal_position.udat <= excluded.udat;
+
+DELETE FROM terminal WHERE id IN (SELECT id FROM terminal_duplicate);
+
+ALTER TABLE terminal
+    ADD CONSTRAINT terminal_hardware_id_application_id_key UNIQUE (hardware_id, application_id);
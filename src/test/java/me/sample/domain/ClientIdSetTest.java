@@ -0,0 +1,44 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class ClientIdSetTest {
+
+    @Test
+    public void shouldContainNumericClientIds() throws Exception {
+        ClientIdSet clientIds = ClientIdSet.of(Arrays.asList("42", "7", "42", "100500"));
+
+        assertThat(clientIds.size(), is(3));
+        assertThat(clientIds.contains("42"), is(true));
+        assertThat(clientIds.contains("7"), is(true));
+        assertThat(clientIds.contains("100500"), is(true));
+
+        assertThat(clientIds.contains("43"), is(false));
+        assertThat(clientIds.contains("042"), is(false));
+        assertThat(clientIds.contains(null), is(false));
+    }
+
+    @Test
+    public void shouldContainClientIdsNotRepresentableAsNumbers() throws Exception {
+        ClientIdSet clientIds = ClientIdSet.of(Arrays.asList("0042", "12345678901234567890"));
+
+        assertThat(clientIds.size(), is(2));
+        assertThat(clientIds.contains("0042"), is(true));
+        assertThat(clientIds.contains("42"), is(false));
+        assertThat(clientIds.contains("12345678901234567890"), is(true));
+    }
+
+    @Test
+    public void shouldBeEmptyForNoClientIds() throws Exception {
+        ClientIdSet clientIds = ClientIdSet.of(Collections.emptyList());
+
+        assertThat(clientIds.isEmpty(), is(true));
+        assertThat(clientIds.contains("42"), is(false));
+    }
+}
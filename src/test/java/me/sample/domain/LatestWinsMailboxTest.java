@@ -0,0 +1,43 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class LatestWinsMailboxTest {
+
+    @Test
+    public void shouldHandleValueInCallingThreadWhenIdle() throws Exception {
+        LatestWinsMailbox<Integer> mailbox = new LatestWinsMailbox<>();
+        List<Integer> handled = new ArrayList<>();
+
+        mailbox.offer(1, handled::add);
+        mailbox.offer(2, handled::add);
+
+        assertThat(handled, contains(1, 2));
+        assertThat(mailbox.isIdle(), is(true));
+    }
+
+    @Test
+    public void shouldHandleOnlyLatestValueOfferedDuringHandling() throws Exception {
+        LatestWinsMailbox<Integer> mailbox = new LatestWinsMailbox<>();
+        List<Integer> handled = new ArrayList<>();
+
+        mailbox.offer(1, (Integer value) -> {
+            handled.add(value);
+            if (value == 1) {
+                mailbox.offer(2, handled::add);
+                mailbox.offer(3, handled::add);
+                mailbox.offer(4, handled::add);
+            }
+        });
+
+        assertThat(handled, contains(1, 4));
+        assertThat(mailbox.isIdle(), is(true));
+    }
+}
@@ -0,0 +1,70 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class NotificationStateBufferTest {
+
+    private static final LocalDateTime AT = LocalDateTime.of(2019, 7, 1, 12, 0);
+
+    @Test
+    public void shouldKeepHighestStatePerNotification() throws Exception {
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        NotificationStateBuffer buffer = new NotificationStateBuffer(false);
+        buffer.offer(first, NotificationState.ACCEPTED_BY_SERVER, null, AT);
+        buffer.offer(first, NotificationState.ACKNOWLEDGED_BY_CLIENT, null, AT);
+        buffer.offer(first, NotificationState.RECEIVED_BY_CLIENT, null, AT);
+        assertThat(buffer.offer(second, NotificationState.ACCEPTED_BY_SERVER, null, AT), is(2));
+
+        Map<NotificationState, List<UUID>> drained = buffer.drainStates();
+
+        assertThat(drained.size(), is(2));
+        assertThat(drained.get(NotificationState.ACKNOWLEDGED_BY_CLIENT), is(Collections.singletonList(first)));
+        assertThat(drained.get(NotificationState.ACCEPTED_BY_SERVER), is(Collections.singletonList(second)));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldLogAllTransitionsWhenEnabled() throws Exception {
+        UUID id = UUID.randomUUID();
+
+        NotificationStateBuffer buffer = new NotificationStateBuffer(true);
+        buffer.offer(id, NotificationState.ACCEPTED_BY_SERVER, null, AT);
+        buffer.offer(id, NotificationState.RECEIVED_BY_CLIENT, null, AT);
+        buffer.offer(id, NotificationState.ACKNOWLEDGED_BY_CLIENT, null, AT);
+
+        assertThat(buffer.drainStates().size(), is(1));
+        assertThat(buffer.drainTransitions(2).size(), is(2));
+        assertThat(buffer.drainTransitions(2).get(0).getState(), is(NotificationState.ACKNOWLEDGED_BY_CLIENT));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldNotLogTransitionsWhenDisabled() throws Exception {
+        NotificationStateBuffer buffer = new NotificationStateBuffer(false);
+        buffer.offer(UUID.randomUUID(), NotificationState.FAILED, "reason", AT);
+
+        assertThat(buffer.drainTransitions(10).isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRestoreWithoutLoweringState() throws Exception {
+        UUID id = UUID.randomUUID();
+
+        NotificationStateBuffer buffer = new NotificationStateBuffer(false);
+        buffer.offer(id, NotificationState.RECEIVED_BY_CLIENT, null, AT);
+        buffer.restore(NotificationState.ACCEPTED_BY_SERVER, Collections.singletonList(id));
+
+        assertThat(buffer.drainStates().get(NotificationState.RECEIVED_BY_CLIENT), is(Collections.singletonList(id)));
+    }
+}
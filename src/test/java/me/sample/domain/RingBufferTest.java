@@ -0,0 +1,96 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class RingBufferTest {
+
+    @Test
+    public void shouldRoundCapacityUpToPowerOfTwo() throws Exception {
+        assertThat(new RingBuffer<String>(1).capacity(), is(2));
+        assertThat(new RingBuffer<String>(5).capacity(), is(8));
+        assertThat(new RingBuffer<String>(8).capacity(), is(8));
+    }
+
+    @Test
+    public void shouldPollInOfferOrder() throws Exception {
+        RingBuffer<String> buffer = new RingBuffer<>(4);
+        buffer.offer("a");
+        buffer.offer("b");
+
+        assertThat(buffer.size(), is(2));
+        assertThat(buffer.poll(), is("a"));
+        assertThat(buffer.poll(), is("b"));
+        assertThat(buffer.poll() == null, is(true));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRejectOfferWhenFull() throws Exception {
+        RingBuffer<String> buffer = new RingBuffer<>(2);
+
+        assertThat(buffer.offer("a"), is(true));
+        assertThat(buffer.offer("b"), is(true));
+        assertThat(buffer.offer("c"), is(false));
+
+        buffer.poll();
+
+        assertThat(buffer.offer("c"), is(true));
+    }
+
+    @Test
+    public void shouldDrainUpToLimitAcrossWrapAround() throws Exception {
+        RingBuffer<String> buffer = new RingBuffer<>(4);
+        buffer.offer("a");
+        buffer.offer("b");
+        buffer.offer("c");
+        buffer.poll();
+        buffer.poll();
+        buffer.offer("d");
+        buffer.offer("e");
+        buffer.offer("f");
+
+        List<String> drained = new ArrayList<>();
+
+        assertThat(buffer.drainTo(drained, 3), is(3));
+        assertThat(drained, is(Arrays.asList("c", "d", "e")));
+        assertThat(buffer.size(), is(1));
+    }
+
+    @Test
+    public void shouldNotLoseElementsOfConcurrentProducers() throws Exception {
+        RingBuffer<Integer> buffer = new RingBuffer<>(1 << 16);
+        int producerCount = 4;
+        int perProducer = 10000;
+
+        List<Thread> producers = new ArrayList<>();
+        for (int producer = 0; producer < producerCount; producer++) {
+            Thread thread = new Thread(() -> {
+                for (int index = 0; index < perProducer; index++) {
+                    buffer.offer(index);
+                }
+            });
+            producers.add(thread);
+            thread.start();
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+
+        List<Integer> drained = new ArrayList<>();
+
+        assertThat(buffer.drainTo(drained, Integer.MAX_VALUE), is(producerCount * perProducer));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveCapacity() throws Exception {
+        new RingBuffer<String>(0);
+    }
+}
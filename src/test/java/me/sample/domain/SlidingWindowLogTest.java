@@ -0,0 +1,46 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class SlidingWindowLogTest {
+
+    @Test
+    public void shouldCountEventsWithinWindow() throws Exception {
+        SlidingWindowLog log = new SlidingWindowLog(4);
+        log.record(10, 4);
+        log.record(20, 4);
+        log.record(30, 4);
+
+        assertThat(log.count(0), is(3));
+        assertThat(log.count(10), is(2));
+        assertThat(log.count(30), is(0));
+    }
+
+    @Test
+    public void shouldEvictOldestEventsWhenFull() throws Exception {
+        SlidingWindowLog log = new SlidingWindowLog(2);
+        log.record(10, 2);
+        log.record(20, 2);
+        log.record(30, 2);
+
+        assertThat(log.count(0), is(2));
+        assertThat(log.count(15), is(2));
+    }
+
+    @Test
+    public void shouldGrowPreservingEvents() throws Exception {
+        SlidingWindowLog log = new SlidingWindowLog(2);
+        log.record(10, 2);
+        log.record(20, 2);
+        log.record(30, 2);
+        log.record(40, 4);
+        log.record(50, 4);
+
+        assertThat(log.count(0), is(4));
+        assertThat(log.isExpired(50), is(true));
+        assertThat(log.isExpired(49), is(false));
+    }
+}
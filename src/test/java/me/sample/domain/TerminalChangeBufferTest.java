@@ -0,0 +1,78 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TerminalChangeBufferTest {
+
+    @Test
+    public void shouldMergeChangesOfSameTerminal() throws Exception {
+        TerminalChangeBuffer buffer = new TerminalChangeBuffer();
+        UUID id = UUID.randomUUID();
+        LocalDateTime at = LocalDateTime.now();
+
+        buffer.offer(id, new TerminalChangeBuffer.Changes()
+                .setIp("127.0.0.1")
+                .setPushId("token")
+                .setProp("a", 1)
+                .setUpdatedDate(at));
+        int size = buffer.offer(id, new TerminalChangeBuffer.Changes()
+                .setIp("127.0.0.2")
+                .setProp("a", 2)
+                .setProp("b", "x")
+                .setUpdatedDate(at.plusSeconds(1)));
+
+        assertThat(size, is(1));
+
+        TerminalChangeBuffer.Changes result = buffer.drain().get(id);
+
+        assertThat(result.getIp(), is("127.0.0.2"));
+        assertThat(result.getPushId(), is("token"));
+        assertThat(result.getProps().get("a"), is(2));
+        assertThat(result.getProps().get("b"), is("x"));
+        assertThat(result.getUpdatedDate(), is(at.plusSeconds(1)));
+        assertThat(buffer.isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldRestoreUnderNewerChanges() throws Exception {
+        TerminalChangeBuffer buffer = new TerminalChangeBuffer();
+        UUID id = UUID.randomUUID();
+
+        buffer.offer(id, new TerminalChangeBuffer.Changes()
+                .setIp("127.0.0.1")
+                .setVendor("vendor"));
+        Map<UUID, TerminalChangeBuffer.Changes> drained = buffer.drain();
+
+        buffer.offer(id, new TerminalChangeBuffer.Changes()
+                .setIp("127.0.0.2"));
+        buffer.restore(drained);
+
+        TerminalChangeBuffer.Changes result = buffer.drain().get(id);
+
+        assertThat(result.getIp(), is("127.0.0.2"));
+        assertThat(result.getVendor(), is("vendor"));
+    }
+
+    @Test
+    public void shouldDrainChangesOfOneTerminal() throws Exception {
+        TerminalChangeBuffer buffer = new TerminalChangeBuffer();
+        UUID id = UUID.randomUUID();
+        UUID otherId = UUID.randomUUID();
+
+        buffer.offer(id, new TerminalChangeBuffer.Changes()
+                .setPushId("token"));
+        buffer.offer(otherId, new TerminalChangeBuffer.Changes()
+                .setPushId("other"));
+
+        assertThat(buffer.drain(id).getPushId(), is("token"));
+        assertThat(buffer.drain(id) == null, is(true));
+        assertThat(buffer.size(), is(1));
+    }
+}
@@ -123,4 +123,46 @@ public class TerminalTest {
             System.out.printf("Thrown: %s%n", expected);
         }
     }
+
+    @Test
+    public void shouldMatchTerminalCityIgnoringCase() throws Exception {
+        assertThat(Terminal.builder()
+                        .city("г. Москва")
+                        .build()
+                        .matches(Stream.of(
+                                PropFilter.builder()
+                                        .sign(PropFilter.Sign.EQUAL)
+                                        .name("city")
+                                        .value("москва")
+                                        .build())
+                                .collect(Collectors.toList())),
+                is(true));
+    }
+
+    @Test
+    public void shouldNotMatchTerminalPropsOfDifferentType() throws Exception {
+        assertThat(Terminal.builder()
+                        .build()
+                        .setProp("n", "10")
+                        .matches(Stream.of(
+                                PropFilter.builder()
+                                        .name("n")
+                                        .sign(PropFilter.Sign.EQUAL)
+                                        .value(10)
+                                        .build())
+                                .collect(Collectors.toList())),
+                is(false));
+
+        assertThat(Terminal.builder()
+                        .build()
+                        .setProp("s", true)
+                        .matches(Stream.of(
+                                PropFilter.builder()
+                                        .name("s")
+                                        .sign(PropFilter.Sign.EQUAL)
+                                        .value("true")
+                                        .build())
+                                .collect(Collectors.toList())),
+                is(false));
+    }
 }
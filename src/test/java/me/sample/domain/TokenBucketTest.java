@@ -0,0 +1,63 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    public void shouldGrantBurstImmediately() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 3, 0);
+
+        assertThat(bucket.reserve(0), is(0L));
+        assertThat(bucket.reserve(0), is(0L));
+        assertThat(bucket.reserve(0), is(0L));
+    }
+
+    @Test
+    public void shouldSpacePermitsBeyondBurstEvenly() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+
+        assertThat(bucket.reserve(0), is(0L));
+        assertThat(bucket.reserve(0), is(SECOND / 10));
+        assertThat(bucket.reserve(0), is(2 * SECOND / 10));
+    }
+
+    @Test
+    public void shouldRefillUpToBurst() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 2, 0);
+        bucket.reserve(0);
+        bucket.reserve(0);
+
+        assertThat(bucket.available(SECOND / 10), is(1D));
+        assertThat(bucket.available(10 * SECOND), is(2D));
+    }
+
+    @Test
+    public void shouldDelayReservationsAfterPriorityTake() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        bucket.take(0);
+        bucket.take(0);
+
+        assertThat(bucket.reserve(0), is(2 * SECOND / 10));
+    }
+
+    @Test
+    public void shouldApplyChangedRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(10, 1, 0);
+        bucket.reserve(0);
+        bucket.setRate(100, 0);
+
+        assertThat(bucket.getRate(), is(100D));
+        assertThat(bucket.reserve(0), is(SECOND / 100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveRate() throws Exception {
+        new TokenBucket(0, 1, 0);
+    }
+}
@@ -0,0 +1,67 @@
+package me.sample.domain;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class WeightedFairQueueTest {
+
+    @Test
+    public void shouldInterleaveKeysOfEqualWeight() throws Exception {
+        WeightedFairQueue<String, String> queue = new WeightedFairQueue<>();
+        for (int index = 0; index < 3; index++) {
+            queue.offer("big", 1, "big" + index);
+        }
+        queue.offer("small", 1, "small0");
+
+        List<String> polled = new ArrayList<>();
+        String element;
+        while ((element = queue.poll()) != null) {
+            polled.add(element);
+        }
+
+        assertThat(polled, is(Arrays.asList("big0", "small0", "big1", "big2")));
+        assertThat(queue.keyCount(), is(0));
+    }
+
+    @Test
+    public void shouldPollKeysInProportionToWeights() throws Exception {
+        WeightedFairQueue<String, String> queue = new WeightedFairQueue<>();
+        for (int index = 0; index < 30; index++) {
+            queue.offer("heavy", 2, "heavy");
+            queue.offer("light", 1, "light");
+        }
+
+        List<String> polled = new ArrayList<>();
+        for (int index = 0; index < 30; index++) {
+            polled.add(queue.poll());
+        }
+
+        assertThat(Collections.frequency(polled, "heavy"), is(20));
+        assertThat(Collections.frequency(polled, "light"), is(10));
+        assertThat(queue.size(), is(30));
+    }
+
+    @Test
+    public void shouldReturnNullWhenEmptyAfterTimeout() throws Exception {
+        WeightedFairQueue<String, String> queue = new WeightedFairQueue<>();
+
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS) == null, is(true));
+
+        queue.offer("key", 1, "a");
+
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectNonPositiveWeight() throws Exception {
+        new WeightedFairQueue<String, String>().offer("key", 0, "a");
+    }
+}
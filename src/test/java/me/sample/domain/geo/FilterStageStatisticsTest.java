@@ -0,0 +1,44 @@
+package me.sample.domain.geo;
+
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FilterStageStatisticsTest {
+
+    @Test
+    public void shouldNotRankStageWithInsufficientEvaluations() throws Exception {
+        FilterStageStatistics statistics = new FilterStageStatistics();
+        statistics.record(100, false);
+
+        assertThat(statistics.getRank(2), is(0.0));
+    }
+
+    @Test
+    public void shouldRankNeverRejectingStageLast() throws Exception {
+        FilterStageStatistics statistics = new FilterStageStatistics();
+        statistics.record(100, true);
+        statistics.record(100, true);
+
+        assertThat(statistics.getRank(1), is(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void shouldRankCheapSelectiveStageBeforeExpensiveOne() throws Exception {
+        FilterStageStatistics cheap = new FilterStageStatistics();
+        cheap.record(10, false);
+        cheap.record(10, true);
+
+        FilterStageStatistics expensive = new FilterStageStatistics();
+        expensive.record(1000, false);
+        expensive.record(1000, false);
+
+        assertThat(cheap.getRank(1), is(lessThan(expensive.getRank(1))));
+        assertThat(expensive.getRank(1), is(greaterThan(0.0)));
+        assertThat(cheap.getEvaluations(), is(2L));
+        assertThat(cheap.getRejections(), is(1L));
+    }
+}
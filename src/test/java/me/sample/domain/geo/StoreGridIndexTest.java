@@ -0,0 +1,81 @@
+package me.sample.domain.geo;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StoreGridIndexTest {
+
+    private static final double CELL_SIZE = 0.01;
+
+    @Test
+    public void shouldFindStoresWithinRadius() throws Exception {
+        StoreLocation near = location(55.7558, 37.6173, 1000L);
+        StoreLocation far = location(55.7558, 37.7173, 1000L);
+        StoreLocation farWithWideRadius = location(55.7558, 37.7173, 10000L);
+
+        StoreGridIndex index = StoreGridIndex.of(CELL_SIZE, Arrays.asList(near, far, farWithWideRadius));
+
+        assertThat(storeIds(index.findWithinRadius(55.7560, 37.6175)),
+                is(Arrays.asList(near.getStoreId(), farWithWideRadius.getStoreId())));
+    }
+
+    @Test
+    public void shouldFindStoresAcrossAntimeridian() throws Exception {
+        StoreLocation east = location(64.7, 179.999, 1000L);
+
+        StoreGridIndex index = StoreGridIndex.of(CELL_SIZE, Collections.singletonList(east));
+
+        assertThat(storeIds(index.findWithinRadius(64.7, -179.999)),
+                is(Collections.singletonList(east.getStoreId())));
+    }
+
+    @Test
+    public void shouldUpdateAndRemoveStores() throws Exception {
+        StoreLocation first = location(42.0, 42.0, 1000L);
+        StoreLocation second = location(42.0, 42.0, 1000L);
+
+        StoreGridIndex index = StoreGridIndex.of(CELL_SIZE, Arrays.asList(first, second));
+
+        StoreLocation moved = StoreLocation.builder()
+                .storeId(first.getStoreId())
+                .lat(43.0)
+                .lon(43.0)
+                .radius(1000L)
+                .build();
+
+        StoreGridIndex result = index.with(
+                Collections.singletonList(moved),
+                Collections.singletonList(second.getStoreId()));
+
+        assertThat(result.size(), is(1));
+        assertThat(storeIds(result.findWithinRadius(42.0, 42.0)), is(Collections.emptyList()));
+        assertThat(storeIds(result.findWithinRadius(43.0, 43.0)), is(Collections.singletonList(first.getStoreId())));
+
+        assertThat(index.size(), is(2));
+        assertThat(storeIds(index.findWithinRadius(42.0, 42.0)).size(), is(2));
+    }
+
+    private static StoreLocation location(double lat, double lon, long radius) {
+        return StoreLocation.builder()
+                .storeId(UUID.randomUUID())
+                .lat(lat)
+                .lon(lon)
+                .radius(radius)
+                .build();
+    }
+
+    private static List<UUID> storeIds(List<Map.Entry<StoreLocation, Double>> entries) {
+        return entries.stream()
+                .map((Map.Entry<StoreLocation, Double> entry) -> entry.getKey().getStoreId())
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,127 @@
+package me.sample.gateway.push;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void shouldRejectAcquireOverLimit() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 0.5, 2.0);
+
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS), is(false));
+        assertThat(limit.getInFlight(), is(2));
+
+        limit.release(RTT, false);
+
+        assertThat(limit.tryAcquire(0, TimeUnit.MILLISECONDS), is(true));
+    }
+
+    @Test
+    public void shouldGrowWhileLatencyIsFlat() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 10, 0.5, 2.0);
+
+        for (int window = 0; window < 20; window++) {
+            int current = limit.getLimit();
+            for (int index = 0; index < current; index++) {
+                limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            }
+            for (int index = 0; index < current; index++) {
+                limit.release(RTT, false);
+            }
+        }
+
+        assertThat(limit.getLimit(), is(10));
+    }
+
+    @Test
+    public void shouldNotGrowWhenUnderused() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 10, 0.5, 2.0);
+
+        for (int index = 0; index < 100; index++) {
+            limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            limit.release(RTT, false);
+        }
+
+        assertThat(limit.getLimit(), is(4));
+    }
+
+    @Test
+    public void shouldShrinkOnThrottlingOncePerWindow() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 10, 0.5, 2.0);
+
+        for (int index = 0; index < 8; index++) {
+            limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+        }
+        for (int index = 0; index < 8; index++) {
+            limit.release(RTT, true);
+        }
+
+        assertThat(limit.getLimit(), is(4));
+
+        for (int index = 0; index < 3; index++) {
+            limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            limit.release(RTT, true);
+        }
+
+        assertThat(limit.getLimit(), is(4));
+
+        limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+        limit.release(RTT, true);
+
+        assertThat(limit.getLimit(), is(2));
+    }
+
+    @Test
+    public void shouldShrinkOnRisingLatency() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(8, 1, 10, 0.5, 2.0);
+
+        for (int index = 0; index < 100; index++) {
+            limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            limit.release(RTT, false);
+        }
+        for (int index = 0; index < 20; index++) {
+            limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            limit.release(RTT * 10, false);
+        }
+
+        assertThat(limit.getLimit() < 8, is(true));
+    }
+
+    @Test
+    public void shouldNotAdaptOnUnsentRelease() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 10, 0.5, 2.0);
+
+        for (int window = 0; window < 20; window++) {
+            for (int index = 0; index < 4; index++) {
+                limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            }
+            for (int index = 0; index < 4; index++) {
+                limit.release();
+            }
+        }
+
+        assertThat(limit.getLimit(), is(4));
+        assertThat(limit.getInFlight(), is(0));
+    }
+
+    @Test
+    public void shouldNotShrinkBelowMinimum() throws Exception {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 2, 10, 0.5, 2.0);
+
+        for (int index = 0; index < 10; index++) {
+            limit.tryAcquire(0, TimeUnit.MILLISECONDS);
+            limit.release(RTT, true);
+        }
+
+        assertThat(limit.getLimit(), is(2));
+    }
+}
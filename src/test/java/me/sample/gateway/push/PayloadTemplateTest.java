@@ -0,0 +1,34 @@
+package me.sample.gateway.push;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class PayloadTemplateTest {
+
+    @Test
+    public void shouldSpliceNotificationId() throws Exception {
+        PayloadTemplate template = PayloadTemplate.compile((UUID id) -> "{\"title\":\"Sale\",\"id\":\"" + id + "\",\"x\":1}");
+
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+
+        assertThat(template.render(first), is("{\"title\":\"Sale\",\"id\":\"" + first + "\",\"x\":1}"));
+        assertThat(template.render(second), is("{\"title\":\"Sale\",\"id\":\"" + second + "\",\"x\":1}"));
+    }
+
+    @Test
+    public void shouldRenderConstantWhenNoSlot() throws Exception {
+        PayloadTemplate template = PayloadTemplate.compile((UUID id) -> "{\"title\":\"Sale\"}");
+
+        assertThat(template.render(UUID.randomUUID()), is("{\"title\":\"Sale\"}"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectRepeatedSlot() throws Exception {
+        PayloadTemplate.compile((UUID id) -> id + "," + id);
+    }
+}
@@ -0,0 +1,232 @@
+package me.sample.gateway.push;
+
+import com.eatthepath.pushy.apns.ApnsPushNotification;
+import com.eatthepath.pushy.apns.PushNotificationResponse;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import me.sample.domain.TerminalPlatform;
+import me.sample.gateway.push.apns.ApnsGateway;
+import me.sample.gateway.push.fcm.FcmGateway;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class PushRetrySchedulerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private PushRetryScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        meterRegistry = new SimpleMeterRegistry();
+
+        scheduler = new PushRetryScheduler(meterRegistry);
+        ReflectionTestUtils.setField(scheduler, "maxAttempts", 3);
+        ReflectionTestUtils.setField(scheduler, "initialBackoffMillis", 10L);
+        ReflectionTestUtils.setField(scheduler, "maxBackoffMillis", 40L);
+        ReflectionTestUtils.setField(scheduler, "multiplier", 2.0);
+        ReflectionTestUtils.setField(scheduler, "maxPending", 100L);
+        ReflectionTestUtils.setField(scheduler, "threadCount", 1);
+        ReflectionTestUtils.invokeMethod(scheduler, "postConstruct");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        ReflectionTestUtils.invokeMethod(scheduler, "preDestroy");
+    }
+
+    @Test
+    public void shouldKeepBackoffWithinFixedHalfAndCap() throws Exception {
+        for (int index = 0; index < 1000; index++) {
+            long first = scheduler.backoff(1);
+            assertThat(first, greaterThanOrEqualTo(5L));
+            assertThat(first, lessThanOrEqualTo(10L));
+
+            long second = scheduler.backoff(2);
+            assertThat(second, greaterThanOrEqualTo(10L));
+            assertThat(second, lessThanOrEqualTo(20L));
+
+            long capped = scheduler.backoff(10);
+            assertThat(capped, greaterThanOrEqualTo(20L));
+            assertThat(capped, lessThanOrEqualTo(40L));
+        }
+    }
+
+    @Test
+    public void shouldClassifyFcmFailures() throws Exception {
+        assertThat(FcmGateway.transientFailureReason("projects/test/messages/1", null), is(nullValue()));
+        assertThat(FcmGateway.transientFailureReason(null, new IOException()), is("IOException"));
+        assertThat(FcmGateway.transientFailureReason(null, new PushDispatchTimeoutException("timeout")),
+                is("PushDispatchTimeoutException"));
+        assertThat(FcmGateway.transientFailureReason(null, fcmException("server-unavailable")),
+                is("server-unavailable"));
+        assertThat(FcmGateway.transientFailureReason(null, fcmException("internal-error")),
+                is("internal-error"));
+        assertThat(FcmGateway.transientFailureReason(null, fcmException("registration-token-not-registered")),
+                is(nullValue()));
+        assertThat(FcmGateway.transientFailureReason(null, fcmException("invalid-argument")),
+                is(nullValue()));
+        assertThat(FcmGateway.transientFailureReason(null, new IllegalStateException()), is(nullValue()));
+    }
+
+    @Test
+    public void shouldClassifyApnsFailures() throws Exception {
+        assertThat(ApnsGateway.transientFailureReason(apnsResponse(true, null), null), is(nullValue()));
+        assertThat(ApnsGateway.transientFailureReason(null, new IOException()), is("IOException"));
+        assertThat(ApnsGateway.transientFailureReason(apnsResponse(false, "TooManyRequests"), null),
+                is("TooManyRequests"));
+        assertThat(ApnsGateway.transientFailureReason(apnsResponse(false, "ServiceUnavailable"), null),
+                is("ServiceUnavailable"));
+        assertThat(ApnsGateway.transientFailureReason(apnsResponse(false, "Unregistered"), null),
+                is(nullValue()));
+        assertThat(ApnsGateway.transientFailureReason(apnsResponse(false, "BadDeviceToken"), null),
+                is(nullValue()));
+    }
+
+    @Test
+    public void shouldRetryUntilSent() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.execute(TerminalPlatform.ANDROID, () -> {
+            CompletableFuture<String> sent = new CompletableFuture<>();
+            if (attempts.incrementAndGet() < 2) {
+                sent.completeExceptionally(new IOException());
+            } else {
+                sent.complete("sent");
+            }
+
+            return sent;
+        }, FcmGateway::transientFailureReason);
+
+        assertThat(result.get(10, TimeUnit.SECONDS), is("sent"));
+        assertThat(attempts.get(), is(2));
+        assertThat(count("push.retry.scheduled", TerminalPlatform.ANDROID, "IOException"), is(1D));
+        assertThat(count("push.retry.dead-lettered", TerminalPlatform.ANDROID, "IOException"), is(0D));
+    }
+
+    @Test
+    public void shouldNotRetryPermanentFailure() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        FirebaseMessagingException unregistered = fcmException("registration-token-not-registered");
+
+        CompletableFuture<String> result = scheduler.execute(TerminalPlatform.ANDROID, () -> {
+            attempts.incrementAndGet();
+            CompletableFuture<String> sent = new CompletableFuture<>();
+            sent.completeExceptionally(unregistered);
+
+            return sent;
+        }, FcmGateway::transientFailureReason);
+
+        assertFailedWith(result, FirebaseMessagingException.class);
+        assertThat(attempts.get(), is(1));
+        assertThat(meterRegistry.find("push.retry.scheduled").counter(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldDeadLetterAfterMaxAttempts() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.execute(TerminalPlatform.ANDROID, () -> {
+            attempts.incrementAndGet();
+            CompletableFuture<String> sent = new CompletableFuture<>();
+            sent.completeExceptionally(new IOException());
+
+            return sent;
+        }, FcmGateway::transientFailureReason);
+
+        assertFailedWith(result, IOException.class);
+        assertThat(attempts.get(), is(3));
+        assertThat(count("push.retry.scheduled", TerminalPlatform.ANDROID, "IOException"), is(2D));
+        assertThat(count("push.retry.dead-lettered", TerminalPlatform.ANDROID, "IOException"), is(1D));
+    }
+
+    @Test
+    public void shouldReturnLastResponseAfterMaxAttempts() throws Exception {
+        PushNotificationResponse<ApnsPushNotification> rejected = apnsResponse(false, "TooManyRequests");
+
+        CompletableFuture<PushNotificationResponse<ApnsPushNotification>> result = scheduler.execute(TerminalPlatform.IOS,
+                () -> CompletableFuture.completedFuture(rejected),
+                ApnsGateway::transientFailureReason);
+
+        assertThat(result.get(10, TimeUnit.SECONDS), is(rejected));
+        assertThat(count("push.retry.scheduled", TerminalPlatform.IOS, "TooManyRequests"), is(2D));
+        assertThat(count("push.retry.dead-lettered", TerminalPlatform.IOS, "TooManyRequests"), is(1D));
+    }
+
+    @Test
+    public void shouldDeadLetterWhenRetryIsRejected() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletableFuture<String> result = scheduler.execute(TerminalPlatform.ANDROID, () -> {
+            attempts.incrementAndGet();
+            CompletableFuture<String> sent = new CompletableFuture<>();
+            sent.completeExceptionally(new IOException());
+
+            return sent;
+        }, FcmGateway::transientFailureReason);
+
+        ((ExecutorService) ReflectionTestUtils.getField(scheduler, "executor")).shutdown();
+
+        assertFailedWith(result, IOException.class);
+        assertThat(attempts.get(), is(1));
+        assertThat(count("push.retry.dead-lettered", TerminalPlatform.ANDROID, "IOException"), is(1D));
+    }
+
+    private double count(String name, TerminalPlatform platform, String reason) {
+        Counter counter = meterRegistry.find(name)
+                .tag("platform", platform.name())
+                .tag("reason", reason)
+                .counter();
+
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static void assertFailedWith(CompletableFuture<?> result, Class<? extends Throwable> type) throws Exception {
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException exception) {
+            assertThat(exception.getCause(), instanceOf(type));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PushNotificationResponse<ApnsPushNotification> apnsResponse(boolean accepted, String rejectionReason) {
+        PushNotificationResponse<ApnsPushNotification> response = Mockito.mock(PushNotificationResponse.class);
+        Mockito.when(response.isAccepted()).thenReturn(accepted);
+        Mockito.when(response.getRejectionReason()).thenReturn(rejectionReason);
+
+        return response;
+    }
+
+    /**
+     * Создает ошибку FCM с заданным кодом (конструктор ошибки недоступен вне пакета SDK)
+     */
+    static FirebaseMessagingException fcmException(String errorCode) throws Exception {
+        Constructor<FirebaseMessagingException> constructor = FirebaseMessagingException.class
+                .getDeclaredConstructor(String.class, String.class, Throwable.class);
+        constructor.setAccessible(true);
+
+        return constructor.newInstance(errorCode, errorCode, null);
+    }
+}
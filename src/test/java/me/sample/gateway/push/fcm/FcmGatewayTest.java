@@ -0,0 +1,85 @@
+package me.sample.gateway.push.fcm;
+
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.client.http.HttpResponseException;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import me.sample.gateway.GatewayException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+public class FcmGatewayTest {
+
+    private static final String TOKEN_VIOLATION = "{\"error\": {" +
+            "\"code\": 400, " +
+            "\"message\": \"The registration token is not a valid FCM registration token\", " +
+            "\"status\": \"INVALID_ARGUMENT\", " +
+            "\"details\": [" +
+            "{\"@type\": \"type.googleapis.com/google.firebase.fcm.v1.FcmError\", \"errorCode\": \"INVALID_ARGUMENT\"}, " +
+            "{\"@type\": \"type.googleapis.com/google.rpc.BadRequest\", " +
+            "\"fieldViolations\": [{\"field\": \"message.token\", \"description\": \"Invalid registration token\"}]}]}}";
+
+    private static final String PAYLOAD_VIOLATION = "{\"error\": {" +
+            "\"code\": 400, " +
+            "\"message\": \"Invalid value at 'message.data' mentioning the registration token\", " +
+            "\"status\": \"INVALID_ARGUMENT\", " +
+            "\"details\": [" +
+            "{\"@type\": \"type.googleapis.com/google.rpc.BadRequest\", " +
+            "\"fieldViolations\": [{\"field\": \"message.data\", \"description\": \"Invalid value\"}]}]}}";
+
+    @Test
+    public void shouldTreatUnregisteredTokenAsInvalid() throws Exception {
+        assertThat(FcmGateway.isTokenInvalid(fcmException("registration-token-not-registered", null)), is(true));
+    }
+
+    @Test
+    public void shouldFindFirebaseErrorInCauses() throws Exception {
+        GatewayException exception = new GatewayException(fcmException("registration-token-not-registered", null));
+
+        assertThat(FcmGateway.isTokenInvalid(exception), is(true));
+    }
+
+    @Test
+    public void shouldTreatTokenViolationAsInvalid() throws Exception {
+        assertThat(FcmGateway.isTokenInvalid(fcmException("invalid-argument", badRequest(TOKEN_VIOLATION))), is(true));
+    }
+
+    @Test
+    public void shouldNotTreatPayloadViolationAsInvalid() throws Exception {
+        assertThat(FcmGateway.isTokenInvalid(fcmException("invalid-argument", badRequest(PAYLOAD_VIOLATION))), is(false));
+    }
+
+    @Test
+    public void shouldNotTreatInvalidArgumentWithoutDetailsAsInvalid() throws Exception {
+        assertThat(FcmGateway.isTokenInvalid(fcmException("invalid-argument", null)), is(false));
+        assertThat(FcmGateway.isTokenInvalid(fcmException("invalid-argument", badRequest("Bad Request"))), is(false));
+    }
+
+    @Test
+    public void shouldNotTreatOtherErrorsAsInvalid() throws Exception {
+        assertThat(FcmGateway.isTokenInvalid(fcmException("server-unavailable", badRequest(TOKEN_VIOLATION))), is(false));
+        assertThat(FcmGateway.isTokenInvalid(new IOException()), is(false));
+        assertThat(FcmGateway.isTokenInvalid(null), is(false));
+    }
+
+    private static HttpResponseException badRequest(String content) {
+        return new HttpResponseException.Builder(400, "Bad Request", new HttpHeaders())
+                .setContent(content)
+                .build();
+    }
+
+    /**
+     * Создает ошибку FCM с заданным кодом (конструктор ошибки недоступен вне пакета SDK)
+     */
+    private static FirebaseMessagingException fcmException(String errorCode, Throwable cause) throws Exception {
+        Constructor<FirebaseMessagingException> constructor = FirebaseMessagingException.class
+                .getDeclaredConstructor(String.class, String.class, Throwable.class);
+        constructor.setAccessible(true);
+
+        return constructor.newInstance(errorCode, errorCode, cause);
+    }
+}
@@ -0,0 +1,229 @@
+package me.sample.gateway.push.fcm;
+
+import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.Message;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import me.sample.gateway.GatewayException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Проверяет пакетную отправку на локальной заглушке пакетного API FCM
+ */
+public class FcmMessageBatcherTest {
+
+    private static final String PROJECT_ID = "test-project";
+
+    private static final String RESPONSE_BOUNDARY = "batch_response";
+
+    private static final Pattern TOKEN_PATTERN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+
+
+    private HttpServer server;
+
+    private AtomicInteger batchRequestCount;
+
+    private FirebaseApp app;
+
+    private FirebaseMessaging firebaseMessaging;
+
+    @Before
+    public void setUp() throws Exception {
+        batchRequestCount = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/batch", this::handleBatch);
+        server.start();
+
+        int port = server.getAddress().getPort();
+        FirebaseOptions options = new FirebaseOptions.Builder()
+                .setCredentials(GoogleCredentials.create(new AccessToken("token", new Date(Long.MAX_VALUE))))
+                .setProjectId(PROJECT_ID)
+                .setHttpTransport(new NetHttpTransport.Builder()
+                        .setConnectionFactory((URL url) ->
+                                (HttpURLConnection) new URL("http", "localhost", port, url.getFile()).openConnection())
+                        .build())
+                .build();
+
+        app = FirebaseApp.initializeApp(options, String.valueOf(UUID.randomUUID()));
+        firebaseMessaging = FirebaseMessaging.getInstance(app);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        app.delete();
+        server.stop(0);
+    }
+
+    @Test
+    public void shouldSendFullBatchInSingleRequest() throws Exception {
+        try (FcmMessageBatcher batcher = new FcmMessageBatcher(firebaseMessaging, 3, TimeUnit.MINUTES.toMillis(1), 1)) {
+            CompletableFuture<String> first = batcher.send(message("token-1"));
+            CompletableFuture<String> second = batcher.send(message("token-2"));
+            CompletableFuture<String> third = batcher.send(message("token-3"));
+
+            assertThat(first.get(10, TimeUnit.SECONDS), is(messageId("token-1")));
+            assertThat(second.get(10, TimeUnit.SECONDS), is(messageId("token-2")));
+            assertThat(third.get(10, TimeUnit.SECONDS), is(messageId("token-3")));
+        }
+
+        assertThat(batchRequestCount.get(), is(1));
+    }
+
+    @Test
+    public void shouldSendPartialBatchAfterDelay() throws Exception {
+        try (FcmMessageBatcher batcher = new FcmMessageBatcher(firebaseMessaging, FcmMessageBatcher.MAX_BATCH_SIZE, 50, 1)) {
+            CompletableFuture<String> first = batcher.send(message("token-1"));
+            CompletableFuture<String> second = batcher.send(message("token-2"));
+
+            assertThat(first.get(10, TimeUnit.SECONDS), is(messageId("token-1")));
+            assertThat(second.get(10, TimeUnit.SECONDS), is(messageId("token-2")));
+        }
+
+        assertThat(batchRequestCount.get(), is(1));
+    }
+
+    @Test
+    public void shouldExecuteOneRequestPerBatch() throws Exception {
+        AtomicInteger executedRequestCount = new AtomicInteger();
+        FcmMessageBatcher.BatchRequestExecutor requestExecutor = (Callable<BatchResponse> request) -> {
+            executedRequestCount.incrementAndGet();
+
+            return request.call();
+        };
+
+        try (FcmMessageBatcher batcher = new FcmMessageBatcher(firebaseMessaging, 2, TimeUnit.MINUTES.toMillis(1), 1, requestExecutor)) {
+            CompletableFuture<String> first = batcher.send(message("token-1"));
+            CompletableFuture<String> second = batcher.send(message("token-2"));
+            CompletableFuture<String> third = batcher.send(message("token-3"));
+            CompletableFuture<String> fourth = batcher.send(message("token-4"));
+
+            assertThat(first.get(10, TimeUnit.SECONDS), is(messageId("token-1")));
+            assertThat(second.get(10, TimeUnit.SECONDS), is(messageId("token-2")));
+            assertThat(third.get(10, TimeUnit.SECONDS), is(messageId("token-3")));
+            assertThat(fourth.get(10, TimeUnit.SECONDS), is(messageId("token-4")));
+        }
+
+        assertThat(executedRequestCount.get(), is(2));
+        assertThat(batchRequestCount.get(), is(2));
+    }
+
+    @Test
+    public void shouldCompleteEachMessageWithItsOwnResult() throws Exception {
+        try (FcmMessageBatcher batcher = new FcmMessageBatcher(firebaseMessaging, 3, TimeUnit.MINUTES.toMillis(1), 1)) {
+            CompletableFuture<String> first = batcher.send(message("token-1"));
+            CompletableFuture<String> second = batcher.send(message("invalid-token"));
+            CompletableFuture<String> third = batcher.send(message("token-3"));
+
+            assertThat(first.get(10, TimeUnit.SECONDS), is(messageId("token-1")));
+            assertThat(third.get(10, TimeUnit.SECONDS), is(messageId("token-3")));
+            try {
+                second.get(10, TimeUnit.SECONDS);
+
+                fail();
+            } catch (ExecutionException exception) {
+                assertThat(exception.getCause(), is(instanceOf(GatewayException.class)));
+            }
+        }
+    }
+
+    private static Message message(String token) {
+        return Message.builder()
+                .setToken(token)
+                .putData("notificationId", String.valueOf(UUID.randomUUID()))
+                .build();
+    }
+
+    private static String messageId(String token) {
+        return String.format("projects/%s/messages/%s", PROJECT_ID, token);
+    }
+
+    /**
+     * Отвечает на каждую часть пакетного запроса в том же порядке.
+     * Сообщения на токены, начинающиеся с "invalid", отклоняются
+     */
+    private void handleBatch(HttpExchange exchange) throws IOException {
+        batchRequestCount.incrementAndGet();
+
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        String requestBoundary = contentType.substring(contentType.indexOf("boundary=") + "boundary=".length())
+                .replace("\"", "");
+        String request = read(exchange.getRequestBody());
+
+        StringBuilder response = new StringBuilder();
+        int partIndex = 0;
+        for (String part : request.split("--" + Pattern.quote(requestBoundary))) {
+            Matcher matcher = TOKEN_PATTERN.matcher(part);
+            if (!matcher.find()) {
+                continue;
+            }
+
+            String token = matcher.group(1);
+            response.append("--").append(RESPONSE_BOUNDARY).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: response-").append(++partIndex).append("\r\n")
+                    .append("\r\n");
+            if (token.startsWith("invalid")) {
+                response.append("HTTP/1.1 400 Bad Request\r\n")
+                        .append("Content-Type: application/json; charset=UTF-8\r\n")
+                        .append("\r\n")
+                        .append("{\"error\": {\"code\": 400, \"message\": \"Invalid registration token\", \"status\": \"INVALID_ARGUMENT\"}}\r\n");
+            } else {
+                response.append("HTTP/1.1 200 OK\r\n")
+                        .append("Content-Type: application/json; charset=UTF-8\r\n")
+                        .append("\r\n")
+                        .append("{\"name\": \"").append(messageId(token)).append("\"}\r\n");
+            }
+        }
+        response.append("--").append(RESPONSE_BOUNDARY).append("--\r\n");
+
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "multipart/mixed; boundary=" + RESPONSE_BOUNDARY);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
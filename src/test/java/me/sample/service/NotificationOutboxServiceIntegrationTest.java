@@ -0,0 +1,216 @@
+package me.sample.service;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import me.sample.repository.CampaignRepository;
+import me.sample.repository.CompanyRepository;
+import me.sample.repository.NotificationRepository;
+import me.sample.repository.TerminalRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import me.sample.domain.Campaign;
+import me.sample.domain.CampaignState;
+import me.sample.domain.Company;
+import me.sample.domain.Notification;
+import me.sample.domain.NotificationState;
+import me.sample.domain.Terminal;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(properties = {
+        "notification.outbox.worker-count=0"
+})
+public class NotificationOutboxServiceIntegrationTest {
+
+    private static final LocalDateTime AVAILABLE_AT = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @MockBean
+    private NotificationDeliveryService notificationDeliveryService;
+
+    @Autowired
+    private CompanyRepository companyRepository;
+
+    @Autowired
+    private CampaignRepository campaignRepository;
+
+    @Autowired
+    private TerminalRepository terminalRepository;
+
+    @Autowired
+    private NotificationRepository notificationRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Company company;
+
+    private Terminal terminal;
+
+    @Before
+    public void setUp() throws Exception {
+        company = companyRepository.save(Company.builder()
+                .name(String.valueOf(UUID.randomUUID()))
+                .build());
+
+        terminal = terminalRepository.save(Terminal.builder()
+                .build());
+    }
+
+    @Test
+    public void shouldClaimNotificationsOfRunningCampaignsOnly() throws Exception {
+        Notification running = saveNotification(saveCampaign(CampaignState.RUNNING), 0);
+        Notification paused = saveNotification(saveCampaign(CampaignState.PAUSE), 0);
+        Notification completed = saveNotification(saveCampaign(CampaignState.COMPLETED), 0);
+
+
+        notificationOutboxService.dispatchAvailable();
+
+
+        assertThat(claimedIds(), hasItem(running.getId()));
+        assertThat(claimedIds(), not(hasItem(paused.getId())));
+        assertThat(claimedIds(), not(hasItem(completed.getId())));
+
+        Notification result = notificationRepository.findById(running.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(result.getAttempts(), is(1));
+        assertThat(result.getAvailableAt().isAfter(LocalDateTime.now()), is(true));
+
+        Notification resultPaused = notificationRepository.findById(paused.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(resultPaused.getAttempts(), is(0));
+        assertThat(resultPaused.getAvailableAt(), is(AVAILABLE_AT));
+    }
+
+    @Test
+    public void shouldSkipLockedNotifications() throws Exception {
+        Notification notification = saveNotification(saveCampaign(CampaignState.RUNNING), 0);
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        CompletableFuture<Void> lockHolder = CompletableFuture.runAsync(() ->
+                new TransactionTemplate(transactionManager).execute((TransactionStatus status) -> {
+                    jdbcTemplate.queryForList("SELECT id FROM notification WHERE id = ? FOR UPDATE", notification.getId());
+                    locked.countDown();
+                    Uninterruptibles.awaitUninterruptibly(released, 10, TimeUnit.SECONDS);
+
+                    return null;
+                }));
+        locked.await(10, TimeUnit.SECONDS);
+
+
+        notificationOutboxService.dispatchAvailable();
+
+
+        Notification result = notificationRepository.findById(notification.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(result.getAttempts(), is(0));
+
+
+        released.countDown();
+        lockHolder.get(10, TimeUnit.SECONDS);
+
+        notificationOutboxService.dispatchAvailable();
+
+
+        Notification resultReleased = notificationRepository.findById(notification.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(resultReleased.getAttempts(), is(1));
+    }
+
+    @Test
+    public void shouldExpireExhaustedNotifications() throws Exception {
+        Notification exhausted = saveNotification(saveCampaign(CampaignState.RUNNING), 3);
+
+
+        notificationOutboxService.expireExhausted();
+
+
+        Notification result = notificationRepository.findById(exhausted.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(result.getState(), is(NotificationState.FAILED));
+        assertThat(result.getAvailableAt(), is(nullValue()));
+    }
+
+    @Test
+    public void shouldFailPendingNotificationsOfCompletedCampaigns() throws Exception {
+        Notification completed = saveNotification(saveCampaign(CampaignState.COMPLETED), 0);
+        Notification paused = saveNotification(saveCampaign(CampaignState.PAUSE), 0);
+
+
+        notificationOutboxService.expireExhausted();
+
+
+        Notification result = notificationRepository.findById(completed.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(result.getState(), is(NotificationState.FAILED));
+        assertThat(result.getAvailableAt(), is(nullValue()));
+
+        Notification resultPaused = notificationRepository.findById(paused.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(resultPaused.getState(), is(NotificationState.QUEUED));
+        assertThat(resultPaused.getAvailableAt(), is(AVAILABLE_AT));
+    }
+
+    private Campaign saveCampaign(CampaignState state) {
+        return campaignRepository.save(Campaign.builder()
+                .company(company)
+                .state(state)
+                .name(String.valueOf(UUID.randomUUID()))
+                .build());
+    }
+
+    private Notification saveNotification(Campaign campaign, int attempts) {
+        return notificationRepository.save(Notification.builder()
+                .campaign(campaign)
+                .terminal(terminal)
+                .state(NotificationState.QUEUED)
+                .availableAt(AVAILABLE_AT)
+                .attempts(attempts)
+                .build());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<UUID> claimedIds() {
+        ArgumentCaptor<List<Notification>> captor = ArgumentCaptor.forClass(List.class);
+        Mockito.verify(notificationDeliveryService, Mockito.atLeast(0))
+                .sendNotifications(Mockito.any(Campaign.class), captor.capture());
+
+        return captor.getAllValues().stream()
+                .flatMap(List::stream)
+                .map(Notification::getId)
+                .collect(Collectors.toList());
+    }
+}
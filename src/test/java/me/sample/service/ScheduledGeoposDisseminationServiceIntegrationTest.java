@@ -79,6 +79,9 @@ public class ScheduledGeoposDisseminationServiceIntegrationTest {
     @Autowired
     private GeoPositionInfoRepository geoPositionInfoRepository;
 
+    @Autowired
+    private GeoPositionInfoService geoPositionInfoService;
+
     @Before
     public void setUp() throws Exception {
         storeRepository.deleteAll();
@@ -206,7 +209,7 @@ public class ScheduledGeoposDisseminationServiceIntegrationTest {
                 .pushId(String.valueOf(UUID.randomUUID()))
                 .build());
 
-        geoPositionInfoRepository.save(GeoPositionInfo.builder()
+        geoPositionInfoService.saveGeoposition(GeoPositionInfo.builder()
                 .terminal(terminal)
                 .lat(store.getLat() + 0.01)
                 .lon(store.getLon() + 0.01)
@@ -265,7 +268,7 @@ public class ScheduledGeoposDisseminationServiceIntegrationTest {
                 .pushId(String.valueOf(UUID.randomUUID()))
                 .build());
 
-        geoPositionInfoRepository.save(GeoPositionInfo.builder()
+        geoPositionInfoService.saveGeoposition(GeoPositionInfo.builder()
                 .terminal(terminal)
                 .lat(store.getLat() + 0.01)
                 .lon(store.getLon() + 0.01)
@@ -339,7 +342,7 @@ public class ScheduledGeoposDisseminationServiceIntegrationTest {
                 .pushId(String.valueOf(UUID.randomUUID()))
                 .build());
 
-        geoPositionInfoRepository.save(GeoPositionInfo.builder()
+        geoPositionInfoService.saveGeoposition(GeoPositionInfo.builder()
                 .terminal(terminal)
                 .lat(store.getLat() + 0.01)
                 .lon(store.getLon() + 0.01)
@@ -26,6 +26,7 @@ import me.sample.domain.NotificationTemplate;
 import me.sample.domain.Partner;
 import me.sample.domain.ScheduledGeoposDissemination;
 import me.sample.domain.Store;
+import me.sample.domain.StoreState;
 import me.sample.domain.Terminal;
 import me.sample.repository.ApplicationRepository;
 import me.sample.repository.GeoPositionInfoRepository;
@@ -51,6 +52,12 @@ public class ScheduledGeoposDisseminationServicePerformanceTest {
     @Autowired
     private ScheduledGeoposDisseminationService scheduledGeoposDisseminationService;
 
+    @Autowired
+    private ActiveStoreIndexService activeStoreIndexService;
+
+    @Autowired
+    private GeoposDisseminationSnapshotService geoposDisseminationSnapshotService;
+
     @MockBean
     private NotificationService notificationService;
 
@@ -127,6 +134,7 @@ public class ScheduledGeoposDisseminationServicePerformanceTest {
                     return storeRepository.saveAll(IntStream.range(0, 10)
                             .mapToObj((int x) -> Store.builder()
                                     .partner(partner)
+                                    .state(StoreState.ACTIVE)
                                     .name(String.valueOf(UUID.randomUUID()))
                                     .lat(42.0)
                                     .lon(42.0)
@@ -163,6 +171,10 @@ public class ScheduledGeoposDisseminationServicePerformanceTest {
                 .application(application)
                 .build());
 
+        System.out.println("Rebuilding store index and dissemination snapshot...");
+        activeStoreIndexService.rebuildIndex();
+        geoposDisseminationSnapshotService.rebuildSnapshot();
+
 
         System.out.println("Querying...");
         long time = System.nanoTime();
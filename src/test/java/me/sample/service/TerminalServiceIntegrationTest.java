@@ -6,9 +6,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.cache.CacheManager;
 import org.springframework.test.context.junit4.SpringRunner;
 import me.sample.dto.TerminalDTO;
 import me.sample.gateway.dadata.DadataGateway;
@@ -19,9 +21,16 @@ import me.sample.domain.Specifications;
 import me.sample.domain.Terminal;
 import me.sample.repository.ApplicationRepository;
 import me.sample.repository.GeoPositionInfoRepository;
+import me.sample.service.impl.TerminalServiceImpl;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.IntStream;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -35,6 +44,12 @@ public class TerminalServiceIntegrationTest {
     @Autowired
     private TerminalService terminalService;
 
+    @Autowired
+    private TerminalChangeBufferService terminalChangeBufferService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
     @MockBean
     private DadataGateway dadataGateway;
 
@@ -124,6 +139,7 @@ public class TerminalServiceIntegrationTest {
                 .prop(Terminal.PROP_KEY_CLIENT_ID, null)
                 .build());
 
+        terminalChangeBufferService.flush();
 
         Terminal result = terminalRepository.findById(terminal.getId())
                 .orElseThrow(AssertionError::new);
@@ -132,6 +148,95 @@ public class TerminalServiceIntegrationTest {
         assertThat(result.getProp(Terminal.PROP_KEY_BIRTH_DATE), is(1492));
     }
 
+    @Test
+    public void shouldNotOverwriteTerminalWithChangesPendingBeforeEviction() throws Exception {
+        Company company = companyRepository.save(Company.builder()
+                .name(String.valueOf(UUID.randomUUID()))
+                .build());
+
+        String applicationApiKey = String.valueOf(UUID.randomUUID());
+        applicationRepository.save(Application.builder()
+                .company(company)
+                .name(String.valueOf(UUID.randomUUID()))
+                .apiKey(applicationApiKey)
+                .build());
+
+        String terminalHardwareId = String.valueOf(UUID.randomUUID());
+        Terminal terminal = terminalService.saveOrUpdateTerminal(TerminalDTO.builder()
+                .appBundle(applicationApiKey)
+                .hardwareId(terminalHardwareId)
+                .pushId("a")
+                .build());
+
+        terminalService.saveOrUpdateTerminal(TerminalDTO.builder()
+                .appBundle(applicationApiKey)
+                .hardwareId(terminalHardwareId)
+                .pushId("b")
+                .prop(Terminal.PROP_KEY_CLIENT_ID, "client")
+                .build());
+
+        cacheManager.getCache(TerminalServiceImpl.CACHE_NAME_TERMINAL)
+                .evict(Arrays.asList(terminalHardwareId, applicationApiKey));
+
+        terminalService.saveOrUpdateTerminal(TerminalDTO.builder()
+                .appBundle(applicationApiKey)
+                .hardwareId(terminalHardwareId)
+                .pushId("c")
+                .build());
+
+        terminalChangeBufferService.flush();
+
+        Terminal result = terminalRepository.findById(terminal.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(result.getPushId(), is("c"));
+        assertThat(result.getProp(Terminal.PROP_KEY_CLIENT_ID), is("client"));
+    }
+
+    @Test
+    public void shouldUpsertTerminal() throws Exception {
+        Company company = companyRepository.save(Company.builder()
+                .name(String.valueOf(UUID.randomUUID()))
+                .build());
+
+        Application application = applicationRepository.save(Application.builder()
+                .company(company)
+                .name(String.valueOf(UUID.randomUUID()))
+                .apiKey(String.valueOf(UUID.randomUUID()))
+                .build());
+
+        String terminalHardwareId = String.valueOf(UUID.randomUUID());
+        Terminal terminal = terminalService.upsertTerminal(Terminal.builder()
+                .application(application)
+                .hardwareId(terminalHardwareId)
+                .ip("127.0.0.1")
+                .test(true)
+                .props(new LinkedHashMap<>(Collections.singletonMap(Terminal.PROP_KEY_BIRTH_DATE, 1492)))
+                .build());
+
+        Terminal result = terminalService.upsertTerminal(Terminal.builder()
+                .application(application)
+                .hardwareId(terminalHardwareId)
+                .ip("127.0.0.2")
+                .test(false)
+                .props(new LinkedHashMap<>(Collections.singletonMap(Terminal.PROP_KEY_CLIENT_ID, "client")))
+                .build());
+
+        assertThat(result.getId(), is(terminal.getId()));
+        assertThat(result.getIp(), is("127.0.0.2"));
+        assertThat(result.getTest(), is(true));
+        assertThat(result.getProp(Terminal.PROP_KEY_BIRTH_DATE), is(1492));
+        assertThat(result.getProp(Terminal.PROP_KEY_CLIENT_ID), is("client"));
+
+        Terminal found = terminalRepository.findById(terminal.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(terminalRepository.count(), is(1L));
+        assertThat(found.getTest(), is(true));
+        assertThat(found.getProp(Terminal.PROP_KEY_BIRTH_DATE), is(1492));
+        assertThat(found.getProp(Terminal.PROP_KEY_CLIENT_ID), is("client"));
+    }
+
     @Test
     public void shouldUpdateTerminalCityByIp() throws Exception {
         Company company = companyRepository.save(Company.builder()
@@ -167,6 +272,64 @@ public class TerminalServiceIntegrationTest {
         terminalService.updateTerminalCityByIp(terminal, "127.0.0.2");
     }
 
+    @Test
+    public void shouldKeepPropsUpdatedDuringTerminalCityUpdate() throws Exception {
+        Company company = companyRepository.save(Company.builder()
+                .name(String.valueOf(UUID.randomUUID()))
+                .build());
+
+        String applicationApiKey = String.valueOf(UUID.randomUUID());
+        applicationRepository.save(Application.builder()
+                .company(company)
+                .name(String.valueOf(UUID.randomUUID()))
+                .apiKey(applicationApiKey)
+                .build());
+
+        String terminalHardwareId = String.valueOf(UUID.randomUUID());
+        Terminal terminal = terminalService.saveOrUpdateTerminal(TerminalDTO.builder()
+                .appBundle(applicationApiKey)
+                .hardwareId(terminalHardwareId)
+                .build());
+
+        CountDownLatch cityRequested = new CountDownLatch(1);
+        CountDownLatch propsUpdated = new CountDownLatch(1);
+        Mockito.when(dadataGateway.findCityByIp(Mockito.anyString()))
+                .thenAnswer((InvocationOnMock invocation) -> {
+                    cityRequested.countDown();
+                    propsUpdated.await(10, TimeUnit.SECONDS);
+
+                    return Optional.of("X");
+                });
+
+
+        CompletableFuture<Terminal> cityUpdate = CompletableFuture.supplyAsync(() ->
+                terminalService.updateTerminalCityByIp(terminal, "127.0.0.1"));
+        cityRequested.await(10, TimeUnit.SECONDS);
+
+        terminalService.saveOrUpdateTerminal(TerminalDTO.builder()
+                .appBundle(applicationApiKey)
+                .hardwareId(terminalHardwareId)
+                .prop(Terminal.PROP_KEY_CLIENT_ID, "client")
+                .build());
+        propsUpdated.countDown();
+
+        cityUpdate.get(10, TimeUnit.SECONDS);
+        terminalChangeBufferService.flush();
+
+
+        Terminal cached = terminalService.findTerminal(terminalHardwareId, applicationApiKey)
+                .orElseThrow(AssertionError::new);
+
+        assertThat(cached.getCity(), is("X"));
+        assertThat(cached.getProp(Terminal.PROP_KEY_CLIENT_ID), is("client"));
+
+        Terminal result = terminalRepository.findById(terminal.getId())
+                .orElseThrow(AssertionError::new);
+
+        assertThat(result.getCity(), is("X"));
+        assertThat(result.getProp(Terminal.PROP_KEY_CLIENT_ID), is("client"));
+    }
+
     @Test
     public void shouldSyncTerminalCityByIp() throws Exception {
         Company company = companyRepository.save(Company.builder()
@@ -0,0 +1,71 @@
+package me.sample.service.impl;
+
+import me.sample.domain.CampaignSendCounter;
+import me.sample.repository.NotificationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.Collections;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CampaignNotificationCounterServiceImplTest {
+    @Mock
+    private NotificationRepository notificationRepository;
+
+    private Cache cache;
+
+    private CampaignNotificationCounterServiceImpl campaignNotificationCounterService;
+
+    @BeforeEach
+    void setUp() {
+        ConcurrentMapCacheManager cacheManager =
+                new ConcurrentMapCacheManager(CampaignNotificationCounterServiceImpl.CACHE_NAME_CAMPAIGN_NOTIFICATION_COUNTER);
+        cache = cacheManager.getCache(CampaignNotificationCounterServiceImpl.CACHE_NAME_CAMPAIGN_NOTIFICATION_COUNTER);
+
+        campaignNotificationCounterService = new CampaignNotificationCounterServiceImpl(notificationRepository, cacheManager);
+        campaignNotificationCounterService.setSelf(campaignNotificationCounterService);
+    }
+
+    @Test
+    void registerSentWithEmptyCacheIsCountedOnce() {
+        // given
+        UUID campaignId = UUID.randomUUID();
+        UUID terminalId = UUID.randomUUID();
+
+        // call
+        campaignNotificationCounterService.registerSent(campaignId, terminalId);
+        campaignNotificationCounterService.registerSent(campaignId, terminalId);
+
+        // then
+        assertNull(cache.get(campaignId));
+        verify(notificationRepository, never()).countAsRowsByCampaignIdAndStateInGroupByTerminalId(any(), anyCollection());
+
+        // when
+        when(notificationRepository.countAsRowsByCampaignIdAndStateInGroupByTerminalId(eq(campaignId), anyCollection()))
+                .thenReturn(Collections.singletonList(new Object[]{terminalId, 2L}));
+
+        // call
+        cache.put(campaignId, campaignNotificationCounterService.findCampaignSendCounter(campaignId));
+        campaignNotificationCounterService.registerSent(campaignId, terminalId);
+
+        // then
+        CampaignSendCounter counter = cache.get(campaignId, CampaignSendCounter.class);
+        assertEquals(3L, counter.getTotal());
+        assertEquals(3, counter.getTotal(terminalId));
+    }
+}
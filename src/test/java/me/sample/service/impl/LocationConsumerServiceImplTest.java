@@ -0,0 +1,119 @@
+package me.sample.service.impl;
+
+import me.sample.domain.Terminal;
+import me.sample.dto.GeoPositionInfoDTO;
+import me.sample.mapper.GeoPositionInfoMapper;
+import me.sample.service.GeoPositionIngestionService;
+import me.sample.service.ScheduledGeoposDisseminationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class LocationConsumerServiceImplTest {
+    @Mock
+    private GeoPositionIngestionService geoPositionIngestionService;
+    @Mock
+    private GeoPositionInfoMapper geoPositionInfoMapper;
+    @Mock
+    private ScheduledGeoposDisseminationService scheduledGeoposDisseminationService;
+
+    private LocationConsumerServiceImpl locationConsumerService;
+
+    private Terminal terminal;
+
+    @BeforeEach
+    void setUp() {
+        locationConsumerService = new LocationConsumerServiceImpl(
+                geoPositionIngestionService,
+                geoPositionInfoMapper,
+                scheduledGeoposDisseminationService);
+        ReflectionTestUtils.setField(locationConsumerService, "minIntervalMillis", 60000L);
+        ReflectionTestUtils.setField(locationConsumerService, "minDistanceMeters", 50D);
+        ReflectionTestUtils.setField(locationConsumerService, "maxAgeMillis", 300000L);
+        ReflectionTestUtils.setField(locationConsumerService, "retentionMillis", 86400000L);
+        ReflectionTestUtils.invokeMethod(locationConsumerService, "postConstruct");
+
+        terminal = Terminal.builder()
+                .id(UUID.randomUUID())
+                .pushId("token")
+                .build();
+    }
+
+    @Test
+    void handleBatchIngestsInChronologicalOrderAndDisseminatesByNewest() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        GeoPositionInfoDTO older = location(1D, now.minusMinutes(2));
+        GeoPositionInfoDTO newest = location(2D, now.minusMinutes(1));
+        GeoPositionInfoDTO expired = location(3D, now.minusDays(2));
+        GeoPositionInfoDTO undated = location(4D, null);
+        GeoPositionInfoDTO future = location(5D, now.plusDays(1));
+        GeoPositionInfoDTO noCoordinates = GeoPositionInfoDTO.builder()
+                .createdDate(now)
+                .build();
+
+        // call
+        locationConsumerService.handleBatchAsync(terminal,
+                Arrays.asList(newest, future, expired, older, noCoordinates, undated));
+
+        // then
+        InOrder ingestion = inOrder(geoPositionInfoMapper);
+        ingestion.verify(geoPositionInfoMapper).toEntity(older);
+        ingestion.verify(geoPositionInfoMapper).toEntity(newest);
+        verify(geoPositionInfoMapper, never()).toEntity(expired);
+        verify(geoPositionInfoMapper, never()).toEntity(noCoordinates);
+        verify(geoPositionIngestionService, times(4)).ingest(any());
+
+        assertFalse(undated.getCreatedDate().isBefore(now));
+        assertFalse(future.getCreatedDate().isAfter(LocalDateTime.now()));
+
+        verify(scheduledGeoposDisseminationService, times(1))
+                .executeDisseminationForTerminal(any(), anyDouble(), anyDouble());
+        verify(scheduledGeoposDisseminationService)
+                .executeDisseminationForTerminal(eq(terminal), anyDouble(), eq(undated.getLon()));
+    }
+
+    @Test
+    void handleBatchWithOutdatedNewestLocationDoesNotDisseminate() {
+        // given
+        LocalDateTime now = LocalDateTime.now();
+        GeoPositionInfoDTO older = location(1D, now.minusHours(2));
+        GeoPositionInfoDTO newest = location(2D, now.minusHours(1));
+
+        // call
+        locationConsumerService.handleBatchAsync(terminal, Arrays.asList(newest, older));
+
+        // then
+        InOrder ingestion = inOrder(geoPositionInfoMapper);
+        ingestion.verify(geoPositionInfoMapper).toEntity(older);
+        ingestion.verify(geoPositionInfoMapper).toEntity(newest);
+        verify(scheduledGeoposDisseminationService, never())
+                .executeDisseminationForTerminal(any(), anyDouble(), anyDouble());
+    }
+
+    private static GeoPositionInfoDTO location(Double lon, LocalDateTime createdDate) {
+        return GeoPositionInfoDTO.builder()
+                .lat(55D)
+                .lon(lon)
+                .createdDate(createdDate)
+                .build();
+    }
+}